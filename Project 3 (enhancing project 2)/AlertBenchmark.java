@@ -0,0 +1,152 @@
+package ePortfolio;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code AlertBenchmark} class times price updates with a large number of alerts attached,
+ * and checks that every alert crossing is delivered.
+ *
+ * <p>Run it with {@code java ePortfolio.AlertBenchmark [UPDATES [ALERTS]]}. It holds
+ * {@link #SYMBOLS} symbols, places {@link #DEFAULT_ALERTS} alerts on them by default, a third each
+ * with only a floor, only a ceiling or both, and feeds {@link #DEFAULT_UPDATES} random-walk price
+ * updates through {@link Portfolio#updatePrices(String, double)}: once without an
+ * {@link AlertEngine} and once with one. It prints the update rates and the number of alerts
+ * delivered, and exits with status 1 unless that number equals a count made by checking every
+ * band of the updated symbol on each update.</p>
+ */
+public class AlertBenchmark {
+    /**
+     * The number of symbols held.
+     */
+    public static final int SYMBOLS = 10_000;
+
+    /**
+     * The number of alerts placed when none is given.
+     */
+    public static final int DEFAULT_ALERTS = 500_000;
+
+    /**
+     * The number of price updates fed when none is given.
+     */
+    public static final int DEFAULT_UPDATES = 5_000_000;
+
+    private AlertBenchmark() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int updates = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_UPDATES;
+        int alertCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ALERTS;
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+
+        double[] startPrices = new double[SYMBOLS];
+        Random random = new Random(7);
+        for (int s = 0; s < SYMBOLS; s++) {
+            startPrices[s] = 20 + random.nextInt(200);
+        }
+
+        // The bands of each symbol, kept in plain arrays for the brute-force count
+        double[][] floors = new double[SYMBOLS][];
+        double[][] ceilings = new double[SYMBOLS][];
+        int[] perSymbol = new int[SYMBOLS];
+        int[] symbolOf = new int[alertCount];
+        for (int a = 0; a < alertCount; a++) {
+            symbolOf[a] = random.nextInt(SYMBOLS);
+            perSymbol[symbolOf[a]]++;
+        }
+        for (int s = 0; s < SYMBOLS; s++) {
+            floors[s] = new double[perSymbol[s]];
+            ceilings[s] = new double[perSymbol[s]];
+            perSymbol[s] = 0;
+        }
+
+        AlertEngine engine = new AlertEngine();
+        for (int a = 0; a < alertCount; a++) {
+            int s = symbolOf[a];
+            double price = startPrices[s];
+            double floor = a % 3 == 1 ? Double.NEGATIVE_INFINITY
+                    : Math.round(price * (0.85 + random.nextDouble() * 0.15) * 100) / 100.0;
+            double ceiling = a % 3 == 0 ? Double.POSITIVE_INFINITY
+                    : Math.round(price * (1 + random.nextDouble() * 0.15) * 100) / 100.0;
+            engine.add(symbol(s), floor, ceiling);
+            floors[s][perSymbol[s]] = floor;
+            ceilings[s][perSymbol[s]] = ceiling;
+            perSymbol[s]++;
+        }
+        AtomicLong delivered = new AtomicLong();
+        engine.addListener((alert, oldPrice, newPrice) -> delivered.incrementAndGet());
+
+        double plainSeconds = feed(null, startPrices, updates, quiet, null, null);
+        long[] expected = new long[1];
+        double alertSeconds = feed(engine, startPrices, updates, quiet, new double[][][]{floors, ceilings}, expected);
+        long drainStarted = System.nanoTime();
+        engine.awaitDelivery();
+        double drainMillis = (System.nanoTime() - drainStarted) / 1e6;
+        engine.close();
+
+        System.out.println(String.format("%d alerts on %d symbols, %d updates", alertCount, SYMBOLS, updates));
+        System.out.println(String.format("Without alerts: %.0f updates/s", updates / plainSeconds));
+        System.out.println(String.format("With alerts:    %.0f updates/s", updates / alertSeconds));
+        System.out.println(String.format("Delivered %d alerts, expected %d", delivered.get(), expected[0]));
+        System.out.println(String.format("Queue drained %.1f ms after the last update", drainMillis));
+        if (delivered.get() != expected[0]) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Buys every symbol and feeds the same random walk of updates, returning the seconds spent
+     * updating. With bands given, counts the crossings each update should deliver.
+     */
+    private static double feed(AlertEngine engine, double[] startPrices, int updates, PrintStream quiet,
+                               double[][][] bands, long[] expected) {
+        Portfolio portfolio = new Portfolio();
+        portfolio.setConsole(quiet);
+        for (int s = 0; s < SYMBOLS; s++) {
+            portfolio.buyInvestment("stock", symbol(s), "Alert Holding " + s, 100, startPrices[s]);
+        }
+        if (engine != null) {
+            portfolio.setAlertEngine(engine);
+        }
+
+        double[] prices = startPrices.clone();
+        String[] symbols = new String[SYMBOLS];
+        for (int s = 0; s < SYMBOLS; s++) {
+            symbols[s] = symbol(s);
+        }
+        Random random = new Random(11);
+        long crossings = 0;
+        long elapsed = 0;
+        for (int u = 0; u < updates; u++) {
+            int s = random.nextInt(SYMBOLS);
+            double oldPrice = prices[s];
+            double newPrice = Math.max(0.01, Math.round(oldPrice * (1 + random.nextGaussian() * 0.02) * 100) / 100.0);
+            prices[s] = newPrice;
+
+            long started = System.nanoTime();
+            portfolio.updatePrices(symbols[s], newPrice);
+            elapsed += System.nanoTime() - started;
+
+            if (bands != null && newPrice != oldPrice) {
+                double[] floors = bands[0][s];
+                double[] ceilings = bands[1][s];
+                for (int i = 0; i < floors.length; i++) {
+                    if (newPrice < oldPrice ? floors[i] > newPrice && floors[i] <= oldPrice
+                                            : ceilings[i] >= oldPrice && ceilings[i] < newPrice) {
+                        crossings++;
+                    }
+                }
+            }
+        }
+        if (expected != null) {
+            expected[0] = crossings;
+        }
+        return elapsed / 1e9;
+    }
+
+    private static String symbol(int s) {
+        return "AL" + s;
+    }
+}
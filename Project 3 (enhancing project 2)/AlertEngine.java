@@ -0,0 +1,364 @@
+package ePortfolio;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code AlertEngine} class holds price alerts on symbols and notifies listeners when a
+ * price update moves a symbol out of an alert's band: below its floor or above its ceiling.
+ * A {@link Portfolio} with an engine attached reports the old and new price of every update.
+ *
+ * <p>Each symbol keeps its alert floors and ceilings in two sorted sets. A price that falls from
+ * {@code old} to {@code new} crosses exactly the floors in {@code (new, old]}, and a price that
+ * rises crosses the ceilings in {@code [old, new)}, so each update finds its crossed alerts with
+ * one range query in O(log n + k) time, however many alerts are active. An alert fires each
+ * time the price leaves its band, not while it stays outside.</p>
+ *
+ * <p>Listeners are called on a single delivery thread, in the order the alerts were crossed, so
+ * a slow listener never holds up price updates. Crossed alerts are queued, and the first one
+ * queued after the queue drained schedules a delivery {@link #DELIVERY_DELAY_MICROS} later.
+ * Waking the thread once per burst rather than once per crossing keeps a fast price feed from
+ * spending its time switching threads. A listener that throws does not stop delivery to the
+ * others; its exception is logged as a warning.</p>
+ */
+public class AlertEngine implements Closeable {
+    /**
+     * How long crossed alerts may wait to be delivered together, in microseconds.
+     */
+    public static final long DELIVERY_DELAY_MICROS = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(AlertEngine.class.getName());
+
+    private static final Comparator<Alert> FLOOR_ORDER = (a, b) ->
+            a.floor != b.floor ? Double.compare(a.floor, b.floor) : Integer.compare(a.id, b.id);
+    private static final Comparator<Alert> CEILING_ORDER = (a, b) ->
+            a.ceiling != b.ceiling ? Double.compare(a.ceiling, b.ceiling) : Integer.compare(a.id, b.id);
+
+    private final IntMap<Book> books = new IntMap<>();
+    private final IntMap<Alert> active = new IntMap<>();
+    private final List<AlertListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService delivery;
+    private final ConcurrentLinkedQueue<Crossing> crossings = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private int nextId = 1;
+
+    /**
+     * Receives the alerts crossed by price updates.
+     */
+    public interface AlertListener {
+        /**
+         * Called on the delivery thread when a price leaves an alert's band.
+         *
+         * @param alert    the crossed alert
+         * @param oldPrice the price before the update
+         * @param newPrice the price after the update
+         */
+        void alertTriggered(Alert alert, double oldPrice, double newPrice);
+    }
+
+    /**
+     * The {@code Alert} class is one band on a symbol. An alert with only a floor has an infinite
+     * ceiling, and one with only a ceiling has a floor of negative infinity.
+     */
+    public static class Alert {
+        private final int id;
+        private final int symbolCode;
+        private final double floor;
+        private final double ceiling;
+
+        private Alert(int id, int symbolCode, double floor, double ceiling) {
+            this.id = id;
+            this.symbolCode = symbolCode;
+            this.floor = floor;
+            this.ceiling = ceiling;
+        }
+
+        /**
+         * Gets the number the engine gave the alert.
+         *
+         * @return the alert number
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Gets the symbol the alert watches.
+         *
+         * @return the symbol
+         */
+        public String getSymbol() {
+            return SymbolDictionary.decode(symbolCode);
+        }
+
+        /**
+         * Gets the price the symbol must not fall below.
+         *
+         * @return the floor, or negative infinity if there is none
+         */
+        public double getFloor() {
+            return floor;
+        }
+
+        /**
+         * Gets the price the symbol must not rise above.
+         *
+         * @return the ceiling, or positive infinity if there is none
+         */
+        public double getCeiling() {
+            return ceiling;
+        }
+
+        @Override
+        public String toString() {
+            String band;
+            if (ceiling == Double.POSITIVE_INFINITY) {
+                band = String.format("below %.2f", floor);
+            } else if (floor == Double.NEGATIVE_INFINITY) {
+                band = String.format("above %.2f", ceiling);
+            } else {
+                band = String.format("outside %.2f..%.2f", floor, ceiling);
+            }
+            return "Alert " + id + ": " + getSymbol() + " " + band;
+        }
+    }
+
+    /**
+     * The alerts crossed by one price update, waiting to be delivered.
+     */
+    private static class Crossing {
+        final List<Alert> alerts;
+        final double oldPrice;
+        final double newPrice;
+
+        Crossing(List<Alert> alerts, double oldPrice, double newPrice) {
+            this.alerts = alerts;
+            this.oldPrice = oldPrice;
+            this.newPrice = newPrice;
+        }
+    }
+
+    /**
+     * The alerts of one symbol, by floor and by ceiling.
+     */
+    private static class Book {
+        final TreeSet<Alert> floors = new TreeSet<>(FLOOR_ORDER);
+        final TreeSet<Alert> ceilings = new TreeSet<>(CEILING_ORDER);
+
+        boolean isEmpty() {
+            return floors.isEmpty() && ceilings.isEmpty();
+        }
+    }
+
+    /**
+     * Constructs an engine with no alerts and starts its delivery thread.
+     */
+    public AlertEngine() {
+        delivery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "alert-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds an alert for a price band. Either bound may be infinite, but not both.
+     *
+     * @param symbol  the symbol to watch
+     * @param floor   the lowest price inside the band, or negative infinity for none
+     * @param ceiling the highest price inside the band, or positive infinity for none
+     * @return the new alert
+     * @throws IllegalArgumentException if the band is empty, unbounded or not a number
+     */
+    public Alert add(String symbol, double floor, double ceiling) {
+        if (Double.isNaN(floor) || Double.isNaN(ceiling) || floor > ceiling
+            || (floor == Double.NEGATIVE_INFINITY && ceiling == Double.POSITIVE_INFINITY)) {
+            throw new IllegalArgumentException("Alert band must have a floor or a ceiling, with the floor below the ceiling.");
+        }
+        Alert alert = new Alert(nextId++, SymbolDictionary.encode(symbol), floor, ceiling);
+        int key = SymbolDictionary.lowercase(alert.symbolCode);
+        Book book = books.get(key);
+        if (book == null) {
+            book = new Book();
+            books.put(key, book);
+        }
+        if (floor != Double.NEGATIVE_INFINITY) {
+            book.floors.add(alert);
+        }
+        if (ceiling != Double.POSITIVE_INFINITY) {
+            book.ceilings.add(alert);
+        }
+        active.put(alert.id, alert);
+        return alert;
+    }
+
+    /**
+     * Removes an alert.
+     *
+     * @param id the alert number
+     * @return {@code true} if the alert was active
+     */
+    public boolean remove(int id) {
+        Alert alert = active.remove(id);
+        if (alert == null) return false;
+        int key = SymbolDictionary.lowercase(alert.symbolCode);
+        Book book = books.get(key);
+        book.floors.remove(alert);
+        book.ceilings.remove(alert);
+        if (book.isEmpty()) {
+            books.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the active alerts on a symbol.
+     *
+     * @param symbol the symbol, in any case
+     * @return the alerts in the order they were added
+     */
+    public List<Alert> alerts(String symbol) {
+        List<Alert> alerts = new ArrayList<>();
+        Book book = books.get(SymbolDictionary.findLowercase(symbol));
+        if (book == null) return alerts;
+        alerts.addAll(book.floors);
+        for (Alert alert : book.ceilings) {
+            // Alerts with both bounds are already in the list from the floors
+            if (alert.floor == Double.NEGATIVE_INFINITY) {
+                alerts.add(alert);
+            }
+        }
+        alerts.sort(Comparator.comparingInt(Alert::getId));
+        return alerts;
+    }
+
+    /**
+     * Gets the number of active alerts across all symbols.
+     *
+     * @return the number of alerts
+     */
+    public int size() {
+        return active.size();
+    }
+
+    /**
+     * Adds a listener for crossed alerts.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(AlertListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added before.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(AlertListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Finds the alerts crossed by a price change and queues them for delivery. Only the range
+     * query runs on the caller's thread.
+     *
+     * @param symbol   the symbol whose price changed
+     * @param oldPrice the price before the update
+     * @param newPrice the price after the update
+     */
+    public void priceChanged(String symbol, double oldPrice, double newPrice) {
+        if (newPrice == oldPrice || listeners.isEmpty()) return;
+        Book book = books.get(SymbolDictionary.findLowercase(symbol));
+        if (book == null) return;
+        NavigableSet<Alert> crossed;
+        if (newPrice < oldPrice) {
+            // Floors in (newPrice, oldPrice]: the price was at or above them and is now below
+            crossed = book.floors.subSet(probe(newPrice, Integer.MAX_VALUE), false, probe(oldPrice, Integer.MAX_VALUE), true);
+        } else {
+            // Ceilings in [oldPrice, newPrice): the price was at or below them and is now above
+            crossed = book.ceilings.subSet(probe(oldPrice, Integer.MIN_VALUE), true, probe(newPrice, Integer.MIN_VALUE), false);
+        }
+        // One pass over the range view; asking it for its size or emptiness would search again
+        List<Alert> alerts = null;
+        for (Alert alert : crossed) {
+            if (alerts == null) {
+                alerts = new ArrayList<>(4);
+            }
+            alerts.add(alert);
+        }
+        if (alerts == null) return;
+        crossings.add(new Crossing(alerts, oldPrice, newPrice));
+        // Only the first crossing after the queue drained needs to schedule a delivery
+        if (pending.getAndIncrement() == 0) {
+            delivery.schedule(this::deliver, DELIVERY_DELAY_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Delivers queued crossings on the delivery thread until the queue is empty. A scheduled
+     * delivery may find the queue already drained by {@link #awaitDelivery()}.
+     */
+    private void deliver() {
+        while (pending.get() > 0) {
+            // Crossings are queued before they are counted, so a counted one is always there
+            Crossing crossing = crossings.poll();
+            for (AlertListener listener : listeners) {
+                for (Alert alert : crossing.alerts) {
+                    try {
+                        listener.alertTriggered(alert, crossing.oldPrice, crossing.newPrice);
+                    } catch (RuntimeException e) {
+                        // A failing listener must not stop delivery to the others
+                        LOGGER.log(Level.WARNING, "Alert listener failed on " + alert, e);
+                    }
+                }
+            }
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Waits until every alert queued so far has been delivered, for callers such as batch mode
+     * that need notifications in a fixed place in their output. Returns at once when nothing
+     * is queued.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitDelivery() throws InterruptedException {
+        if (pending.get() == 0) return;
+        try {
+            delivery.submit(this::deliver).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Alert delivery failed", e);
+        }
+    }
+
+    /**
+     * Stops the delivery thread after the alerts already queued are delivered.
+     */
+    @Override
+    public void close() {
+        delivery.shutdown();
+    }
+
+    /**
+     * Creates a search key with both bounds at the given price, ordered among the alerts with
+     * that bound by the given number.
+     */
+    private static Alert probe(double price, int id) {
+        return new Alert(id, SymbolDictionary.NONE, price, price);
+    }
+}
@@ -0,0 +1,444 @@
+package ePortfolio;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code Backtester} class replays historical daily prices through a {@code Portfolio}
+ * while a strategy trades, and records the portfolio's value after every day.
+ *
+ * <p>The price file has one {@code date,symbol,price} line per price, ordered by date, with
+ * dates written as {@code yyyy-mm-dd}. Each date is one bar. Prices are read one line at a time,
+ * so the file is never held in memory; on each bar the prices of symbols held are applied with
+ * {@link Portfolio#updatePrices(String, double)}, the strategy trades through
+ * {@link Portfolio#buyInvestment} and {@link Portfolio#sellInvestment}, and the equity, market
+ * value, realized gain and unrealized gain are appended to primitive arrays in the
+ * {@link Result}.</p>
+ *
+ * <p>Equity is the market value of the holdings plus cash, where cash starts at zero, falls by
+ * the book value added by each buy and rises by the proceeds of each sale. Every run uses its own
+ * portfolio, so independent runs are safe to run in parallel with {@link #runAll}.</p>
+ */
+public class Backtester {
+
+    /**
+     * A trading strategy, called once per bar after that bar's prices are applied.
+     */
+    public interface Strategy {
+        /**
+         * Trades on a bar.
+         *
+         * @param date   the date of the bar, as {@code yyyymmdd}
+         * @param trader places trades and gives access to the portfolio
+         * @throws IOException if the strategy reads its trades from a file that cannot be read
+         */
+        void onBar(int date, Trader trader) throws IOException;
+    }
+
+    /**
+     * Places a strategy's trades against the portfolio of one run and keeps track of the cash
+     * and realized gain they produce.
+     */
+    public static class Trader {
+        private final Portfolio portfolio;
+        private double cash;
+        private double realizedGain;
+        private int rejectedTrades;
+
+        private Trader(Portfolio portfolio) {
+            this.portfolio = portfolio;
+        }
+
+        /**
+         * Gets the portfolio being traded. Strategies may read it but should trade only through
+         * this trader so the cash and realized gain stay correct.
+         *
+         * @return the portfolio
+         */
+        public Portfolio getPortfolio() {
+            return portfolio;
+        }
+
+        /**
+         * Buys an investment.
+         *
+         * @param type     stock or mutualfund
+         * @param symbol   the symbol to buy
+         * @param name     the name of the investment
+         * @param quantity the quantity to buy
+         * @param price    the price per unit
+         */
+        public void buy(String type, String symbol, String name, int quantity, double price) {
+            int position = portfolio.symbolPosition(symbol);
+            Investment before = position >= 0 ? portfolio.investmentAt(position) : null;
+            int quantityBefore = before != null ? before.getQuantity() : 0;
+            double bookBefore = before != null ? before.getBookValue() : 0;
+
+            portfolio.buyInvestment(type, symbol, name, quantity, price);
+
+            position = portfolio.symbolPosition(symbol);
+            Investment after = position >= 0 ? portfolio.investmentAt(position) : null;
+            if (after == null || after.getQuantity() == quantityBefore) {
+                // The name or symbol clashed with another holding
+                rejectedTrades++;
+                return;
+            }
+            cash -= after.getBookValue() - bookBefore;
+        }
+
+        /**
+         * Sells an investment. A sale of a symbol not held, or of more than is held, is
+         * counted as rejected.
+         *
+         * @param symbol   the symbol to sell
+         * @param quantity the quantity to sell
+         * @param price    the price per unit
+         */
+        public void sell(String symbol, int quantity, double price) {
+            int position = portfolio.symbolPosition(symbol);
+            if (position < 0 || portfolio.investmentAt(position).getQuantity() < quantity) {
+                rejectedTrades++;
+                return;
+            }
+            Investment investment = portfolio.investmentAt(position);
+            double bookBefore = investment.getBookValue();
+            double proceeds = portfolio.sellInvestment(symbol, quantity, price);
+            cash += proceeds;
+            realizedGain += proceeds - (bookBefore - investment.getBookValue());
+        }
+    }
+
+    /**
+     * A strategy that replays a file of trades, streaming it alongside the prices. Each line is
+     * {@code date,buy,symbol,quantity,price,type,name} or {@code date,sell,symbol,quantity,price},
+     * ordered by date. A trade is placed on the first bar on or after its date.
+     */
+    public static class TradeFile implements Strategy, Closeable {
+        private final BufferedReader reader;
+        private String[] pending;
+        private int pendingDate;
+
+        /**
+         * Opens a trade file.
+         *
+         * @param path the file to read
+         * @throws IOException if the file cannot be opened
+         */
+        public TradeFile(Path path) throws IOException {
+            reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void onBar(int date, Trader trader) throws IOException {
+            while (true) {
+                if (pending == null && !readNext()) return;
+                if (pendingDate > date) return;
+
+                String[] fields = pending;
+                pending = null;
+                String symbol = fields[2].trim();
+                int quantity = Integer.parseInt(fields[3].trim());
+                double price = Double.parseDouble(fields[4].trim());
+                if (fields[1].trim().equalsIgnoreCase("buy")) {
+                    if (fields.length < 7) {
+                        throw new IllegalArgumentException("A buy needs a type and name: " + String.join(",", fields));
+                    }
+                    trader.buy(fields[5].trim(), symbol, fields[6].trim(), quantity, price);
+                } else if (fields[1].trim().equalsIgnoreCase("sell")) {
+                    trader.sell(symbol, quantity, price);
+                } else {
+                    throw new IllegalArgumentException("Unknown trade action: " + fields[1]);
+                }
+            }
+        }
+
+        /**
+         * Reads the next trade into {@code pending}, skipping blank lines and a header.
+         *
+         * @return {@code false} at the end of the file
+         */
+        private boolean readNext() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("date")) continue;
+                pending = line.split(",", 7);
+                if (pending.length < 5) {
+                    throw new IllegalArgumentException("Invalid trade: " + line);
+                }
+                pendingDate = parseDate(pending[0], 0);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * The recorded series of a run, one entry per bar.
+     */
+    public static class Result {
+        private int bars;
+        private int[] dates = new int[256];
+        private double[] equity = new double[256];
+        private double[] marketValue = new double[256];
+        private double[] realizedGain = new double[256];
+        private double[] unrealizedGain = new double[256];
+        private int rejectedTrades;
+
+        private Result() {
+        }
+
+        private void record(int date, Trader trader) {
+            if (bars == dates.length) {
+                int capacity = bars * 2;
+                dates = Arrays.copyOf(dates, capacity);
+                equity = Arrays.copyOf(equity, capacity);
+                marketValue = Arrays.copyOf(marketValue, capacity);
+                realizedGain = Arrays.copyOf(realizedGain, capacity);
+                unrealizedGain = Arrays.copyOf(unrealizedGain, capacity);
+            }
+            Portfolio portfolio = trader.portfolio;
+            double value = 0;
+            for (int i = 0; i < portfolio.size(); i++) {
+                Investment investment = portfolio.investmentAt(i);
+                value += investment.getMarketValue();
+            }
+            dates[bars] = date;
+            marketValue[bars] = value;
+            equity[bars] = value + trader.cash;
+            realizedGain[bars] = trader.realizedGain;
+            unrealizedGain[bars] = portfolio.getTotalGains();
+            bars++;
+        }
+
+        private void finish(Trader trader) {
+            dates = Arrays.copyOf(dates, bars);
+            equity = Arrays.copyOf(equity, bars);
+            marketValue = Arrays.copyOf(marketValue, bars);
+            realizedGain = Arrays.copyOf(realizedGain, bars);
+            unrealizedGain = Arrays.copyOf(unrealizedGain, bars);
+            rejectedTrades = trader.rejectedTrades;
+        }
+
+        /**
+         * Gets the number of bars replayed.
+         *
+         * @return the number of bars
+         */
+        public int getBars() {
+            return bars;
+        }
+
+        /**
+         * Gets the date of every bar, as {@code yyyymmdd}. The array is shared, not copied.
+         *
+         * @return the dates
+         */
+        public int[] getDates() {
+            return dates;
+        }
+
+        /**
+         * Gets the equity after every bar. The array is shared, not copied.
+         *
+         * @return the equity curve
+         */
+        public double[] getEquity() {
+            return equity;
+        }
+
+        /**
+         * Gets the market value of the holdings after every bar. The array is shared, not copied.
+         *
+         * @return the market values
+         */
+        public double[] getMarketValue() {
+            return marketValue;
+        }
+
+        /**
+         * Gets the realized gain so far after every bar. The array is shared, not copied.
+         *
+         * @return the cumulative realized gains
+         */
+        public double[] getRealizedGain() {
+            return realizedGain;
+        }
+
+        /**
+         * Gets the unrealized gain of the holdings after every bar. The array is shared, not copied.
+         *
+         * @return the unrealized gains
+         */
+        public double[] getUnrealizedGain() {
+            return unrealizedGain;
+        }
+
+        /**
+         * Gets the number of trades that were rejected, such as sales of symbols not held.
+         *
+         * @return the number of rejected trades
+         */
+        public int getRejectedTrades() {
+            return rejectedTrades;
+        }
+
+        /**
+         * Gets the largest fall of the equity from a previous peak.
+         *
+         * @return the maximum drawdown as a positive amount
+         */
+        public double getMaxDrawdown() {
+            double peak = Double.NEGATIVE_INFINITY, drawdown = 0;
+            for (int i = 0; i < bars; i++) {
+                peak = Math.max(peak, equity[i]);
+                drawdown = Math.max(drawdown, peak - equity[i]);
+            }
+            return drawdown;
+        }
+
+        /**
+         * Summarizes the run with its final values.
+         *
+         * @return the formatted summary
+         */
+        @Override
+        public String toString() {
+            int last = bars - 1;
+            return String.format("Bars: %d\nFinal Equity: %.2f\nRealized Gain: %.2f\nUnrealized Gain: %.2f\n"
+                            + "Max Drawdown: %.2f\nRejected Trades: %d",
+                    bars, last >= 0 ? equity[last] : 0.0, last >= 0 ? realizedGain[last] : 0.0,
+                    last >= 0 ? unrealizedGain[last] : 0.0, getMaxDrawdown(), rejectedTrades);
+        }
+    }
+
+    /**
+     * Replays a price file with a strategy, starting from an empty portfolio.
+     *
+     * @param prices   the price file
+     * @param strategy the strategy to trade with
+     * @return the recorded series
+     * @throws IOException              if a file cannot be read
+     * @throws IllegalArgumentException if a line cannot be parsed
+     */
+    public static Result run(Path prices, Strategy strategy) throws IOException {
+        Portfolio portfolio = new Portfolio();
+        portfolio.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+        Trader trader = new Trader(portfolio);
+        Result result = new Result();
+
+        try (BufferedReader reader = Files.newBufferedReader(prices, StandardCharsets.UTF_8)) {
+            int barDate = -1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("date")) continue;
+                int firstComma = line.indexOf(',');
+                int secondComma = line.indexOf(',', firstComma + 1);
+                if (firstComma < 0 || secondComma < 0) {
+                    throw new IllegalArgumentException("Invalid price: " + line);
+                }
+                int date = parseDate(line, 0);
+                if (date != barDate) {
+                    if (date < barDate) {
+                        throw new IllegalArgumentException("Prices are not in date order: " + line);
+                    }
+                    if (barDate >= 0) {
+                        strategy.onBar(barDate, trader);
+                        result.record(barDate, trader);
+                    }
+                    barDate = date;
+                }
+
+                // Prices of symbols not held are skipped without building an update message
+                String symbol = line.substring(firstComma + 1, secondComma).trim();
+                if (portfolio.symbolPosition(symbol) >= 0) {
+                    portfolio.updatePrices(symbol, Double.parseDouble(line.substring(secondComma + 1).trim()));
+                }
+            }
+            if (barDate >= 0) {
+                strategy.onBar(barDate, trader);
+                result.record(barDate, trader);
+            }
+        }
+        result.finish(trader);
+        return result;
+    }
+
+    /**
+     * Replays a price file once for each trade file, running the replays in parallel on the
+     * fork-join pool. Each replay has its own portfolio and reads the files independently.
+     *
+     * @param prices     the price file
+     * @param tradeFiles one trade file per strategy
+     * @return the results, in the same order as the trade files
+     * @throws IOException              if a file cannot be read
+     * @throws IllegalArgumentException if a line cannot be parsed
+     */
+    public static List<Result> runAll(Path prices, List<Path> tradeFiles) throws IOException {
+        List<Callable<Result>> runs = new ArrayList<>();
+        for (Path tradeFile : tradeFiles) {
+            runs.add(() -> {
+                try (TradeFile trades = new TradeFile(tradeFile)) {
+                    return run(prices, trades);
+                }
+            });
+        }
+
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> future : ForkJoinPool.commonPool().invokeAll(runs)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Backtest interrupted", e);
+        } catch (ExecutionException | RuntimeException e) {
+            // The pool may wrap a failed run more than once; report the original failure
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof IllegalArgumentException) throw (IllegalArgumentException) cause;
+            }
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Parses a {@code yyyy-mm-dd} date at the given offset without allocating.
+     *
+     * @return the date as {@code yyyymmdd}
+     * @throws IllegalArgumentException if the text is not a date
+     */
+    private static int parseDate(String text, int offset) {
+        int date = 0;
+        for (int i = offset; i < offset + 10; i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (i - offset == 4 || i - offset == 7) {
+                if (c != '-') throw new IllegalArgumentException("Invalid date: " + text);
+            } else if (c >= '0' && c <= '9') {
+                date = date * 10 + (c - '0');
+            } else {
+                throw new IllegalArgumentException("Invalid date: " + text);
+            }
+        }
+        return date;
+    }
+}
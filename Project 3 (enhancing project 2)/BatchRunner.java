@@ -0,0 +1,942 @@
+package ePortfolio;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code BatchRunner} class runs portfolio commands from a script without the GUI, one
+ * command per line:
+ *
+ * <pre>
+ * buy stock|mutualfund SYMBOL QUANTITY PRICE [NAME...]
+ * sell SYMBOL QUANTITY PRICE
+ * update SYMBOL PRICE
+ * gain
+ * rollup type|letter
+ * rollup tag SYMBOL=TAG [SYMBOL=TAG...]
+ * search QUERY
+ * export holdings|gains FILE
+ * export search FILE QUERY
+ * rebalance SYMBOL=WEIGHT [SYMBOL=WEIGHT...]
+ * risk SCENARIOS [SEED]
+ * backtest PRICES TRADES [TRADES...]
+ * stats
+ * memory
+ * footprint [BUDGET]
+ * eventlog FILE
+ * asof TIME
+ * order buy limit|stop stock|mutualfund SYMBOL QUANTITY PRICE [NAME...]
+ * order sell limit|stop SYMBOL QUANTITY PRICE
+ * cancel ORDER
+ * orders SYMBOL
+ * alert SYMBOL below|above PRICE
+ * alert SYMBOL outside LOW HIGH
+ * unalert ALERT
+ * alerts SYMBOL
+ * load FILE
+ * consolidate DIRECTORY
+ * save FILE
+ * quit
+ * </pre>
+ *
+ * <p>The name of a buy may be left out when the symbol is already held. Search queries use the
+ * language described in {@link QueryExpression}. A footprint budget is the most bytes per position
+ * the portfolio may use; when the estimate is over it, the command is reported as an error so a
+ * scheduled script can check for growth. {@code eventlog} starts recording every change in an
+ * {@link EventLog}, first restoring the latest state from it if the portfolio is still empty, and
+ * {@code asof} prints the portfolio as it was at a time given as a date, a local date and time
+ * such as {@code 2024-05-17T10:31}, or epoch milliseconds. An {@code order} rests in an
+ * {@link OrderEngine} until an {@code update} crosses its price, and is then filled at the updated
+ * price. An {@code alert} on a held symbol is printed after each update that moves the price out
+ * of its band. A {@code rollup} prints the gains of each group, as described in {@link Rollup}. An
+ * {@code export} writes the holdings, the gains or the results of a search to a CSV file with a
+ * {@link CsvExporter}. A {@code rebalance} plans the trades that bring the holdings to the given
+ * weights with a {@link Rebalancer}, prints them and makes them. A {@code consolidate} replaces
+ * the holdings with the positions of every portfolio file in a directory, merged by symbol with a
+ * {@link Consolidator}. Blank lines and lines starting with {@code #} are skipped, and a line that
+ * cannot be parsed is reported with its line number without stopping the script.</p>
+ *
+ * <p>Input is read in large blocks and tokenized in place: numbers are parsed straight from the
+ * character buffer, and symbols and names are looked up in a small cache so a repeated symbol
+ * does not allocate a new string. Parsed commands are collected into batches held in parallel
+ * arrays and then run one batch at a time. Output is buffered and only flushed when the
+ * script ends, so the caller should pass a {@code PrintStream} without automatic flushing.</p>
+ */
+public class BatchRunner {
+    /**
+     * The number of commands parsed before they are run.
+     */
+    public static final int BATCH_SIZE = 4096;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CACHE_SIZE = 1 << 12;
+
+    private static final byte BUY = 1;
+    private static final byte SELL = 2;
+    private static final byte UPDATE = 3;
+    private static final byte GAIN = 4;
+    private static final byte SEARCH = 5;
+    private static final byte LOAD = 6;
+    private static final byte SAVE = 7;
+    private static final byte QUIT = 8;
+    private static final byte INVALID = 9;
+    private static final byte RISK = 10;
+    private static final byte BACKTEST = 11;
+    private static final byte STATS = 12;
+    private static final byte MEMORY = 13;
+    private static final byte FOOTPRINT = 14;
+    private static final byte EVENT_LOG = 15;
+    private static final byte AS_OF = 16;
+    private static final byte ORDER = 17;
+    private static final byte CANCEL = 18;
+    private static final byte ORDERS = 19;
+    private static final byte ALERT = 20;
+    private static final byte UNALERT = 21;
+    private static final byte ALERTS = 22;
+    private static final byte ROLLUP = 23;
+    private static final byte EXPORT = 24;
+    private static final byte REBALANCE = 25;
+    private static final byte CONSOLIDATE = 26;
+
+    /**
+     * The reports an {@code export} line can write.
+     */
+    private enum ExportReport {
+        HOLDINGS, GAINS, SEARCH
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Portfolio portfolio;
+    private final PrintStream out;
+    private EventLog eventLog;
+    private OrderEngine orderEngine;
+    private AlertEngine alertEngine;
+
+    // The current batch of parsed commands; texts hold names, queries, file names or errors,
+    // and ceilings hold the upper bound of an alert band
+    private final byte[] ops = new byte[BATCH_SIZE];
+    private final String[] symbols = new String[BATCH_SIZE];
+    private final String[] texts = new String[BATCH_SIZE];
+    private final boolean[] stocks = new boolean[BATCH_SIZE];
+    private final int[] quantities = new int[BATCH_SIZE];
+    private final double[] prices = new double[BATCH_SIZE];
+    private final double[] ceilings = new double[BATCH_SIZE];
+    private final long[] seeds = new long[BATCH_SIZE];
+    private final long[] lineNumbers = new long[BATCH_SIZE];
+    // The time of an asof, the type of an order, the grouping of a rollup, and the report and
+    // file of an export
+    private final long[] times = new long[BATCH_SIZE];
+    private final OrderEngine.Type[] orderTypes = new OrderEngine.Type[BATCH_SIZE];
+    private final Rollup[] groupings = new Rollup[BATCH_SIZE];
+    private final ExportReport[] exportReports = new ExportReport[BATCH_SIZE];
+    private final Path[] exportFiles = new Path[BATCH_SIZE];
+    private int count;
+
+    // The line being tokenized and the bounds of the current token within it
+    private char[] line;
+    private int cursor;
+    private int lineEnd;
+    private int tokenStart;
+    private int tokenEnd;
+
+    private final String[] stringCache = new String[CACHE_SIZE];
+    private long lineNumber;
+    private long executed;
+    private boolean quit;
+
+    /**
+     * Constructs a runner for the given portfolio. The portfolio's status messages are printed
+     * to the same stream as the command results, so they stay in order.
+     *
+     * @param portfolio the portfolio to run the commands against
+     * @param out       the stream to print results to
+     */
+    public BatchRunner(Portfolio portfolio, PrintStream out) {
+        this.portfolio = portfolio;
+        this.out = out;
+        portfolio.setConsole(out);
+    }
+
+    /**
+     * Runs every command read from the input until it ends or a {@code quit} command is run.
+     *
+     * @param in the script to run
+     * @return the number of commands run, not counting lines that could not be parsed
+     * @throws IOException if the script cannot be read
+     */
+    public long run(Reader in) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int start = 0, filled = 0;
+        boolean endOfInput = false;
+
+        while (!quit) {
+            // Move the unfinished line to the front and read the next block after it
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, filled - start);
+                filled -= start;
+                start = 0;
+            }
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                filled += read;
+            }
+
+            for (int i = start; i < filled; i++) {
+                if (buffer[i] == '\n') {
+                    parseLine(buffer, start, i);
+                    start = i + 1;
+                    if (count == BATCH_SIZE) {
+                        runBatch();
+                        if (quit) break;
+                    }
+                }
+            }
+            if (endOfInput) {
+                if (start < filled && !quit) {
+                    parseLine(buffer, start, filled);
+                }
+                break;
+            }
+        }
+        if (!quit) {
+            runBatch();
+        }
+        closeEventLog();
+        if (alertEngine != null) {
+            alertEngine.close();
+        }
+        out.flush();
+        return executed;
+    }
+
+    /**
+     * Parses one line into the next slot of the batch. Errors are stored as an invalid command
+     * so they are reported in order with the results of the other commands.
+     */
+    private void parseLine(char[] buffer, int from, int to) {
+        lineNumber++;
+        if (to > from && buffer[to - 1] == '\r') to--;
+        line = buffer;
+        cursor = from;
+        lineEnd = to;
+        if (!nextToken() || line[tokenStart] == '#') return;
+
+        int slot = count;
+        lineNumbers[slot] = lineNumber;
+        symbols[slot] = null;
+        texts[slot] = null;
+        try {
+            if (tokenIs("buy") || tokenIs("b")) {
+                ops[slot] = BUY;
+                requireToken("type");
+                if (tokenIs("stock") || tokenIs("s")) {
+                    stocks[slot] = true;
+                } else if (tokenIs("mutualfund") || tokenIs("m")) {
+                    stocks[slot] = false;
+                } else {
+                    throw new IllegalArgumentException("type must be stock or mutualfund: " + tokenText());
+                }
+                symbols[slot] = nextSymbol();
+                quantities[slot] = nextQuantity();
+                prices[slot] = nextPrice();
+                texts[slot] = rest(false);
+            } else if (tokenIs("sell")) {
+                ops[slot] = SELL;
+                symbols[slot] = nextSymbol();
+                quantities[slot] = nextQuantity();
+                prices[slot] = nextPrice();
+                requireEnd();
+            } else if (tokenIs("update") || tokenIs("u")) {
+                ops[slot] = UPDATE;
+                symbols[slot] = nextSymbol();
+                prices[slot] = nextPrice();
+                requireEnd();
+            } else if (tokenIs("gain") || tokenIs("getgain") || tokenIs("g")) {
+                ops[slot] = GAIN;
+                requireEnd();
+            } else if (tokenIs("rollup")) {
+                ops[slot] = ROLLUP;
+                parseRollup(slot);
+            } else if (tokenIs("export")) {
+                ops[slot] = EXPORT;
+                parseExport(slot);
+            } else if (tokenIs("rebalance")) {
+                ops[slot] = REBALANCE;
+                texts[slot] = rest(true);
+                Rebalancer.parseTargets(texts[slot]);
+            } else if (tokenIs("search")) {
+                ops[slot] = SEARCH;
+                texts[slot] = rest(true);
+            } else if (tokenIs("risk")) {
+                ops[slot] = RISK;
+                quantities[slot] = nextQuantity();
+                seeds[slot] = nextToken() ? parseSeed() : 0;
+                requireEnd();
+            } else if (tokenIs("backtest")) {
+                ops[slot] = BACKTEST;
+                texts[slot] = rest(true);
+            } else if (tokenIs("stats")) {
+                ops[slot] = STATS;
+                requireEnd();
+            } else if (tokenIs("memory")) {
+                ops[slot] = MEMORY;
+                requireEnd();
+            } else if (tokenIs("footprint")) {
+                ops[slot] = FOOTPRINT;
+                quantities[slot] = nextToken() ? parseBudget() : 0;
+                requireEnd();
+            } else if (tokenIs("eventlog")) {
+                ops[slot] = EVENT_LOG;
+                texts[slot] = rest(true);
+            } else if (tokenIs("asof")) {
+                ops[slot] = AS_OF;
+                times[slot] = EventLog.parseTime(rest(true));
+            } else if (tokenIs("order")) {
+                ops[slot] = ORDER;
+                parseOrder(slot);
+            } else if (tokenIs("cancel")) {
+                ops[slot] = CANCEL;
+                quantities[slot] = nextQuantity();
+                requireEnd();
+            } else if (tokenIs("orders")) {
+                ops[slot] = ORDERS;
+                symbols[slot] = nextSymbol();
+                requireEnd();
+            } else if (tokenIs("alert")) {
+                ops[slot] = ALERT;
+                parseAlert(slot);
+            } else if (tokenIs("unalert")) {
+                ops[slot] = UNALERT;
+                quantities[slot] = nextQuantity();
+                requireEnd();
+            } else if (tokenIs("alerts")) {
+                ops[slot] = ALERTS;
+                symbols[slot] = nextSymbol();
+                requireEnd();
+            } else if (tokenIs("load")) {
+                ops[slot] = LOAD;
+                texts[slot] = rest(true);
+            } else if (tokenIs("consolidate")) {
+                ops[slot] = CONSOLIDATE;
+                texts[slot] = rest(true);
+            } else if (tokenIs("save")) {
+                ops[slot] = SAVE;
+                texts[slot] = rest(true);
+            } else if (tokenIs("quit") || tokenIs("q")) {
+                ops[slot] = QUIT;
+            } else {
+                throw new IllegalArgumentException("unknown command: " + tokenText());
+            }
+        } catch (IllegalArgumentException e) {
+            ops[slot] = INVALID;
+            texts[slot] = e.getMessage();
+        }
+        count++;
+    }
+
+    /**
+     * Runs the parsed commands in order and empties the batch.
+     */
+    private void runBatch() {
+        for (int i = 0; i < count && !quit; i++) {
+            switch (ops[i]) {
+                case BUY: {
+                    String name = texts[i];
+                    if (name == null) {
+                        int position = portfolio.symbolPosition(symbols[i]);
+                        if (position < 0) {
+                            out.println("Line " + lineNumbers[i] + ": a name is required to buy new symbol " + symbols[i]);
+                            continue;
+                        }
+                        name = portfolio.investmentAt(position).getName();
+                    }
+                    portfolio.buyInvestment(stocks[i] ? "stock" : "mutualfund", symbols[i], name, quantities[i], prices[i]);
+                    break;
+                }
+                case SELL:
+                    portfolio.sellInvestment(symbols[i], quantities[i], prices[i]);
+                    break;
+                case UPDATE:
+                    out.println(portfolio.updatePrices(symbols[i], prices[i]));
+                    if (alertEngine != null) {
+                        awaitAlerts();
+                    }
+                    break;
+                case GAIN:
+                    out.println("Total Gain: " + String.format("%.2f", portfolio.getTotalGains()));
+                    break;
+                case ROLLUP:
+                    out.println(portfolio.rollup(groupings[i]));
+                    break;
+                case EXPORT:
+                    if (!export(i)) continue;
+                    break;
+                case REBALANCE: {
+                    Rebalancer.Plan plan;
+                    try {
+                        plan = new Rebalancer(Rebalancer.parseTargets(texts[i])).plan(portfolio);
+                    } catch (IllegalArgumentException e) {
+                        out.println("Line " + lineNumbers[i] + ": " + e.getMessage());
+                        continue;
+                    }
+                    for (Rebalancer.Trade trade : plan.getTrades()) {
+                        out.println(trade);
+                    }
+                    for (String symbol : plan.getUnheldSymbols()) {
+                        out.println("Not held, so its weight is left as cash: " + symbol);
+                    }
+                    out.println(plan);
+                    plan.applyTo(portfolio);
+                    break;
+                }
+                case SEARCH:
+                    try {
+                        out.println(portfolio.screenResults(texts[i]));
+                    } catch (IllegalArgumentException e) {
+                        out.println("Line " + lineNumbers[i] + ": " + e.getMessage());
+                        continue;
+                    }
+                    break;
+                case RISK:
+                    out.println(new RiskEngine(portfolio.getInvestments()).simulate(quantities[i], seeds[i]));
+                    break;
+                case BACKTEST:
+                    if (!backtest(texts[i], lineNumbers[i])) continue;
+                    break;
+                case STATS:
+                    out.println("Gain Cache Hits: " + Investment.getCacheHits());
+                    out.println("Gain Cache Misses: " + Investment.getCacheMisses());
+                    break;
+                case MEMORY:
+                    out.println(MemoryReport.of(List.of(portfolio)));
+                    break;
+                case FOOTPRINT: {
+                    FootprintReport report = portfolio.footprint();
+                    out.println(report);
+                    if (quantities[i] > 0 && !report.isWithinBudget(quantities[i])) {
+                        out.println("Line " + lineNumbers[i] + ": " + String.format("%.1f", report.getBytesPerPosition())
+                                    + " bytes per position is over the budget of " + quantities[i]);
+                        continue;
+                    }
+                    break;
+                }
+                case EVENT_LOG:
+                    if (!openEventLog(texts[i], lineNumbers[i])) continue;
+                    break;
+                case AS_OF:
+                    if (!printAsOf(times[i], lineNumbers[i])) continue;
+                    break;
+                case ORDER:
+                    if (!placeOrder(i)) continue;
+                    break;
+                case CANCEL:
+                    if (orderEngine == null || !orderEngine.cancel(quantities[i])) {
+                        out.println("Line " + lineNumbers[i] + ": no resting order " + quantities[i]);
+                        continue;
+                    }
+                    out.println("Order " + quantities[i] + " cancelled.");
+                    break;
+                case ORDERS: {
+                    List<OrderEngine.Order> orders = orderEngine != null ?
+                                                     orderEngine.restingOrders(symbols[i]) : List.of();
+                    for (OrderEngine.Order order : orders) {
+                        out.println(order);
+                    }
+                    out.println("Resting orders for " + symbols[i] + ": " + orders.size());
+                    break;
+                }
+                case ALERT:
+                    if (portfolio.symbolPosition(symbols[i]) < 0) {
+                        out.println("Line " + lineNumbers[i] + ": " + symbols[i] + " is not held");
+                        continue;
+                    }
+                    if (alertEngine == null) {
+                        alertEngine = new AlertEngine();
+                        alertEngine.addListener((alert, oldPrice, newPrice) -> out.println(
+                                alert + ", price " + String.format("%.2f", oldPrice) + " -> " + String.format("%.2f", newPrice)));
+                        portfolio.setAlertEngine(alertEngine);
+                    }
+                    out.println(alertEngine.add(symbols[i], prices[i], ceilings[i]));
+                    break;
+                case UNALERT:
+                    if (alertEngine == null || !alertEngine.remove(quantities[i])) {
+                        out.println("Line " + lineNumbers[i] + ": no active alert " + quantities[i]);
+                        continue;
+                    }
+                    out.println("Alert " + quantities[i] + " removed.");
+                    break;
+                case ALERTS: {
+                    List<AlertEngine.Alert> alerts = alertEngine != null ? alertEngine.alerts(symbols[i]) : List.of();
+                    for (AlertEngine.Alert alert : alerts) {
+                        out.println(alert);
+                    }
+                    out.println("Active alerts for " + symbols[i] + ": " + alerts.size());
+                    break;
+                }
+                case LOAD:
+                    portfolio.loadInvestments(texts[i]);
+                    break;
+                case CONSOLIDATE:
+                    try {
+                        List<Path> files = Consolidator.listFiles(Paths.get(texts[i]));
+                        portfolio.replaceInvestments(Consolidator.merge(files));
+                        out.println("Consolidated " + files.size() + " files into " + portfolio.size() + " investments.");
+                    } catch (IOException | IllegalArgumentException e) {
+                        out.println("Line " + lineNumbers[i] + ": Unable to consolidate: " + e.getMessage());
+                        continue;
+                    }
+                    break;
+                case SAVE:
+                    portfolio.saveInvestments(texts[i]);
+                    break;
+                case QUIT:
+                    quit = true;
+                    break;
+                default:
+                    out.println("Line " + lineNumbers[i] + ": " + texts[i]);
+                    continue;
+            }
+            executed++;
+        }
+        count = 0;
+    }
+
+    /**
+     * Parses the rest of an order line.
+     */
+    private void parseOrder(int slot) {
+        requireToken("side");
+        boolean buy;
+        if (tokenIs("buy")) {
+            buy = true;
+        } else if (tokenIs("sell")) {
+            buy = false;
+        } else {
+            throw new IllegalArgumentException("side must be buy or sell: " + tokenText());
+        }
+        requireToken("order type");
+        OrderEngine.Type type;
+        if (tokenIs("limit")) {
+            type = buy ? OrderEngine.Type.BUY_LIMIT : OrderEngine.Type.SELL_LIMIT;
+        } else if (tokenIs("stop")) {
+            type = buy ? OrderEngine.Type.BUY_STOP : OrderEngine.Type.SELL_STOP;
+        } else {
+            throw new IllegalArgumentException("order type must be limit or stop: " + tokenText());
+        }
+        orderTypes[slot] = type;
+        if (buy) {
+            requireToken("type");
+            if (tokenIs("stock") || tokenIs("s")) {
+                stocks[slot] = true;
+            } else if (tokenIs("mutualfund") || tokenIs("m")) {
+                stocks[slot] = false;
+            } else {
+                throw new IllegalArgumentException("type must be stock or mutualfund: " + tokenText());
+            }
+        }
+        symbols[slot] = nextSymbol();
+        quantities[slot] = nextQuantity();
+        prices[slot] = nextPrice();
+        if (buy) {
+            texts[slot] = rest(false);
+        } else {
+            requireEnd();
+        }
+    }
+
+    /**
+     * Parses the rest of a rollup line into its grouping. Tags are parsed here, so errors carry
+     * the line number.
+     */
+    private void parseRollup(int slot) {
+        requireToken("grouping");
+        if (tokenIs("type")) {
+            groupings[slot] = Rollup.byType();
+            requireEnd();
+        } else if (tokenIs("letter")) {
+            groupings[slot] = Rollup.byFirstLetter();
+            requireEnd();
+        } else if (tokenIs("tag")) {
+            groupings[slot] = Rollup.byTag(Rollup.parseTags(rest(true)));
+        } else {
+            throw new IllegalArgumentException("grouping must be type, letter or tag: " + tokenText());
+        }
+    }
+
+    /**
+     * Parses the rest of an export line into its report and file, and the query of a search
+     * into the text column.
+     */
+    private void parseExport(int slot) {
+        requireToken("report");
+        if (tokenIs("holdings")) {
+            exportReports[slot] = ExportReport.HOLDINGS;
+        } else if (tokenIs("gains")) {
+            exportReports[slot] = ExportReport.GAINS;
+        } else if (tokenIs("search")) {
+            exportReports[slot] = ExportReport.SEARCH;
+        } else {
+            throw new IllegalArgumentException("report must be holdings, gains or search: " + tokenText());
+        }
+        requireToken("file");
+        exportFiles[slot] = Paths.get(tokenText());
+        if (exportReports[slot] == ExportReport.SEARCH) {
+            texts[slot] = rest(true);
+            // Checked here so a bad query is reported before the file is replaced
+            QueryExpression.parse(texts[slot]);
+        } else {
+            requireEnd();
+        }
+    }
+
+    /**
+     * Writes a parsed export to its file and reports the number of rows written.
+     */
+    private boolean export(int i) {
+        try (CsvExporter exporter = CsvExporter.open(exportFiles[i])) {
+            switch (exportReports[i]) {
+                case HOLDINGS:
+                    exporter.exportHoldings(portfolio);
+                    break;
+                case GAINS:
+                    exporter.exportGains(portfolio);
+                    break;
+                default:
+                    exporter.exportSearch(portfolio, texts[i]);
+            }
+            out.println("Exported " + exporter.getRowCount() + " rows to " + exportFiles[i] + ".");
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            out.println("Line " + lineNumbers[i] + ": export failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Parses the rest of an alert line. The floor is kept in the price column and the ceiling
+     * in its own column, with an infinite value for a missing bound.
+     */
+    private void parseAlert(int slot) {
+        symbols[slot] = nextSymbol();
+        requireToken("below, above or outside");
+        if (tokenIs("below")) {
+            prices[slot] = nextPrice();
+            ceilings[slot] = Double.POSITIVE_INFINITY;
+        } else if (tokenIs("above")) {
+            prices[slot] = Double.NEGATIVE_INFINITY;
+            ceilings[slot] = nextPrice();
+        } else if (tokenIs("outside")) {
+            prices[slot] = nextPrice();
+            ceilings[slot] = nextPrice();
+            if (ceilings[slot] < prices[slot]) {
+                throw new IllegalArgumentException("the high price must not be below the low price");
+            }
+        } else {
+            throw new IllegalArgumentException("alert must be below, above or outside: " + tokenText());
+        }
+        requireEnd();
+    }
+
+    /**
+     * Waits for the alerts of the last update to be printed, so they appear right after it.
+     */
+    private void awaitAlerts() {
+        try {
+            alertEngine.awaitDelivery();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Places a parsed order, attaching an order engine to the portfolio the first time. Like a
+     * buy, a buy order may leave out the name when the symbol is already held.
+     */
+    private boolean placeOrder(int i) {
+        OrderEngine.Type type = orderTypes[i];
+        String name = texts[i];
+        if (type.isBuy() && name == null) {
+            int position = portfolio.symbolPosition(symbols[i]);
+            if (position < 0) {
+                out.println("Line " + lineNumbers[i] + ": a name is required to buy new symbol " + symbols[i]);
+                return false;
+            }
+            name = portfolio.investmentAt(position).getName();
+        }
+        if (orderEngine == null) {
+            orderEngine = new OrderEngine();
+            portfolio.setOrderEngine(orderEngine);
+        }
+        out.println(orderEngine.place(type, symbols[i], stocks[i], name, quantities[i], prices[i]));
+        return true;
+    }
+
+    /**
+     * Starts recording changes in an event log, replacing any log already open. An empty
+     * portfolio is first restored to the latest state in the log, so a script can carry on
+     * where an earlier one stopped.
+     */
+    private boolean openEventLog(String filename, long lineNumber) {
+        closeEventLog();
+        try {
+            EventLog log = EventLog.open(Paths.get(filename));
+            if (portfolio.size() == 0) {
+                portfolio.restore(log.reconstructLatest().getInvestments());
+            }
+            portfolio.setEventLog(log);
+            eventLog = log;
+            out.println("Event log " + filename + ": " + portfolio.size() + " investments");
+            return true;
+        } catch (IOException e) {
+            out.println("Line " + lineNumber + ": unable to open event log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void closeEventLog() {
+        if (eventLog == null) return;
+        portfolio.setEventLog(null);
+        try {
+            eventLog.close();
+        } catch (IOException e) {
+            out.println("Error writing to the event log.");
+        }
+        eventLog = null;
+    }
+
+    /**
+     * Prints the investments held at a past time, rebuilt from the event log.
+     */
+    private boolean printAsOf(long timestamp, long lineNumber) {
+        if (eventLog == null) {
+            out.println("Line " + lineNumber + ": no event log is open");
+            return false;
+        }
+        try {
+            Portfolio past = eventLog.reconstruct(timestamp);
+            out.println("Portfolio at " + Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDateTime()
+                        + ": " + past.size() + " investments");
+            for (Investment investment : past.getInvestments()) {
+                out.println(investment);
+            }
+            out.println("Total Gain: " + String.format("%.2f", past.getTotalGains()));
+            return true;
+        } catch (IOException e) {
+            out.println("Line " + lineNumber + ": unable to read event log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Replays a price file once per trade file, in parallel, and prints a summary of each run.
+     *
+     * @param arguments  the price file followed by the trade files
+     * @param lineNumber the line of the command, for error messages
+     * @return {@code false} if the backtest could not be run
+     */
+    private boolean backtest(String arguments, long lineNumber) {
+        String[] files = arguments.split("\\s+");
+        if (files.length < 2) {
+            out.println("Line " + lineNumber + ": a price file and at least one trade file are required");
+            return false;
+        }
+        List<Path> tradeFiles = new ArrayList<>();
+        for (int f = 1; f < files.length; f++) {
+            tradeFiles.add(Paths.get(files[f]));
+        }
+        try {
+            List<Backtester.Result> results = Backtester.runAll(Paths.get(files[0]), tradeFiles);
+            for (int r = 0; r < results.size(); r++) {
+                out.println("Strategy: " + tradeFiles.get(r));
+                out.println(results.get(r));
+            }
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            out.println("Line " + lineNumber + ": backtest failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Moves to the next whitespace-separated token on the line.
+     *
+     * @return {@code false} if the line has no more tokens
+     */
+    private boolean nextToken() {
+        while (cursor < lineEnd && Character.isWhitespace(line[cursor])) cursor++;
+        if (cursor == lineEnd) return false;
+        tokenStart = cursor;
+        while (cursor < lineEnd && !Character.isWhitespace(line[cursor])) cursor++;
+        tokenEnd = cursor;
+        return true;
+    }
+
+    private void requireToken(String what) {
+        if (!nextToken()) {
+            throw new IllegalArgumentException("missing " + what);
+        }
+    }
+
+    private void requireEnd() {
+        if (nextToken()) {
+            throw new IllegalArgumentException("unexpected text: " + tokenText());
+        }
+    }
+
+    /**
+     * Checks whether the current token is the given lowercase word, ignoring case.
+     */
+    private boolean tokenIs(String word) {
+        if (tokenEnd - tokenStart != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(line[tokenStart + i]) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String tokenText() {
+        return new String(line, tokenStart, tokenEnd - tokenStart);
+    }
+
+    private String nextSymbol() {
+        requireToken("symbol");
+        return cached(tokenStart, tokenEnd);
+    }
+
+    /**
+     * Gets the rest of the line without surrounding whitespace.
+     *
+     * @param required whether an empty rest is an error
+     * @return the rest of the line, or {@code null} if it is empty and not required
+     */
+    private String rest(boolean required) {
+        int from = cursor, to = lineEnd;
+        while (from < to && Character.isWhitespace(line[from])) from++;
+        while (to > from && Character.isWhitespace(line[to - 1])) to--;
+        if (from == to) {
+            if (required) throw new IllegalArgumentException("missing argument");
+            return null;
+        }
+        return cached(from, to);
+    }
+
+    /**
+     * Returns a string with the given characters, reusing the cached string when the same text
+     * was seen recently.
+     */
+    private String cached(int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + line[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String text = stringCache[slot];
+        if (text != null && text.length() == to - from) {
+            int i = 0;
+            while (i < text.length() && text.charAt(i) == line[from + i]) i++;
+            if (i == text.length()) return text;
+        }
+        text = new String(line, from, to - from);
+        stringCache[slot] = text;
+        return text;
+    }
+
+    /**
+     * Parses the next token as a positive whole number.
+     */
+    private int nextQuantity() {
+        requireToken("quantity");
+        long value = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            char c = line[i];
+            if (c < '0' || c > '9' || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("invalid quantity: " + tokenText());
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (value <= 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid quantity: " + tokenText());
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses the current token as a random seed.
+     */
+    private long parseSeed() {
+        try {
+            return Long.parseLong(tokenText());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid seed: " + tokenText());
+        }
+    }
+
+    /**
+     * Parses the current token as a footprint budget in bytes per position.
+     */
+    private int parseBudget() {
+        try {
+            int budget = Integer.parseInt(tokenText());
+            if (budget > 0) return budget;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("invalid budget: " + tokenText());
+    }
+
+    /**
+     * Parses the next token as a positive price. Plain decimals with up to 15 significant digits
+     * are parsed directly; they are exact as a whole number divided by a power of ten, so the
+     * result is the same as {@link Double#parseDouble(String)}. Anything else falls back to it.
+     */
+    private double nextPrice() {
+        requireToken("price");
+        long digits = 0;
+        int significant = 0, scale = 0;
+        boolean point = false, simple = tokenEnd - tokenStart <= 16;
+        for (int i = tokenStart; i < tokenEnd && simple; i++) {
+            char c = line[i];
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                if (digits > 0) significant++;
+                if (point) scale++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                simple = false;
+            }
+        }
+
+        double price;
+        if (simple && significant <= 15 && tokenEnd - tokenStart > (point ? 1 : 0)) {
+            price = digits / POWERS_OF_TEN[scale];
+        } else {
+            try {
+                price = Double.parseDouble(tokenText());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid price: " + tokenText());
+            }
+        }
+        if (!(price > 0) || Double.isInfinite(price)) {
+            throw new IllegalArgumentException("invalid price: " + tokenText());
+        }
+        return price;
+    }
+}
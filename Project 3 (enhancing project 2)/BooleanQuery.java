@@ -0,0 +1,126 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code BooleanQuery} class describes a search that combines several criteria with AND,
+ * OR and NOT. Keywords are organised in groups: the words inside a group are OR-ed together,
+ * and all groups, the symbol and the price range are AND-ed. Excluded keywords remove matches.
+ *
+ * <p>For example, {@code apple|amazon growth -bond} finds investments whose name contains
+ * "apple" or "amazon", and also "growth", but not "bond".</p>
+ */
+public class BooleanQuery {
+    private ArrayList<List<String>> keywordGroups;
+    private ArrayList<String> excludedKeywords;
+    private String symbol;
+    private double lowPrice;
+    private double highPrice;
+    private boolean priceRange;
+
+    /**
+     * Constructs an empty {@code BooleanQuery}, which matches every investment.
+     */
+    public BooleanQuery() {
+        keywordGroups = new ArrayList<>();
+        excludedKeywords = new ArrayList<>();
+        symbol = "";
+        lowPrice = 0;
+        highPrice = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Parses keyword text into a query. Words separated by spaces must all match, words joined
+     * by {@code |} match if any of them does, and words starting with {@code -} are excluded.
+     *
+     * @param text the keyword text entered by the user
+     * @return the parsed query
+     */
+    public static BooleanQuery parseKeywords(String text) {
+        BooleanQuery query = new BooleanQuery();
+        for (String term : text.trim().split("\\s+")) {
+            if (term.isEmpty() || term.equals("-")) continue;
+            if (term.startsWith("-")) {
+                query.addExcludedKeyword(term.substring(1));
+            } else {
+                query.addKeywordGroup(term.split("\\|"));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Adds a group of keywords, at least one of which must appear in the investment name.
+     * A group with a single keyword makes that keyword required.
+     *
+     * @param keywords the keywords in the group
+     */
+    public void addKeywordGroup(String... keywords) {
+        List<String> group = new ArrayList<>();
+        for (String keyword : keywords) {
+            if (!keyword.isEmpty()) {
+                group.add(keyword.toLowerCase());
+            }
+        }
+        if (!group.isEmpty()) {
+            keywordGroups.add(group);
+        }
+    }
+
+    /**
+     * Adds a keyword that must not appear in the investment name.
+     *
+     * @param keyword the keyword to exclude
+     */
+    public void addExcludedKeyword(String keyword) {
+        if (!keyword.isEmpty()) {
+            excludedKeywords.add(keyword.toLowerCase());
+        }
+    }
+
+    /**
+     * Sets the symbol the investment must have. An empty symbol matches every investment.
+     *
+     * @param symbol the symbol to match
+     */
+    public void setSymbol(String symbol) {
+        this.symbol = symbol.trim();
+    }
+
+    /**
+     * Restricts matches to investments whose price is within the given range, inclusive.
+     *
+     * @param lowPrice  the minimum price
+     * @param highPrice the maximum price
+     */
+    public void setPriceRange(double lowPrice, double highPrice) {
+        this.lowPrice = lowPrice;
+        this.highPrice = highPrice;
+        this.priceRange = true;
+    }
+
+    public List<List<String>> getKeywordGroups() {
+        return keywordGroups;
+    }
+
+    public List<String> getExcludedKeywords() {
+        return excludedKeywords;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public double getLowPrice() {
+        return lowPrice;
+    }
+
+    public double getHighPrice() {
+        return highPrice;
+    }
+
+    public boolean hasPriceRange() {
+        return priceRange;
+    }
+}
@@ -0,0 +1,216 @@
+package ePortfolio;
+
+import java.util.List;
+
+/**
+ * The {@code ColumnBatch} class evaluates query predicates that have no index by scanning
+ * columns. The values needed by a query (price, gain, quantity, book value and type) are copied
+ * once into primitive arrays for the rows being scanned, and each predicate is then evaluated
+ * over a whole column in a tight loop that produces a bitmap of matching rows. {@code AND},
+ * {@code OR} and {@code NOT} combine those bitmaps 64 rows at a time.
+ */
+public class ColumnBatch {
+    private static final byte STOCK = 0;
+    private static final byte MUTUAL_FUND = 1;
+
+    private final Portfolio portfolio;
+    private final PostingList rows;
+    private final int length;
+
+    // Columns are filled lazily, only for fields the query actually uses
+    private double[] prices;
+    private double[] gains;
+    private double[] quantities;
+    private double[] bookValues;
+    private byte[] types;
+
+    /**
+     * Constructs a batch over the given rows of a portfolio.
+     *
+     * @param portfolio the portfolio being scanned
+     * @param rows      the positions to scan, in ascending order
+     */
+    public ColumnBatch(Portfolio portfolio, PostingList rows) {
+        this.portfolio = portfolio;
+        this.rows = rows;
+        this.length = rows.size();
+    }
+
+    /**
+     * Evaluates an expression over every row in the batch and returns the matching positions.
+     *
+     * @param expression the expression to evaluate
+     * @return the positions of the rows that match
+     */
+    public PostingList select(QueryExpression expression) {
+        long[] bits = evaluate(expression);
+        PostingList selected = new PostingList();
+        for (int word = 0; word < bits.length; word++) {
+            long w = bits[word];
+            while (w != 0) {
+                int bit = Long.numberOfTrailingZeros(w);
+                selected.add(rows.get(word * 64 + bit));
+                w &= w - 1;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Evaluates an expression into a bitmap with one bit per row.
+     *
+     * @param expression the expression to evaluate
+     * @return the bitmap of matching rows
+     */
+    private long[] evaluate(QueryExpression expression) {
+        if (expression instanceof QueryExpression.And) {
+            List<QueryExpression> children = ((QueryExpression.And) expression).getChildren();
+            long[] bits = evaluate(children.get(0));
+            for (int i = 1; i < children.size(); i++) {
+                long[] other = evaluate(children.get(i));
+                for (int w = 0; w < bits.length; w++) bits[w] &= other[w];
+            }
+            return bits;
+        } else if (expression instanceof QueryExpression.Or) {
+            List<QueryExpression> children = ((QueryExpression.Or) expression).getChildren();
+            long[] bits = evaluate(children.get(0));
+            for (int i = 1; i < children.size(); i++) {
+                long[] other = evaluate(children.get(i));
+                for (int w = 0; w < bits.length; w++) bits[w] |= other[w];
+            }
+            return bits;
+        } else if (expression instanceof QueryExpression.Not) {
+            long[] bits = evaluate(((QueryExpression.Not) expression).getChild());
+            for (int w = 0; w < bits.length; w++) bits[w] = ~bits[w];
+            clearTail(bits);
+            return bits;
+        }
+        return evaluatePredicate((QueryExpression.Predicate) expression);
+    }
+
+    /**
+     * Evaluates a single predicate over its column.
+     *
+     * @param predicate the predicate to evaluate
+     * @return the bitmap of matching rows
+     */
+    private long[] evaluatePredicate(QueryExpression.Predicate predicate) {
+        long[] bits = new long[(length + 63) >>> 6];
+        switch (predicate.getField()) {
+            case PRICE:
+                scanRange(prices(), predicate.getLow(), predicate.getHigh(), bits);
+                break;
+            case GAIN:
+                scanRange(gains(), predicate.getLow(), predicate.getHigh(), bits);
+                break;
+            case QUANTITY:
+                scanRange(quantities(), predicate.getLow(), predicate.getHigh(), bits);
+                break;
+            case BOOK:
+                scanRange(bookValues(), predicate.getLow(), predicate.getHigh(), bits);
+                break;
+            case TYPE: {
+                byte wanted = predicate.getText().equals("stock") ? STOCK : MUTUAL_FUND;
+                byte[] column = types();
+                for (int i = 0; i < length; i++) {
+                    bits[i >>> 6] |= (column[i] == wanted ? 1L : 0L) << i;
+                }
+                break;
+            }
+            case NAME: {
+                // Walk the keyword's posting list alongside the rows; both are sorted
+                PostingList postings = portfolio.keywordPositions(predicate.getText());
+                if (postings == null) break;
+                int j = 0;
+                for (int i = 0; i < length && j < postings.size(); i++) {
+                    int row = rows.get(i);
+                    while (j < postings.size() && postings.get(j) < row) j++;
+                    if (j < postings.size() && postings.get(j) == row) {
+                        bits[i >>> 6] |= 1L << i;
+                    }
+                }
+                break;
+            }
+            case SYMBOL: {
+                int position = portfolio.symbolPosition(predicate.getText());
+                for (int i = 0; i < length; i++) {
+                    if (rows.get(i) == position) {
+                        bits[i >>> 6] |= 1L << i;
+                    }
+                }
+                break;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Sets the bit of every row whose value is within {@code [low, high]}.
+     */
+    private void scanRange(double[] column, double low, double high, long[] bits) {
+        for (int i = 0; i < length; i++) {
+            double value = column[i];
+            bits[i >>> 6] |= (value >= low & value <= high ? 1L : 0L) << i;
+        }
+    }
+
+    /**
+     * Clears the unused bits past the last row after a negation.
+     */
+    private void clearTail(long[] bits) {
+        int used = length & 63;
+        if (used != 0 && bits.length > 0) {
+            bits[bits.length - 1] &= (1L << used) - 1;
+        }
+    }
+
+    private double[] prices() {
+        if (prices == null) {
+            prices = new double[length];
+            for (int i = 0; i < length; i++) {
+                prices[i] = portfolio.investmentAt(rows.get(i)).getPrice();
+            }
+        }
+        return prices;
+    }
+
+    private double[] gains() {
+        if (gains == null) {
+            gains = new double[length];
+            for (int i = 0; i < length; i++) {
+                gains[i] = portfolio.investmentAt(rows.get(i)).calculateGain();
+            }
+        }
+        return gains;
+    }
+
+    private double[] quantities() {
+        if (quantities == null) {
+            quantities = new double[length];
+            for (int i = 0; i < length; i++) {
+                quantities[i] = portfolio.investmentAt(rows.get(i)).getQuantity();
+            }
+        }
+        return quantities;
+    }
+
+    private double[] bookValues() {
+        if (bookValues == null) {
+            bookValues = new double[length];
+            for (int i = 0; i < length; i++) {
+                bookValues[i] = portfolio.investmentAt(rows.get(i)).getBookValue();
+            }
+        }
+        return bookValues;
+    }
+
+    private byte[] types() {
+        if (types == null) {
+            types = new byte[length];
+            for (int i = 0; i < length; i++) {
+                types[i] = portfolio.investmentAt(rows.get(i)) instanceof Stock ? STOCK : MUTUAL_FUND;
+            }
+        }
+        return types;
+    }
+}
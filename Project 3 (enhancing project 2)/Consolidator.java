@@ -0,0 +1,218 @@
+package ePortfolio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code Consolidator} class combines several portfolio files, such as one per account,
+ * into a single {@link Portfolio} that holds one position per symbol.
+ *
+ * <p>The files are read in parallel on the fork-join pool, each into its own holdings, and the
+ * holdings are then merged in file order. Positions are matched by symbol in any case. Their
+ * quantities are added as {@code long}s, and their book values are added as whole cents read
+ * from the {@code book value} line of each record, so the totals are exact whatever the number
+ * of files. A record without a readable book value line counts the book value that
+ * {@link Portfolio#loadInvestments(String)} would give it. The name of a position is the one in
+ * the first file that holds it, and its price is the one in the last file. The merged
+ * investments are handed to the portfolio in one step, so its indexes are built once.</p>
+ */
+public class Consolidator {
+    private static final String BOOK_VALUE_PREFIX = "book value = ";
+
+    private Consolidator() {
+    }
+
+    /**
+     * Lists the portfolio files in a directory: every regular file that is not hidden, in
+     * order of file name.
+     *
+     * @param directory the directory to list
+     * @return the files
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry) && !Files.isHidden(entry)) {
+                    files.add(entry);
+                }
+            }
+        }
+        files.sort((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
+        return files;
+    }
+
+    /**
+     * Consolidates every portfolio file in a directory, as listed by {@link #listFiles(Path)}.
+     *
+     * @param directory the directory holding the files
+     * @return a new portfolio with one investment per symbol
+     * @throws IOException              if the directory or a file cannot be read
+     * @throws IllegalArgumentException if a file is not in the portfolio format, or the
+     *                                  positions of a symbol cannot be combined
+     */
+    public static Portfolio consolidate(Path directory) throws IOException {
+        return consolidate(listFiles(directory));
+    }
+
+    /**
+     * Consolidates the given portfolio files, reading them in parallel.
+     *
+     * @param files the files to combine; the prices in later files take precedence
+     * @return a new portfolio with one investment per symbol
+     * @throws IOException              if a file cannot be read
+     * @throws IllegalArgumentException if a file is not in the portfolio format, or a symbol is
+     *                                  a stock in one file and a mutual fund in another, or its
+     *                                  combined quantity is more than an {@code int} can hold
+     */
+    public static Portfolio consolidate(List<Path> files) throws IOException {
+        Portfolio portfolio = new Portfolio();
+        portfolio.restore(merge(files));
+        return portfolio;
+    }
+
+    /**
+     * Reads the given portfolio files in parallel and merges their positions by symbol.
+     *
+     * @param files the files to combine; the prices in later files take precedence
+     * @return one investment per symbol, in the order the symbols are first seen
+     * @throws IOException              if a file cannot be read
+     * @throws IllegalArgumentException if the files cannot be combined
+     */
+    static List<Investment> merge(List<Path> files) throws IOException {
+        List<Callable<Holdings>> reads = new ArrayList<>();
+        for (Path file : files) {
+            reads.add(() -> read(file));
+        }
+
+        Holdings merged = new Holdings();
+        try {
+            for (Future<Holdings> future : ForkJoinPool.commonPool().invokeAll(reads)) {
+                merged.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Consolidation interrupted", e);
+        } catch (ExecutionException | RuntimeException e) {
+            // The pool may wrap a failed read more than once; report the original failure
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof IllegalArgumentException) throw (IllegalArgumentException) cause;
+            }
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new IOException(e.getCause());
+        }
+        return merged.toInvestments();
+    }
+
+    /**
+     * Reads one portfolio file into holdings, combining any records of the same symbol.
+     */
+    private static Holdings read(Path file) throws IOException {
+        Holdings holdings = new Holdings();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("type = ")) continue;
+
+                Investment investment = Portfolio.parseRecord(line, reader.readLine(), reader.readLine(),
+                                                              reader.readLine(), reader.readLine());
+                String bookValueLine = reader.readLine();
+                holdings.add(investment, investment.getQuantity(), bookCents(bookValueLine, investment));
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException | NullPointerException e) {
+            throw new IllegalArgumentException("Error reading data format from file: " + file.getFileName());
+        }
+        return holdings;
+    }
+
+    /**
+     * Reads the book value line of a record as whole cents, without going through a double.
+     */
+    private static long bookCents(String line, Investment investment) {
+        if (line != null && line.startsWith(BOOK_VALUE_PREFIX)) {
+            try {
+                return new BigDecimal(line.substring(BOOK_VALUE_PREFIX.length()).trim())
+                        .setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                // Fall back to the book value the record's quantity and price give
+            }
+        }
+        return Math.round(investment.getBookValue() * 100);
+    }
+
+    /**
+     * One position per symbol, held in parallel arrays indexed by slot.
+     */
+    private static class Holdings {
+        private final IntIntMap slots = new IntIntMap();
+        private Investment[] investments = new Investment[64];
+        private long[] quantities = new long[64];
+        private long[] bookCents = new long[64];
+        private int size;
+
+        void add(Investment investment, long quantity, long cents) {
+            int key = SymbolDictionary.lowercase(investment.symbolCode());
+            int slot = slots.get(key);
+            if (slot == IntIntMap.MISSING) {
+                if (size == investments.length) {
+                    investments = Arrays.copyOf(investments, size * 2);
+                    quantities = Arrays.copyOf(quantities, size * 2);
+                    bookCents = Arrays.copyOf(bookCents, size * 2);
+                }
+                slot = size++;
+                slots.put(key, slot);
+                investments[slot] = investment;
+                quantities[slot] = quantity;
+                bookCents[slot] = cents;
+                return;
+            }
+            Investment held = investments[slot];
+            if ((held instanceof Stock) != (investment instanceof Stock)) {
+                throw new IllegalArgumentException("Symbol " + investment.getSymbol()
+                                                   + " is held as both a stock and a mutual fund.");
+            }
+            quantities[slot] += quantity;
+            bookCents[slot] += cents;
+            held.setPrice(investment.getPrice());
+        }
+
+        void addAll(Holdings other) {
+            for (int slot = 0; slot < other.size; slot++) {
+                add(other.investments[slot], other.quantities[slot], other.bookCents[slot]);
+            }
+        }
+
+        /**
+         * Sets the combined quantity and book value on the investment of each position.
+         */
+        List<Investment> toInvestments() {
+            List<Investment> result = new ArrayList<>(size);
+            for (int slot = 0; slot < size; slot++) {
+                if (quantities[slot] > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Combined quantity of " + investments[slot].getSymbol()
+                                                       + " is too large: " + quantities[slot]);
+                }
+                Investment investment = investments[slot];
+                investment.setQuantity((int) quantities[slot]);
+                investment.updateBookValue(bookCents[slot] / 100.0);
+                result.add(investment);
+            }
+            return result;
+        }
+    }
+}
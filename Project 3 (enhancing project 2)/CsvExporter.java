@@ -0,0 +1,287 @@
+package ePortfolio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * The {@code CsvExporter} class writes holdings, gains and search results as CSV to a channel,
+ * one row per investment, so a report can be opened in a spreadsheet or read by another program.
+ *
+ * <p>Rows are encoded straight into one reusable buffer that is written to the channel whenever
+ * it fills, so the report is never held in memory and an export allocates nothing per row.
+ * Amounts are rounded to the nearest cent and written with a formatter that prints the digits of
+ * the cents from a {@code long}, instead of {@link String#format} and the strings it creates.
+ * Text is written as UTF-8 and quoted only when it holds a comma, a quote or a line break.</p>
+ */
+public class CsvExporter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Room for the longest field that is written without checking the buffer: a long with a sign,
+    // a decimal point and a line ending
+    private static final int NUMBER_ROOM = 24;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+    private long rows;
+
+    /**
+     * Constructs an exporter that writes to the given channel. Closing the exporter closes it.
+     *
+     * @param channel the channel to write the CSV to
+     */
+    public CsvExporter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens an exporter that writes to a file, replacing anything already in it.
+     *
+     * @param path the file to write
+     * @return the exporter
+     * @throws IOException if the file cannot be opened
+     */
+    public static CsvExporter open(Path path) throws IOException {
+        return new CsvExporter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Writes every investment with its type, quantity, price and book value.
+     *
+     * @param portfolio the portfolio to export
+     * @throws IOException if the channel cannot be written
+     */
+    public void exportHoldings(Portfolio portfolio) throws IOException {
+        writeHoldings(portfolio.getInvestments());
+    }
+
+    /**
+     * Writes every investment with its book value, market value and gain, followed by a row with
+     * the total gain.
+     *
+     * @param portfolio the portfolio to export
+     * @throws IOException if the channel cannot be written
+     */
+    public void exportGains(Portfolio portfolio) throws IOException {
+        List<Investment> investments = portfolio.getInvestments();
+        writeText("symbol,name,quantity,book value,market value,gain\n");
+        double totalGain = 0;
+        for (int i = 0; i < investments.size(); i++) {
+            Investment investment = investments.get(i);
+            double gain = investment.calculateGain();
+            totalGain += gain;
+            writeField(investment.getSymbol());
+            writeField(investment.getName());
+            writeInt(investment.getQuantity());
+            writeCents(investment.getBookValue(), ',');
+            writeCents(investment.getMarketValue(), ',');
+            writeCents(gain, '\n');
+            rows++;
+        }
+        writeText("total,,,,,");
+        writeCents(totalGain, '\n');
+    }
+
+    /**
+     * Writes the investments matched by a query, in the same columns as the holdings.
+     *
+     * @param portfolio the portfolio to search
+     * @param queryText the query, in the language described in {@link QueryExpression}
+     * @throws IOException              if the channel cannot be written
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public void exportSearch(Portfolio portfolio, String queryText) throws IOException {
+        PostingList positions = portfolio.screen(queryText);
+        writeText("type,symbol,name,quantity,price,book value\n");
+        for (int i = 0; i < positions.size(); i++) {
+            writeHolding(portfolio.investmentAt(positions.get(i)));
+        }
+    }
+
+    /**
+     * Writes the given investments with their type, quantity, price and book value.
+     *
+     * @param investments the investments to write
+     * @throws IOException if the channel cannot be written
+     */
+    public void writeHoldings(List<Investment> investments) throws IOException {
+        writeText("type,symbol,name,quantity,price,book value\n");
+        for (int i = 0; i < investments.size(); i++) {
+            writeHolding(investments.get(i));
+        }
+    }
+
+    /**
+     * Gets the number of investment rows written so far, not counting headers and totals.
+     *
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Writes anything still buffered to the channel.
+     *
+     * @throws IOException if the channel cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes anything still buffered and closes the channel.
+     *
+     * @throws IOException if the channel cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeHolding(Investment investment) throws IOException {
+        writeText(investment instanceof Stock ? "stock," : "mutualfund,");
+        writeField(investment.getSymbol());
+        writeField(investment.getName());
+        writeInt(investment.getQuantity());
+        writeCents(investment.getPrice(), ',');
+        writeCents(investment.getBookValue(), '\n');
+        rows++;
+    }
+
+    /**
+     * Writes a text field followed by a comma, quoting it if it holds a comma, quote or line break.
+     */
+    private void writeField(String text) throws IOException {
+        boolean quoted = false;
+        for (int i = 0; i < text.length() && !quoted; i++) {
+            char c = text.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quoted) {
+            putByte('"');
+        }
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i);
+            if (c == '"') {
+                putByte('"');
+                putByte('"');
+            } else if (c < 0x80) {
+                putByte(c);
+            } else {
+                // Multi-byte UTF-8; a surrogate pair is one code point of four bytes
+                if (Character.isHighSurrogate((char) c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    c = Character.toCodePoint((char) c, text.charAt(++i));
+                } else if (Character.isSurrogate((char) c)) {
+                    c = '?';
+                }
+                if (c < 0x80) {
+                    putByte(c);
+                } else if (c < 0x800) {
+                    putByte(0xC0 | (c >> 6));
+                    putByte(0x80 | (c & 0x3F));
+                } else if (c < 0x10000) {
+                    putByte(0xE0 | (c >> 12));
+                    putByte(0x80 | ((c >> 6) & 0x3F));
+                    putByte(0x80 | (c & 0x3F));
+                } else {
+                    putByte(0xF0 | (c >> 18));
+                    putByte(0x80 | ((c >> 12) & 0x3F));
+                    putByte(0x80 | ((c >> 6) & 0x3F));
+                    putByte(0x80 | (c & 0x3F));
+                }
+            }
+        }
+        if (quoted) {
+            putByte('"');
+        }
+        putByte(',');
+    }
+
+    /**
+     * Writes text known to be ASCII, such as a header.
+     */
+    private void writeText(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            putByte(text.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a whole number followed by a comma.
+     */
+    private void writeInt(int value) throws IOException {
+        reserve(NUMBER_ROOM);
+        putDigits(value, 1);
+        buffer.put((byte) ',');
+    }
+
+    /**
+     * Writes an amount rounded to the nearest cent with two decimals, followed by the given
+     * separator. Amounts too large for a long of cents are written by {@link Double#toString}.
+     */
+    private void writeCents(double amount, char separator) throws IOException {
+        if (!(Math.abs(amount) < 9e16)) {
+            writeText(Double.toString(amount));
+            putByte(separator);
+            return;
+        }
+        reserve(NUMBER_ROOM);
+        putDigits(Math.round(amount * 100), 3);
+        // Move the last two digits right to make room for the decimal point
+        int end = buffer.position();
+        buffer.put(end, buffer.get(end - 1));
+        buffer.put(end - 1, buffer.get(end - 2));
+        buffer.put(end - 2, (byte) '.');
+        buffer.position(end + 1);
+        buffer.put((byte) separator);
+    }
+
+    /**
+     * Puts the decimal digits of a number, padded with zeros to at least the given width.
+     */
+    private void putDigits(long value, int width) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        int count = 0;
+        // Negating Long.MIN_VALUE overflows, so digits are taken from the negative value
+        long rest = value < 0 ? value : -value;
+        while (rest != 0 || count < width) {
+            digits[count++] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        }
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    private void putByte(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
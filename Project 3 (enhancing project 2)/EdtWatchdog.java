@@ -0,0 +1,54 @@
+package ePortfolio;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.logging.Logger;
+
+/**
+ * The {@code EdtWatchdog} class replaces the system event queue with one that times every event
+ * it dispatches. Any event handler that keeps the event dispatch thread busy for longer than the
+ * threshold is logged, so work that should have gone to the {@link PortfolioWorker} is easy to find.
+ */
+public class EdtWatchdog extends EventQueue {
+    private static final Logger LOGGER = Logger.getLogger(EdtWatchdog.class.getName());
+
+    private final long thresholdNanos;
+
+    /**
+     * Constructs a watchdog with the given threshold.
+     *
+     * @param thresholdMillis the longest an event handler may run before it is logged
+     */
+    private EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+    }
+
+    /**
+     * Installs a watchdog on the system event queue.
+     *
+     * @param thresholdMillis the longest an event handler may run before it is logged
+     */
+    public static void install(long thresholdMillis) {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EdtWatchdog(thresholdMillis));
+    }
+
+    /**
+     * Dispatches the event and logs it if the handler ran longer than the threshold.
+     *
+     * @param event the event to dispatch
+     */
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long start = System.nanoTime();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (elapsed > thresholdNanos) {
+                LOGGER.warning(String.format("Event dispatch thread stalled for %d ms handling %s from %s",
+                        elapsed / 1_000_000L, event.paramString(), event.getSource().getClass().getSimpleName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package ePortfolio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code EventLog} class records every buy, sell and price update of a portfolio as an
+ * immutable event in a compact binary file, and rebuilds the portfolio as it was at any
+ * moment in the past.
+ *
+ * <p>Each event holds a type byte, the time since the previous event as a variable-length
+ * number, the symbol, and for trades the quantity. Prices in whole cents are stored as a
+ * variable-length number of cents and other prices as a full {@code double}, so a typical price
+ * update takes about ten bytes. Only operations that changed the portfolio are recorded;
+ * replaying them through the same {@link Portfolio} methods reproduces its state exactly.</p>
+ *
+ * <p>Every {@link #setCheckpointInterval(int) few thousand} events, and whenever a portfolio
+ * is loaded from a file, a checkpoint with the full list of investments is written to a second
+ * file next to the log. Rebuilding loads the last checkpoint taken at or before the requested
+ * time and replays only the events after it, so the cost depends on the checkpoint interval,
+ * not on the age of the log. The checkpoint times and offsets are kept in memory; opening a
+ * log reads only their headers and the events after the last checkpoint.</p>
+ *
+ * <p>Events are buffered and written when the buffer fills, at each checkpoint, and on
+ * {@link #flush()} or {@link #close()}. An incomplete event at the end of the log, left by a
+ * crash in the middle of a write, is dropped when the log is opened.</p>
+ */
+public class EventLog implements Closeable {
+    /**
+     * The default number of events between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 50_000;
+
+    private static final byte BUY = 1;
+    private static final byte SELL = 2;
+    private static final byte UPDATE = 3;
+    private static final int KIND_MASK = 0x03;
+    private static final int MUTUAL_FUND = 0x04;
+    private static final int CENTS = 0x80;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel events;
+    private final FileChannel checkpoints;
+    private final LongSupplier clock;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // Checkpoint index: when each checkpoint was taken, where its events start, and where it is stored
+    private long[] checkpointTimes = new long[16];
+    private long[] checkpointEventOffsets = new long[16];
+    private long[] checkpointOffsets = new long[16];
+    private int checkpointCount;
+
+    // The end of the events written to the file; buffered events follow it
+    private long flushedEnd;
+    private long lastTimestamp;
+    private int eventsSinceCheckpoint;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    private EventLog(FileChannel events, FileChannel checkpoints, LongSupplier clock) {
+        this.events = events;
+        this.checkpoints = checkpoints;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens an event log, creating it if it does not exist. Events are stamped with the
+     * system clock.
+     *
+     * @param path the event file; checkpoints are kept in the same path with
+     *             {@code .checkpoints} appended
+     * @return the open log
+     * @throws IOException if the files cannot be opened or read
+     */
+    public static EventLog open(Path path) throws IOException {
+        return open(path, System::currentTimeMillis);
+    }
+
+    /**
+     * Opens an event log that stamps events with the given clock, for example to import
+     * trades with their original times. Times that go backwards are recorded as the latest
+     * time seen so far, so the log stays in time order.
+     *
+     * @param path  the event file
+     * @param clock supplies the time of each event in milliseconds since the epoch
+     * @return the open log
+     * @throws IOException if the files cannot be opened or read
+     */
+    public static EventLog open(Path path, LongSupplier clock) throws IOException {
+        FileChannel events = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                              StandardOpenOption.WRITE);
+        FileChannel checkpoints;
+        try {
+            checkpoints = FileChannel.open(Path.of(path + ".checkpoints"), StandardOpenOption.CREATE,
+                                           StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            events.close();
+            throw e;
+        }
+        EventLog log = new EventLog(events, checkpoints, clock);
+        try {
+            log.readIndex();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * Sets how many events are recorded between checkpoints. A shorter interval makes rebuilding
+     * faster and the checkpoint file larger.
+     *
+     * @param events the number of events between checkpoints
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public void setCheckpointInterval(int events) {
+        if (events <= 0) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive: " + events);
+        }
+        checkpointInterval = events;
+    }
+
+    /**
+     * Gets the time of the most recent event or checkpoint.
+     *
+     * @return the time in milliseconds since the epoch, or zero for a new log
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Gets the number of checkpoints in the log.
+     *
+     * @return the number of checkpoints
+     */
+    public int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Records a buy that changed the portfolio.
+     *
+     * @param portfolio the portfolio, checkpointed if the interval has been reached
+     * @param stock     whether the investment is a stock rather than a mutual fund
+     * @param symbol    the symbol as given to the buy
+     * @param name      the name as given to the buy
+     * @param quantity  the quantity bought
+     * @param price     the price paid
+     * @throws IOException if the log cannot be written
+     */
+    void recordBuy(Portfolio portfolio, boolean stock, String symbol, String name, int quantity, double price)
+            throws IOException {
+        byte[] symbolBytes = symbol.getBytes(StandardCharsets.UTF_8);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        reserve(1 + 10 + 5 + symbolBytes.length + 5 + nameBytes.length + 5 + 10);
+        int type = BUY | (stock ? 0 : MUTUAL_FUND) | (isCents(price) ? CENTS : 0);
+        buffer.put((byte) type);
+        writeTime();
+        writeBytes(symbolBytes);
+        writeBytes(nameBytes);
+        writeVarLong(quantity);
+        writePrice(type, price);
+        recorded(portfolio);
+    }
+
+    /**
+     * Records a sale that changed the portfolio.
+     *
+     * @param portfolio the portfolio, checkpointed if the interval has been reached
+     * @param symbol    the symbol as given to the sale
+     * @param quantity  the quantity sold
+     * @param price     the sale price
+     * @throws IOException if the log cannot be written
+     */
+    void recordSell(Portfolio portfolio, String symbol, int quantity, double price) throws IOException {
+        byte[] symbolBytes = symbol.getBytes(StandardCharsets.UTF_8);
+        reserve(1 + 10 + 5 + symbolBytes.length + 5 + 10);
+        int type = SELL | (isCents(price) ? CENTS : 0);
+        buffer.put((byte) type);
+        writeTime();
+        writeBytes(symbolBytes);
+        writeVarLong(quantity);
+        writePrice(type, price);
+        recorded(portfolio);
+    }
+
+    /**
+     * Records a price update that changed the portfolio.
+     *
+     * @param portfolio the portfolio, checkpointed if the interval has been reached
+     * @param symbol    the symbol as given to the update
+     * @param price     the new price
+     * @throws IOException if the log cannot be written
+     */
+    void recordUpdate(Portfolio portfolio, String symbol, double price) throws IOException {
+        byte[] symbolBytes = symbol.getBytes(StandardCharsets.UTF_8);
+        reserve(1 + 10 + 5 + symbolBytes.length + 10);
+        int type = UPDATE | (isCents(price) ? CENTS : 0);
+        buffer.put((byte) type);
+        writeTime();
+        writeBytes(symbolBytes);
+        writePrice(type, price);
+        recorded(portfolio);
+    }
+
+    /**
+     * Writes a checkpoint of the portfolio's current state. Portfolios call this themselves
+     * when they are loaded from a file, since loading is not recorded as events.
+     *
+     * @param portfolio the portfolio whose events this log records
+     * @throws IOException if the log cannot be written
+     */
+    public void checkpoint(Portfolio portfolio) throws IOException {
+        flush();
+        long timestamp = nextTimestamp();
+
+        ByteBuffer record = ByteBuffer.allocate(1 << 12);
+        record.position(4);
+        record = putLong(record, timestamp);
+        record = putLong(record, flushedEnd);
+        record = putVarLong(record, portfolio.size());
+        for (int i = 0; i < portfolio.size(); i++) {
+            Investment investment = portfolio.investmentAt(i);
+            record = put(record, (byte) (investment instanceof Stock ? 0 : MUTUAL_FUND));
+            record = putBytes(record, investment.getSymbol().getBytes(StandardCharsets.UTF_8));
+            record = putBytes(record, investment.getName().getBytes(StandardCharsets.UTF_8));
+            record = putVarLong(record, investment.getQuantity());
+            record = putAmount(record, investment.getPrice());
+            record = putAmount(record, investment.getBookValue());
+        }
+        record.putInt(0, record.position() - 4);
+        record.flip();
+
+        long offset = checkpoints.size();
+        while (record.hasRemaining()) {
+            checkpoints.write(record, offset + record.position());
+        }
+        addToIndex(timestamp, flushedEnd, offset);
+        eventsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Rebuilds the portfolio as it was at the given time: every event recorded at or before
+     * that time has been applied, and none after it.
+     *
+     * @param timestamp the time in milliseconds since the epoch
+     * @return a new portfolio with that state and no event log attached
+     * @throws IOException if the log cannot be read
+     */
+    public Portfolio reconstruct(long timestamp) throws IOException {
+        flush();
+        Portfolio portfolio = new Portfolio();
+        portfolio.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+
+        // Find the last checkpoint taken at or before the time
+        int low = 0, high = checkpointCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (checkpointTimes[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int checkpoint = low - 1;
+        if (checkpoint < 0) {
+            return portfolio;
+        }
+        portfolio.restore(readCheckpoint(checkpointOffsets[checkpoint]));
+
+        Reader reader = new Reader(checkpointEventOffsets[checkpoint], checkpointTimes[checkpoint]);
+        while (reader.next() && reader.timestamp <= timestamp) {
+            reader.applyTo(portfolio);
+        }
+        return portfolio;
+    }
+
+    /**
+     * Rebuilds the portfolio as it is after the last event in the log.
+     *
+     * @return a new portfolio with the latest state and no event log attached
+     * @throws IOException if the log cannot be read
+     */
+    public Portfolio reconstructLatest() throws IOException {
+        return reconstruct(Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes any buffered events to the file.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushedEnd += events.write(buffer, flushedEnd);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes any buffered events and closes the files.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            try {
+                events.close();
+            } finally {
+                checkpoints.close();
+            }
+        }
+    }
+
+    /**
+     * Parses a time for {@link #reconstruct(long)}: milliseconds since the epoch, a local date
+     * and time such as {@code 2024-05-17T10:31} or {@code 2024-05-17T10:31:05}, or a date,
+     * which means the end of that day.
+     *
+     * @param text the time to parse
+     * @return the time in milliseconds since the epoch
+     * @throws IllegalArgumentException if the text is not a valid time
+     */
+    public static long parseTime(String text) {
+        try {
+            if (text.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(text);
+            }
+            ZoneId zone = ZoneId.systemDefault();
+            if (text.indexOf('T') >= 0) {
+                return LocalDateTime.parse(text).atZone(zone).toInstant().toEpochMilli();
+            }
+            return LocalDate.parse(text).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("invalid time: " + text);
+        }
+    }
+
+    /**
+     * Reads the checkpoint headers into the index, then reads the events after the last
+     * checkpoint to find the end of the log and the time of its last event. A new log gets a
+     * first checkpoint of the empty portfolio, so every event follows some checkpoint.
+     */
+    private void readIndex() throws IOException {
+        long size = checkpoints.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(4 + 8 + 8);
+        while (offset + header.capacity() <= size) {
+            header.clear();
+            readFully(checkpoints, header, offset);
+            int length = header.getInt(0);
+            if (offset + 4 + length > size) break;
+            addToIndex(header.getLong(4), header.getLong(12), offset);
+            offset += 4 + length;
+        }
+        if (offset < size) {
+            // A checkpoint cut short by a crash is dropped
+            checkpoints.truncate(offset);
+        }
+
+        if (checkpointCount == 0) {
+            if (events.size() > 0) {
+                throw new IOException("The event log has no checkpoints: " + events.size() + " bytes of events");
+            }
+            checkpoint(new Portfolio());
+            return;
+        }
+
+        int last = checkpointCount - 1;
+        Reader reader = new Reader(checkpointEventOffsets[last], checkpointTimes[last]);
+        int count = 0;
+        while (reader.next()) {
+            count++;
+        }
+        flushedEnd = reader.end;
+        lastTimestamp = reader.timestamp;
+        eventsSinceCheckpoint = count;
+        if (events.size() > flushedEnd) {
+            // An event cut short by a crash is dropped
+            events.truncate(flushedEnd);
+        }
+    }
+
+    private List<Investment> readCheckpoint(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(checkpoints, length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(checkpoints, record, offset + 4);
+        record.position(16);
+
+        int count = (int) getVarLong(record);
+        List<Investment> investments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean stock = (record.get() & MUTUAL_FUND) == 0;
+            String symbol = getString(record);
+            String name = getString(record);
+            int quantity = (int) getVarLong(record);
+            double price = getAmount(record);
+            double bookValue = getAmount(record);
+            Investment investment = stock ? new Stock(symbol, name, quantity, price)
+                                          : new MutualFund(symbol, name, quantity, price);
+            investment.updateBookValue(bookValue);
+            investments.add(investment);
+        }
+        return investments;
+    }
+
+    private void addToIndex(long timestamp, long eventOffset, long offset) {
+        if (checkpointCount == checkpointTimes.length) {
+            int capacity = checkpointCount * 2;
+            checkpointTimes = Arrays.copyOf(checkpointTimes, capacity);
+            checkpointEventOffsets = Arrays.copyOf(checkpointEventOffsets, capacity);
+            checkpointOffsets = Arrays.copyOf(checkpointOffsets, capacity);
+        }
+        checkpointTimes[checkpointCount] = timestamp;
+        checkpointEventOffsets[checkpointCount] = eventOffset;
+        checkpointOffsets[checkpointCount] = offset;
+        checkpointCount++;
+        lastTimestamp = timestamp;
+    }
+
+    private void recorded(Portfolio portfolio) throws IOException {
+        if (++eventsSinceCheckpoint >= checkpointInterval) {
+            checkpoint(portfolio);
+        }
+    }
+
+    /**
+     * Gets the time for the next event or checkpoint, never earlier than the last one.
+     */
+    private long nextTimestamp() {
+        return Math.max(lastTimestamp, clock.getAsLong());
+    }
+
+    private void writeTime() {
+        long timestamp = nextTimestamp();
+        writeVarLong(timestamp - lastTimestamp);
+        lastTimestamp = timestamp;
+    }
+
+    private void writePrice(int type, double price) {
+        if ((type & CENTS) != 0) {
+            writeVarLong(Math.round(price * 100));
+        } else {
+            buffer.putLong(Double.doubleToRawLongBits(price));
+        }
+    }
+
+    /**
+     * Checks whether a price is a whole number of cents that converts back to exactly the same
+     * {@code double}, so it can be stored as cents without changing it.
+     */
+    private static boolean isCents(double price) {
+        if (!(price >= 0 && price < 1e13)) return false;
+        long cents = Math.round(price * 100);
+        return cents / 100.0 == price;
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        if (buffer.remaining() < bytes) {
+            throw new IOException("An event of " + bytes + " bytes does not fit in the log buffer.");
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeVarLong(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = (int) getVarLong(buffer);
+        String text = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) return buffer;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private static ByteBuffer put(ByteBuffer buffer, byte value) {
+        buffer = ensure(buffer, 1);
+        buffer.put(value);
+        return buffer;
+    }
+
+    private static ByteBuffer putLong(ByteBuffer buffer, long value) {
+        buffer = ensure(buffer, 8);
+        buffer.putLong(value);
+        return buffer;
+    }
+
+    private static ByteBuffer putVarLong(ByteBuffer buffer, long value) {
+        buffer = ensure(buffer, 10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return buffer;
+    }
+
+    /**
+     * Writes a price or book value in a checkpoint: one flag byte, then either a
+     * variable-length number of cents or the full {@code double}.
+     */
+    private static ByteBuffer putAmount(ByteBuffer buffer, double amount) {
+        if (isCents(amount)) {
+            buffer = put(buffer, (byte) CENTS);
+            return putVarLong(buffer, Math.round(amount * 100));
+        }
+        buffer = put(buffer, (byte) 0);
+        return putLong(buffer, Double.doubleToRawLongBits(amount));
+    }
+
+    private static double getAmount(ByteBuffer buffer) {
+        if (buffer.get() == (byte) CENTS) {
+            return getVarLong(buffer) / 100.0;
+        }
+        return Double.longBitsToDouble(buffer.getLong());
+    }
+
+    private static ByteBuffer putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer = putVarLong(buffer, bytes.length);
+        buffer = ensure(buffer, bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the event log.");
+            }
+        }
+    }
+
+    /**
+     * Reads events forward from an offset, decoding one at a time into its fields.
+     */
+    private class Reader {
+        private final ByteBuffer window = ByteBuffer.allocate(BUFFER_SIZE);
+        private long windowStart;
+        private long end;
+        private long timestamp;
+
+        private int type;
+        private String symbol;
+        private String name;
+        private int quantity;
+        private double price;
+
+        private Reader(long offset, long timestamp) {
+            this.windowStart = offset;
+            this.end = offset;
+            this.timestamp = timestamp;
+            window.limit(0);
+        }
+
+        /**
+         * Decodes the next event.
+         *
+         * @return {@code false} at the end of the log, including an incomplete last event
+         */
+        private boolean next() throws IOException {
+            window.position((int) (end - windowStart));
+            // Read ahead so a whole event is in the window; events are far smaller than it
+            if (window.remaining() < 1024 && !fill()) {
+                if (!window.hasRemaining()) return false;
+            }
+            try {
+                type = window.get();
+                long time = timestamp + getVarLong(window);
+                symbol = getString(window);
+                int kind = type & KIND_MASK;
+                name = kind == BUY ? getString(window) : null;
+                quantity = kind == UPDATE ? 0 : (int) getVarLong(window);
+                price = (type & CENTS) != 0 ? getVarLong(window) / 100.0 : Double.longBitsToDouble(window.getLong());
+                if (kind == 0) return false;
+                timestamp = time;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                return false;
+            }
+            end = windowStart + window.position();
+            return true;
+        }
+
+        /**
+         * Moves the unread part of the window to its start and reads more of the file after it.
+         *
+         * @return {@code false} if the end of the file was reached
+         */
+        private boolean fill() throws IOException {
+            window.compact();
+            windowStart = end;
+            long readFrom = windowStart + window.position();
+            boolean more = true;
+            while (window.hasRemaining()) {
+                int read = events.read(window, readFrom);
+                if (read < 0) {
+                    more = false;
+                    break;
+                }
+                readFrom += read;
+            }
+            window.flip();
+            return more;
+        }
+
+        private void applyTo(Portfolio portfolio) {
+            switch (type & KIND_MASK) {
+                case BUY:
+                    portfolio.buyInvestment((type & MUTUAL_FUND) != 0 ? "mutualfund" : "stock",
+                                            symbol, name, quantity, price);
+                    break;
+                case SELL:
+                    portfolio.sellInvestment(symbol, quantity, price);
+                    break;
+                default:
+                    portfolio.updatePrices(symbol, price);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ePortfolio;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Flow;
+
+/**
+ * The {@code EventOrderCheck} class checks that a subscriber to a {@link PortfolioEventPublisher}
+ * that conflates price updates receives the events of each symbol in the order they were
+ * published, every buy, sell and removal among them, and that the last price update it receives
+ * for each symbol is the last one published.
+ *
+ * <p>Run it with {@code java ePortfolio.EventOrderCheck [SEED]}. Deliveries are held back and
+ * run at random points, so price updates wait in the buffer and are conflated while trades of
+ * the same symbol are published behind them. It first replays a fixed sequence: a buy at 5, an
+ * update to 6, a sale at 7 and an update to 8, which must reach the subscriber with the update to
+ * 8 after the sale. It then runs
+ * random trades and updates on a few symbols. It exits with status 1 on any mismatch.</p>
+ */
+public class EventOrderCheck {
+    private static final int SYMBOLS = 5;
+    private static final int STEPS = 200_000;
+
+    private static int failures;
+
+    private EventOrderCheck() {
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+
+        Feed fixed = new Feed();
+        Portfolio portfolio = fixed.portfolio;
+        portfolio.buyInvestment("stock", "ORD", "Order Check", 100, 5);
+        portfolio.updatePrices("ORD", 6);
+        portfolio.sellInvestment("ORD", 10, 7);
+        portfolio.updatePrices("ORD", 8);
+        fixed.deliverAll();
+        check("fixed sequence", fixed);
+
+        Random random = new Random(seed);
+        Feed feed = new Feed();
+        portfolio = feed.portfolio;
+        for (int step = 0; step < STEPS; step++) {
+            String symbol = "S" + random.nextInt(SYMBOLS);
+            double price = 1 + random.nextInt(100);
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                portfolio.updatePrices(symbol, price);
+            } else if (choice < 8) {
+                portfolio.buyInvestment("stock", symbol, "Check " + symbol, 1 + random.nextInt(5), price);
+            } else {
+                portfolio.sellInvestment(symbol, 1 + random.nextInt(5), price);
+            }
+            if (random.nextInt(20) == 0) {
+                feed.deliverAll();
+            }
+        }
+        feed.deliverAll();
+        check("random sequence", feed);
+
+        System.out.println(failures == 0 ? "Conflated events arrived in order." : failures + " mismatches.");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares what a subscriber received with what was published.
+     */
+    private static void check(String what, Feed feed) {
+        for (Map.Entry<String, Double> price : feed.publishedPrices.entrySet()) {
+            Double seen = feed.receivedPrices.get(price.getKey());
+            if (!price.getValue().equals(seen)) {
+                failures++;
+                System.out.println(what + ": the last update of " + price.getKey() + " was to " + price.getValue()
+                                   + " but the subscriber's last was to " + seen);
+            }
+        }
+        if (feed.trades != feed.receivedTrades) {
+            failures++;
+            System.out.println(what + ": " + feed.trades + " trades were published but " + feed.receivedTrades
+                               + " received");
+        }
+    }
+
+    /**
+     * A portfolio whose events are delivered only when asked, to a subscriber that checks they
+     * arrive in the order they were published.
+     */
+    private static class Feed implements Flow.Subscriber<PortfolioEvent> {
+        final ArrayDeque<Runnable> deliveries = new ArrayDeque<>();
+        final Portfolio portfolio = new Portfolio();
+        // The position of each event in publishing order
+        final Map<PortfolioEvent, Integer> sequence = new IdentityHashMap<>();
+        final Map<String, Double> publishedPrices = new HashMap<>();
+        final Map<String, Double> receivedPrices = new HashMap<>();
+        int published;
+        int trades;
+        int receivedTrades;
+        final Map<String, Integer> lastReceived = new HashMap<>();
+
+        Feed() {
+            PortfolioEventPublisher publisher = new PortfolioEventPublisher(deliveries::add) {
+                @Override
+                void publish(PortfolioEvent event) {
+                    sequence.put(event, published++);
+                    if (event.getType() == PortfolioEvent.Type.PRICE) {
+                        publishedPrices.put(event.getSymbol(), event.getPrice());
+                    } else {
+                        trades++;
+                    }
+                    super.publish(event);
+                }
+            };
+            publisher.subscribe(this, STEPS, PortfolioEventPublisher.Overflow.CONFLATE);
+            portfolio.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+            portfolio.setEventPublisher(publisher);
+        }
+
+        void deliverAll() {
+            for (Runnable delivery = deliveries.poll(); delivery != null; delivery = deliveries.poll()) {
+                delivery.run();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(PortfolioEvent event) {
+            int position = sequence.remove(event);
+            // A conflated update takes the place of an earlier one, so only each symbol's own events keep their order
+            Integer last = lastReceived.put(event.getSymbol(), position);
+            if (last != null && position < last && failures++ < 10) {
+                System.out.println("Received " + event + " after a later event of the same symbol");
+            }
+            if (event.getType() == PortfolioEvent.Type.PRICE) {
+                receivedPrices.put(event.getSymbol(), event.getPrice());
+            } else {
+                receivedTrades++;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failures++;
+            System.out.println("Subscriber failed: " + throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ePortfolio;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * The {@code FootprintCheck} class guards the heap footprint of a portfolio against regressions.
+ * It fills a portfolio, prints its {@link FootprintReport} and fails when the estimated bytes per
+ * position are over a budget, so it can run after every build.
+ *
+ * <p>Run it with {@code java ePortfolio.FootprintCheck [BUDGET [FILE]]}. The budget is in bytes
+ * per position and defaults to {@link #DEFAULT_BUDGET}. Without a file, the portfolio is a
+ * generated book of {@link #POSITIONS} stocks and mutual funds whose names share words, as real
+ * fund names do; with one, it is the portfolio saved in that file. The check exits with status 1
+ * when the footprint is over the budget, and with status 2 when the portfolio is empty.</p>
+ */
+public class FootprintCheck {
+    /**
+     * The budget used when none is given, in bytes per position.
+     */
+    public static final double DEFAULT_BUDGET = 1100;
+
+    /**
+     * The number of positions in the generated book.
+     */
+    public static final int POSITIONS = 100_000;
+
+    private static final String[] WORDS = {
+        "Global", "Growth", "Income", "Index", "Bond", "Equity", "Capital", "Value", "Energy",
+        "Health", "Technology", "International", "Small", "Cap", "Dividend", "Fund", "Trust", "Holdings"
+    };
+
+    private FootprintCheck() {
+    }
+
+    public static void main(String[] args) {
+        double budget = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_BUDGET;
+        Portfolio portfolio = new Portfolio();
+        portfolio.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+        if (args.length > 1) {
+            portfolio.loadInvestments(args[1]);
+        } else {
+            fill(portfolio);
+        }
+
+        FootprintReport report = portfolio.footprint();
+        System.out.println(report);
+        if (report.getPositions() == 0) {
+            System.out.println("The portfolio is empty.");
+            System.exit(2);
+        }
+        if (!report.isWithinBudget(budget)) {
+            System.out.println(String.format("%.1f", report.getBytesPerPosition())
+                               + " bytes per position is over the budget of " + budget);
+            System.exit(1);
+        }
+        System.out.println(String.format("%.1f", report.getBytesPerPosition())
+                           + " bytes per position is within the budget of " + budget);
+    }
+
+    /**
+     * Buys the generated book, the same one on every run.
+     */
+    private static void fill(Portfolio portfolio) {
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            boolean stock = i % 4 != 0;
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                          + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            portfolio.buyInvestment(stock ? "stock" : "mutualfund", (stock ? "S" : "F") + i, name,
+                                    1 + random.nextInt(1000), 1 + random.nextInt(50_000) / 100.0);
+        }
+    }
+}
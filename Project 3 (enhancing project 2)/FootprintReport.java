@@ -0,0 +1,186 @@
+package ePortfolio;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@code FootprintReport} class holds an estimate of the heap retained by each data
+ * structure of a {@link Portfolio}, for capacity planning. Reports are made by
+ * {@link Portfolio#footprint()}.
+ *
+ * <p>Sizes are computed from the layout of each object rather than measured, assuming a 64-bit
+ * JVM with compressed references and compact Latin-1 strings, which is the default: a 12-byte
+ * object header, 4-byte references, a 16-byte array header, and every object rounded up to a
+ * multiple of 8 bytes. Spare capacity that a structure does not expose, such as the unused end
+ * of the investment list's array, is not counted, so the figures are a lower bound.</p>
+ *
+ * <p>The strings of symbols, names and keywords are kept once in the {@link SymbolDictionary}
+ * and shared by every portfolio holding them; the report counts the ones this portfolio uses,
+ * so adding up the reports of several portfolios counts a shared string more than once.</p>
+ */
+public class FootprintReport {
+    /** The list holding the investments, without the investments themselves. */
+    public static final String INVESTMENT_LIST = "Investment list";
+    /** The investment objects. */
+    public static final String INVESTMENTS = "Investment objects";
+    /** The keyword index and its posting lists. */
+    public static final String KEYWORD_INDEX = "Keyword index";
+    /** The index from symbols to positions. */
+    public static final String SYMBOL_INDEX = "Symbol index";
+    /** The counts of investments by name, used to detect duplicate names. */
+    public static final String NAME_COUNTS = "Name counts";
+    /** The symbol and name autocomplete tries. */
+    public static final String PREFIX_INDEXES = "Prefix indexes";
+    /** The positions sorted by price. */
+    public static final String PRICE_INDEX = "Price index";
+    /** The symbol, name and keyword strings, with their dictionary entries. */
+    public static final String STRINGS = "Strings (shared dictionary)";
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private final int positions;
+    private final Map<String, Long> structures = new LinkedHashMap<>();
+
+    /**
+     * Constructs an empty report for a portfolio with the given number of positions.
+     *
+     * @param positions the number of investments in the portfolio
+     */
+    FootprintReport(int positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Records the estimated bytes of a structure.
+     *
+     * @param structure the name of the structure
+     * @param bytes     its estimated retained bytes
+     */
+    void add(String structure, long bytes) {
+        structures.merge(structure, bytes, Long::sum);
+    }
+
+    /**
+     * Estimates the size of an object with the given bytes of instance fields.
+     *
+     * @param fieldBytes the total size of the fields, references counted as 4 bytes
+     * @return the size including the header and padding
+     */
+    static long objectBytes(int fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    /**
+     * Estimates the size of an array.
+     *
+     * @param length      the number of elements
+     * @param elementSize the size of each element, references counted as 4 bytes
+     * @return the size including the header and padding
+     */
+    static long arrayBytes(int length, int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+    /**
+     * Estimates the size of an array of references.
+     *
+     * @param length the number of elements
+     * @return the size including the header and padding
+     */
+    static long referenceArrayBytes(int length) {
+        return arrayBytes(length, REFERENCE);
+    }
+
+    /**
+     * Estimates the size of a string together with its character array.
+     *
+     * @param text the string
+     * @return its size in bytes
+     */
+    static long stringBytes(String text) {
+        return objectBytes(REFERENCE + 4 + 1 + 1) + arrayBytes(text.length(), 1);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Gets the number of positions the report covers.
+     *
+     * @return the number of investments
+     */
+    public int getPositions() {
+        return positions;
+    }
+
+    /**
+     * Gets the estimated bytes of every structure, in the order they are reported.
+     *
+     * @return the bytes by structure name
+     */
+    public Map<String, Long> getStructures() {
+        return Collections.unmodifiableMap(structures);
+    }
+
+    /**
+     * Gets the estimated bytes of one structure.
+     *
+     * @param structure the name of the structure, for example {@link #KEYWORD_INDEX}
+     * @return its estimated bytes, or zero if it is not in the report
+     */
+    public long getBytes(String structure) {
+        return structures.getOrDefault(structure, 0L);
+    }
+
+    /**
+     * Gets the estimated bytes of all the structures together.
+     *
+     * @return the total estimated bytes
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (long bytes : structures.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the estimated total bytes divided by the number of positions.
+     *
+     * @return the bytes per position, or zero for an empty portfolio
+     */
+    public double getBytesPerPosition() {
+        return positions == 0 ? 0 : (double) getTotalBytes() / positions;
+    }
+
+    /**
+     * Checks the footprint against a budget. An empty portfolio is always within budget.
+     *
+     * @param maxBytesPerPosition the most bytes each position may cost
+     * @return {@code true} if the bytes per position are within the budget
+     */
+    public boolean isWithinBudget(double maxBytesPerPosition) {
+        return getBytesPerPosition() <= maxBytesPerPosition;
+    }
+
+    /**
+     * Describes the bytes of each structure, the total and the bytes per position.
+     *
+     * @return the formatted report
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> structure : structures.entrySet()) {
+            report.append(String.format("%s: %d bytes\n", structure.getKey(), structure.getValue()));
+        }
+        report.append(String.format("Positions: %d\nTotal: %d bytes (%.1f B/position)",
+                positions, getTotalBytes(), getBytesPerPosition()));
+        return report.toString();
+    }
+}
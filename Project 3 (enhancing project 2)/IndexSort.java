@@ -0,0 +1,56 @@
+package ePortfolio;
+
+/**
+ * The {@code IndexSort} class sorts arrays of row numbers by a key without boxing them into
+ * {@code Integer} objects. It is used by the price index and by sortable table views.
+ */
+public class IndexSort {
+    /**
+     * Compares two rows by their position in an ordering.
+     */
+    public interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    private IndexSort() {
+    }
+
+    /**
+     * Sorts row numbers by the given numeric keys, lowest first. The sort is stable.
+     *
+     * @param order the row numbers to sort
+     * @param keys  the key of each row, indexed by row number
+     */
+    public static void sortByKey(int[] order, double[] keys) {
+        sort(order, (a, b) -> Double.compare(keys[a], keys[b]));
+    }
+
+    /**
+     * Sorts row numbers with the given comparator. The sort is a stable merge sort.
+     *
+     * @param order      the row numbers to sort
+     * @param comparator the ordering of two rows
+     */
+    public static void sort(int[] order, RowComparator comparator) {
+        mergeSort(order, new int[order.length], 0, order.length, comparator);
+    }
+
+    /**
+     * Merge sorts a range of row numbers.
+     */
+    private static void mergeSort(int[] order, int[] scratch, int from, int to, RowComparator comparator) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(order, scratch, from, mid, comparator);
+        mergeSort(order, scratch, mid, to, comparator);
+        if (comparator.compare(order[mid - 1], order[mid]) <= 0) return;
+
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            scratch[k++] = comparator.compare(order[i], order[j]) <= 0 ? order[i++] : order[j++];
+        }
+        while (i < mid) scratch[k++] = order[i++];
+        while (j < to) scratch[k++] = order[j++];
+        System.arraycopy(scratch, from, order, from, to - from);
+    }
+}
@@ -0,0 +1,172 @@
+package ePortfolio;
+
+import java.util.Arrays;
+
+/**
+ * The {@code IntIntMap} class is a hash map from non-negative int keys to int values, used for
+ * the symbol index and name counts of a {@link Portfolio}.
+ *
+ * <p>Each entry is packed into one {@code long}, key in the high half and value in the low half,
+ * so a lookup reads a single array slot instead of following a node, a key and a boxed value.
+ * It uses the same linear probing and backward-shift removal as {@link IntMap}.</p>
+ */
+public class IntIntMap {
+    /**
+     * The value {@link #get(int)} returns for a key that is not in the map.
+     */
+    public static final int MISSING = -1;
+
+    private static final long EMPTY = -1L;
+
+    private long[] entries;
+    private int size;
+
+    /**
+     * Constructs an empty map.
+     */
+    public IntIntMap() {
+        entries = new long[16];
+        Arrays.fill(entries, EMPTY);
+    }
+
+    /**
+     * Gets the value for a key.
+     *
+     * @param key the key to look up
+     * @return the value, or {@link #MISSING} if the key is not in the map
+     */
+    public int get(int key) {
+        if (key < 0) return MISSING;
+        int mask = entries.length - 1;
+        for (int slot = hash(key) & mask; entries[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if ((int) (entries[slot] >>> 32) == key) {
+                return (int) entries[slot];
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   the key, which must not be negative
+     * @param value the value
+     * @throws IllegalArgumentException if the key is negative
+     */
+    public void put(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Keys must not be negative: " + key);
+        }
+        long entry = ((long) key << 32) | (value & 0xFFFFFFFFL);
+        int mask = entries.length - 1;
+        int slot = hash(key) & mask;
+        while (entries[slot] != EMPTY) {
+            if ((int) (entries[slot] >>> 32) == key) {
+                entries[slot] = entry;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        entries[slot] = entry;
+        // Keep the table at most half full so probe runs stay short
+        if (++size * 2 > entries.length) {
+            resize(entries.length * 2);
+        }
+    }
+
+    /**
+     * Removes a key from the map.
+     *
+     * @param key the key to remove
+     */
+    public void remove(int key) {
+        if (key < 0) return;
+        int mask = entries.length - 1;
+        for (int slot = hash(key) & mask; entries[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if ((int) (entries[slot] >>> 32) == key) {
+                removeSlot(slot);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(entries, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of slots in the table, for estimating its memory use.
+     *
+     * @return the table length
+     */
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Estimates the heap retained by the map.
+     *
+     * @return the estimated bytes
+     */
+    long retainedBytes() {
+        return FootprintReport.objectBytes(8) + FootprintReport.arrayBytes(entries.length, 8);
+    }
+
+    /**
+     * Empties a slot and moves back any later entry of the same probe run that would otherwise
+     * become unreachable.
+     */
+    private void removeSlot(int slot) {
+        int mask = entries.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (entries[next] != EMPTY) {
+            int home = hash((int) (entries[next] >>> 32)) & mask;
+            // Move the entry into the gap unless its home lies cyclically between the gap and it
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                entries[gap] = entries[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        entries[gap] = EMPTY;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] old = entries;
+        entries = new long[capacity];
+        Arrays.fill(entries, EMPTY);
+        int mask = capacity - 1;
+        for (long entry : old) {
+            if (entry != EMPTY) {
+                int slot = hash((int) (entry >>> 32)) & mask;
+                while (entries[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                entries[slot] = entry;
+            }
+        }
+    }
+
+    /**
+     * Spreads consecutive codes across the table.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
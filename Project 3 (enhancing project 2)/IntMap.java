@@ -0,0 +1,233 @@
+package ePortfolio;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The {@code IntMap} class is a hash map from non-negative int keys, such as the codes handed
+ * out by {@link SymbolDictionary}, to object values.
+ *
+ * <p>Keys are kept in a plain {@code int[]} with linear probing, so an entry costs two array
+ * slots instead of a boxed key, a node and a slot as in {@code HashMap}. Removal shifts the
+ * following entries back rather than leaving markers, so lookups never slow down as entries
+ * come and go. Null values are not allowed.</p>
+ *
+ * @param <V> the type of the values
+ */
+public class IntMap<V> {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Constructs an empty map.
+     */
+    public IntMap() {
+        keys = new int[16];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[16];
+    }
+
+    /**
+     * Gets the value for a key.
+     *
+     * @param key the key to look up
+     * @return the value, or {@code null} if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key < 0) return null;
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   the key, which must not be negative
+     * @param value the value, which must not be {@code null}
+     * @return the previous value, or {@code null} if there was none
+     * @throws IllegalArgumentException if the key is negative or the value is {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key < 0 || value == null) {
+            throw new IllegalArgumentException("Keys must not be negative and values must not be null.");
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        // Keep the table at most half full so probe runs stay short
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key from the map.
+     *
+     * @param key the key to remove
+     * @return the value it had, or {@code null} if it was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key < 0) return null;
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                removeSlot(slot);
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of slots in the table, for estimating its memory use.
+     *
+     * @return the table length
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Estimates the heap retained by the map itself, not counting the values.
+     *
+     * @return the estimated bytes
+     */
+    long retainedBytes() {
+        return FootprintReport.objectBytes(12) + FootprintReport.arrayBytes(keys.length, 4)
+               + FootprintReport.referenceArrayBytes(values.length);
+    }
+
+    /**
+     * Passes every value to an action, in no particular order.
+     *
+     * @param action the action to run on each value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                action.accept((V) values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry whose value matches a condition.
+     *
+     * @param condition the condition to test each value with
+     */
+    @SuppressWarnings("unchecked")
+    public void removeValuesIf(Predicate<? super V> condition) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[oldValues.length];
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY && !condition.test((V) oldValues[slot])) {
+                insertNew(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    /**
+     * Empties a slot and moves back any later entry of the same probe run that would otherwise
+     * become unreachable.
+     */
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry into the gap unless its home lies cyclically between the gap and it
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[capacity];
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                insertNew(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    /**
+     * Inserts a key known not to be in the table, which has room for it.
+     */
+    private void insertNew(int key, Object value) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Spreads consecutive codes across the table.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
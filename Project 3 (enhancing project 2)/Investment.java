@@ -11,18 +11,22 @@
  */
 package ePortfolio;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class Investment implements Serializable {
     /**
-     * The symbol of the investment.
+     * The symbol of the investment, as a {@link SymbolDictionary} code.
      */
-    private String symbol;
+    private transient int symbolCode;
 
     /**
-     * The name of the investment.
+     * The name of the investment, as a {@link SymbolDictionary} code.
      */
-    private String name;
+    private transient int nameCode;
 
     /**
      * The quantity of units owned.
@@ -39,6 +43,24 @@ public abstract class Investment implements Serializable {
      */
     private double bookValue;
 
+    /**
+     * Counts of gain and market value lookups answered from the cache and recomputed.
+     */
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    /**
+     * Incremented whenever the price, quantity or book value changes.
+     */
+    private transient int version;
+
+    /**
+     * The gain and market value last computed, or {@code null} until they are first needed.
+     * They are replaced together, so a thread never sees the gain of one version with the
+     * market value of another.
+     */
+    private transient volatile CachedValues cached;
+
     /**
      * Constructs an {@code Investment} with the specified symbol, name, quantity, and price.
      * Initializes the book value based on the given quantity and price.
@@ -49,8 +71,8 @@ public abstract class Investment implements Serializable {
      * @param price   the price per unit of the investment
      */
     public Investment(String symbol, String name, int quantity, double price) {
-        this.symbol = symbol;
-        this.name = name;
+        this.symbolCode = SymbolDictionary.encode(symbol);
+        this.nameCode = SymbolDictionary.encode(name);
         this.quantity = quantity;
         this.price = price;
         this.bookValue = Math.round(quantity * price * 100.0) / 100.0;
@@ -62,7 +84,7 @@ public abstract class Investment implements Serializable {
      * @return the symbol of the investment
      */
     public String getSymbol() {
-        return symbol;
+        return SymbolDictionary.decode(symbolCode);
     }
 
     /**
@@ -71,7 +93,25 @@ public abstract class Investment implements Serializable {
      * @return the name of the investment
      */
     public String getName() {
-        return name;
+        return SymbolDictionary.decode(nameCode);
+    }
+
+    /**
+     * Gets the dictionary code of the symbol, which the portfolio indexes are keyed by.
+     *
+     * @return the symbol code
+     */
+    int symbolCode() {
+        return symbolCode;
+    }
+
+    /**
+     * Gets the dictionary code of the name.
+     *
+     * @return the name code
+     */
+    int nameCode() {
+        return nameCode;
     }
 
     /**
@@ -108,6 +148,7 @@ public abstract class Investment implements Serializable {
      */
     public void setPrice(double price) {
         this.price = price;
+        version++;
     }
 
     /**
@@ -117,6 +158,7 @@ public abstract class Investment implements Serializable {
      */
     public void setQuantity(int quantity) {
         this.quantity = quantity;
+        version++;
     }
 
     /**
@@ -126,6 +168,32 @@ public abstract class Investment implements Serializable {
      */
     public void updateBookValue(double bookValue) {
         this.bookValue = Math.round(bookValue * 100.0) / 100.0;
+        version++;
+    }
+
+    /**
+     * Gets the gain of the investment. The gain is computed by {@link #computeGain()} the first
+     * time it is needed and cached until the price, quantity or book value changes.
+     *
+     * <p>An investment is changed only by the thread that owns its portfolio, such as the GUI's
+     * worker thread. Other threads, such as the event dispatch thread painting a table, may read
+     * it: they can see a price or quantity that lags behind the owner's, but the cache is
+     * published as one immutable pair, so the gain and market value always belong together.</p>
+     *
+     * @return the calculated gain
+     */
+    public final double calculateGain() {
+        return refreshCache().gain;
+    }
+
+    /**
+     * Gets the current market value of the investment, the quantity times the price. It is
+     * cached together with the gain.
+     *
+     * @return the market value
+     */
+    public final double getMarketValue() {
+        return refreshCache().marketValue;
     }
 
     /**
@@ -134,7 +202,69 @@ public abstract class Investment implements Serializable {
      *
      * @return the calculated gain
      */
-    public abstract double calculateGain();
+    protected abstract double computeGain();
+
+    /**
+     * Recomputes the cached gain and market value if anything they depend on has changed.
+     * The version is read before computing, so a change made while computing leaves the
+     * cache stale rather than holding values from before the change.
+     *
+     * @return the current gain and market value
+     */
+    private CachedValues refreshCache() {
+        int current = version;
+        CachedValues values = cached;
+        if (values != null && values.version == current) {
+            CACHE_HITS.increment();
+            return values;
+        }
+        CACHE_MISSES.increment();
+        values = new CachedValues(current, computeGain(), getQuantity() * getPrice());
+        cached = values;
+        return values;
+    }
+
+    /**
+     * A gain and market value together with the version they were computed at.
+     */
+    private static final class CachedValues {
+        final int version;
+        final double gain;
+        final double marketValue;
+
+        CachedValues(int version, double gain, double marketValue) {
+            this.version = version;
+            this.gain = gain;
+            this.marketValue = marketValue;
+        }
+    }
+
+    /**
+     * Gets how many gain and market value lookups, across all investments, were answered from
+     * the cache.
+     *
+     * @return the number of cache hits
+     */
+    public static long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    /**
+     * Gets how many gain and market value lookups, across all investments, had to recompute.
+     *
+     * @return the number of cache misses
+     */
+    public static long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    /**
+     * Sets the cache hit and miss counts back to zero.
+     */
+    public static void resetCacheStatistics() {
+        CACHE_HITS.reset();
+        CACHE_MISSES.reset();
+    }
 
     /**
      * Calculates the proceeds from selling a specified quantity of the investment at the
@@ -147,6 +277,33 @@ public abstract class Investment implements Serializable {
      */
     public abstract double calculateSellProceeds(int quantity, double price);
 
+    /**
+     * Gets the fee charged on one trade of this investment, whatever its size.
+     *
+     * @param sell {@code true} for a sale, {@code false} for a purchase
+     * @return the fee of the trade
+     */
+    public abstract double getTradeFee(boolean sell);
+
+    /**
+     * Writes the symbol and name as strings, since dictionary codes are only meaningful
+     * within one run of the program.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(getSymbol());
+        out.writeObject(getName());
+    }
+
+    /**
+     * Reads the symbol and name written by {@link #writeObject} and encodes them again.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        symbolCode = SymbolDictionary.encode((String) in.readObject());
+        nameCode = SymbolDictionary.encode((String) in.readObject());
+    }
+
     /**
      * Returns a string representation of the investment, including symbol, name, quantity,
      * price, and book value.
@@ -155,9 +312,9 @@ public abstract class Investment implements Serializable {
      */
     @Override
     public String toString() {
-        return "Symbol: " + symbol + ", Name: " + name + ", Quantity: " + quantity + 
-               ", Price: " + String.format("%.2f", price) + 
-               ", BookValue: " + String.format("%.2f", bookValue);
+        return "Symbol: " + getSymbol() + ", Name: " + getName() + ", Quantity: " + getQuantity() +
+               ", Price: " + String.format("%.2f", getPrice()) +
+               ", BookValue: " + String.format("%.2f", getBookValue());
     }
 }
 
@@ -0,0 +1,84 @@
+package ePortfolio;
+
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.function.Supplier;
+
+/**
+ * The {@code InvestmentTable} class is a {@code JTable} for an {@link InvestmentTableModel}.
+ * It shows money columns with two decimals and sorts by a column when its header is clicked.
+ * With a worker, the sort runs on the worker thread and the table keeps responding meanwhile.
+ */
+public class InvestmentTable extends JTable {
+    private PortfolioWorker worker;
+
+    /**
+     * Constructs a table for the given model.
+     *
+     * @param model the model to display
+     */
+    public InvestmentTable(InvestmentTableModel model) {
+        super(model);
+        setFillsViewportHeight(true);
+
+        // Show prices, book values and gains rounded to cents
+        setDefaultRenderer(Double.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(value == null ? "" : String.format("%.2f", (Double) value));
+            }
+        });
+
+        // Clicking a column header sorts by that column
+        getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    sortBy(convertColumnIndexToModel(column));
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the worker that sorts the rows. Without one, a header click sorts on the event
+     * dispatch thread.
+     *
+     * @param worker the worker to sort on
+     */
+    public void setWorker(PortfolioWorker worker) {
+        this.worker = worker;
+    }
+
+    /**
+     * Sorts the current model by a column, reversing the order if it is already sorted by it.
+     * A newer sort cancels one that has not finished yet, and a sort that finishes after the
+     * model was replaced is not shown.
+     *
+     * @param column the column to sort by, in model order
+     */
+    private void sortBy(int column) {
+        InvestmentTableModel model = getModel();
+        if (!model.isSortable()) return;
+        if (worker == null) {
+            model.sortBy(column);
+            return;
+        }
+        boolean ascending = model.isNextSortAscending(column);
+        Supplier<int[]> sorter = model.sorterFor(column, ascending);
+        worker.submit("sort-" + System.identityHashCode(this), progress -> sorter.get(), order -> {
+            if (getModel() == model) {
+                model.applyOrder(column, ascending, order);
+            }
+        });
+    }
+
+    @Override
+    public InvestmentTableModel getModel() {
+        return (InvestmentTableModel) super.getModel();
+    }
+}
@@ -0,0 +1,361 @@
+package ePortfolio;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The {@code InvestmentTableModel} class is a virtualized table model over a list of investments.
+ * It holds references to the investments and a row order, and reads a cell only when the table
+ * asks for it, which is only for the rows currently on screen.
+ *
+ * <p>A model of investments that another thread keeps changing, such as those of the GUI's
+ * portfolio, is made with {@link #snapshot(Portfolio)} or {@link #snapshot(List)} on that
+ * thread. A snapshot copies the numbers of every row, so the event dispatch thread paints and
+ * sorts it without touching the investments, and {@link #priceUpdated(PortfolioEvent)} brings a
+ * row up to date from the event that reports its new price. A model made with the constructor
+ * reads the investments themselves, which suits rows that are built as they are read, such as
+ * those of a {@link LazyPortfolioFile}.</p>
+ *
+ * <p>Columns can be sorted. A sort reads every row, so a table with a worker takes what the sort
+ * needs with {@link #sorterFor(int, boolean)}, runs it there, and shows the result with
+ * {@link #applyOrder(int, boolean, int[])}. Sorting a portfolio snapshot by price starts from the
+ * order of the portfolio's price index, and other columns are sorted by row number without
+ * boxing.</p>
+ */
+public class InvestmentTableModel extends AbstractTableModel {
+    public static final int SYMBOL = 0;
+    public static final int NAME = 1;
+    public static final int TYPE = 2;
+    public static final int QUANTITY = 3;
+    public static final int PRICE = 4;
+    public static final int BOOK_VALUE = 5;
+    public static final int GAIN = 6;
+
+    private static final String[] COLUMN_NAMES = {"Symbol", "Name", "Type", "Quantity", "Price", "Book Value", "Gain"};
+
+    private final List<Investment> investments;
+    // The numbers of each row when the snapshot was taken, or null to read the investments
+    private final int[] quantities;
+    private final double[] prices;
+    private final double[] bookValues;
+    private final double[] gains;
+    // Rows ordered by price when the snapshot was taken, or null if there is none
+    private final int[] priceOrder;
+    private int[] order;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private boolean sortable = true;
+    // The view row of each lowercase symbol code, built when a price first changes
+    private IntIntMap rowLookup;
+
+    /**
+     * Constructs a model that reads the given investments as they are shown, in their current
+     * order. Only use it on the thread that changes the investments, or for investments that
+     * no other thread changes.
+     *
+     * @param investments the investments to show
+     */
+    public InvestmentTableModel(List<Investment> investments) {
+        this.investments = investments;
+        this.priceOrder = null;
+        this.quantities = null;
+        this.prices = null;
+        this.bookValues = null;
+        this.gains = null;
+    }
+
+    private InvestmentTableModel(List<Investment> investments, int[] priceOrder) {
+        int n = investments.size();
+        this.investments = investments;
+        this.priceOrder = priceOrder;
+        this.quantities = new int[n];
+        this.prices = new double[n];
+        this.bookValues = new double[n];
+        this.gains = new double[n];
+        for (int i = 0; i < n; i++) {
+            Investment investment = investments.get(i);
+            quantities[i] = investment.getQuantity();
+            prices[i] = investment.getPrice();
+            bookValues[i] = investment.getBookValue();
+            gains[i] = investment.calculateGain();
+        }
+    }
+
+    /**
+     * Takes a snapshot of some investments, in their current order. It must be called on the
+     * thread that changes them, such as the GUI's worker thread.
+     *
+     * @param investments the investments to show
+     * @return a model that no longer reads the investments' numbers
+     */
+    public static InvestmentTableModel snapshot(List<Investment> investments) {
+        return new InvestmentTableModel(investments, null);
+    }
+
+    /**
+     * Takes a snapshot of every investment of a portfolio, in portfolio order, together with the
+     * order of the portfolio's price index. It must be called on the thread that changes the
+     * portfolio, such as the GUI's worker thread.
+     *
+     * @param portfolio the portfolio to show
+     * @return a model that no longer reads the portfolio
+     */
+    public static InvestmentTableModel snapshot(Portfolio portfolio) {
+        return new InvestmentTableModel(portfolio.investmentsAt(PostingList.range(portfolio.size())),
+                                        portfolio.positionsByPrice());
+    }
+
+    @Override
+    public int getRowCount() {
+        return investments.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String name = COLUMN_NAMES[column];
+        if (column == sortColumn) {
+            name += ascending ? " \u25B2" : " \u25BC";
+        }
+        return name;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        switch (column) {
+            case QUANTITY: return Integer.class;
+            case PRICE: case BOOK_VALUE: case GAIN: return Double.class;
+            default: return String.class;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = order != null ? order[row] : row;
+        Investment investment = investments.get(index);
+        switch (column) {
+            case SYMBOL: return investment.getSymbol();
+            case NAME: return investment.getName();
+            case TYPE: return investment instanceof Stock ? "stock" : "mutual fund";
+            default: return number(index, column);
+        }
+    }
+
+    /**
+     * Gets the number in a numeric column of a row, from the snapshot if there is one.
+     */
+    private Number number(int index, int column) {
+        if (quantities == null) {
+            Investment investment = investments.get(index);
+            switch (column) {
+                case QUANTITY: return investment.getQuantity();
+                case PRICE: return investment.getPrice();
+                case BOOK_VALUE: return investment.getBookValue();
+                default: return investment.calculateGain();
+            }
+        }
+        switch (column) {
+            case QUANTITY: return quantities[index];
+            case PRICE: return prices[index];
+            case BOOK_VALUE: return bookValues[index];
+            default: return gains[index];
+        }
+    }
+
+    /**
+     * Gets the investment shown in a table row.
+     *
+     * @param row the row in the table
+     * @return the investment in that row
+     */
+    public Investment getInvestment(int row) {
+        return investments.get(order != null ? order[row] : row);
+    }
+
+    /**
+     * Sets whether the rows can be sorted. Sorting reads every row, so it is turned off for
+     * rows that are built as they are read, such as those of a {@link LazyPortfolioFile}.
+     *
+     * @param sortable {@code false} to keep the rows in their current order
+     */
+    public void setSortable(boolean sortable) {
+        this.sortable = sortable;
+    }
+
+    /**
+     * Checks whether the rows can be sorted.
+     *
+     * @return {@code false} if sorting has been turned off
+     */
+    public boolean isSortable() {
+        return sortable;
+    }
+
+    /**
+     * Checks which way sorting by a column would order the rows: lowest first, unless the table
+     * is already sorted that way by that column.
+     *
+     * @param column the column to sort by
+     * @return {@code true} for lowest first
+     */
+    public boolean isNextSortAscending(int column) {
+        return column != sortColumn || !ascending;
+    }
+
+    /**
+     * Sorts the table by a column on the calling thread. Selecting the same column again
+     * reverses the order. Does nothing if the table is not sortable.
+     *
+     * @param column the column to sort by
+     */
+    public void sortBy(int column) {
+        if (!sortable) return;
+        boolean ascending = isNextSortAscending(column);
+        applyOrder(column, ascending, sorterFor(column, ascending).get());
+    }
+
+    /**
+     * Takes what a sort by a column reads and returns the sort itself, which can then run on
+     * any thread while the table stays on screen. Call it on the event dispatch thread. For a
+     * model that reads the investments, the sort reads them too and must run on their thread.
+     *
+     * @param column    the column to sort by
+     * @param ascending {@code true} for lowest first
+     * @return the sort, giving the row numbers in sorted order
+     */
+    public Supplier<int[]> sorterFor(int column, boolean ascending) {
+        int n = investments.size();
+        int[] byPrice = column == PRICE ? priceOrder : null;
+        IndexSort.RowComparator comparator;
+        switch (column) {
+            case SYMBOL:
+                comparator = (a, b) -> investments.get(a).getSymbol()
+                        .compareToIgnoreCase(investments.get(b).getSymbol());
+                break;
+            case NAME:
+                comparator = (a, b) -> investments.get(a).getName().compareToIgnoreCase(investments.get(b).getName());
+                break;
+            case TYPE:
+                comparator = (a, b) -> Boolean.compare(investments.get(a) instanceof Stock,
+                                                       investments.get(b) instanceof Stock);
+                break;
+            default: {
+                // Copy the column so the sort sees one set of values, each computed once
+                double[] keys;
+                if (quantities == null) {
+                    keys = null;
+                } else if (column == QUANTITY) {
+                    keys = new double[n];
+                    for (int i = 0; i < n; i++) keys[i] = quantities[i];
+                } else {
+                    keys = (column == PRICE ? prices : column == BOOK_VALUE ? bookValues : gains).clone();
+                }
+                return () -> sort(n, keys != null ? keys : readColumn(column), byPrice, ascending);
+            }
+        }
+        return () -> sort(n, comparator, ascending);
+    }
+
+    /**
+     * Shows the rows in an order from {@link #sorterFor(int, boolean)}. Call it on the event
+     * dispatch thread.
+     *
+     * @param column    the column the rows were sorted by
+     * @param ascending {@code true} if they were sorted lowest first
+     * @param sorted    the row numbers in sorted order
+     */
+    public void applyOrder(int column, boolean ascending, int[] sorted) {
+        this.sortColumn = column;
+        this.ascending = ascending;
+        this.order = sorted;
+        rowLookup = null;
+        fireTableStructureChanged();
+    }
+
+    /**
+     * Copies a numeric column from the investments.
+     */
+    private double[] readColumn(int column) {
+        double[] keys = new double[investments.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = number(i, column).doubleValue();
+        }
+        return keys;
+    }
+
+    /**
+     * Sorts row numbers by a numeric column, starting from a price order when it still holds.
+     */
+    private static int[] sort(int n, double[] keys, int[] byPrice, boolean ascending) {
+        if (byPrice != null && byPrice.length == n && isSorted(byPrice, keys)) {
+            return ascending ? byPrice.clone() : reversed(byPrice.clone());
+        }
+        int[] sorted = identity(n);
+        IndexSort.sortByKey(sorted, keys);
+        return ascending ? sorted : reversed(sorted);
+    }
+
+    private static int[] sort(int n, IndexSort.RowComparator comparator, boolean ascending) {
+        int[] sorted = identity(n);
+        IndexSort.sort(sorted, comparator);
+        return ascending ? sorted : reversed(sorted);
+    }
+
+    private static int[] identity(int n) {
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) rows[i] = i;
+        return rows;
+    }
+
+    /**
+     * Checks in one pass that an order still has the keys in order; a price update since the
+     * snapshot can break it.
+     */
+    private static boolean isSorted(int[] order, double[] keys) {
+        for (int i = 1; i < order.length; i++) {
+            if (Double.compare(keys[order[i - 1]], keys[order[i]]) > 0) return false;
+        }
+        return true;
+    }
+
+    private static int[] reversed(int[] rows) {
+        for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+            int swap = rows[i];
+            rows[i] = rows[j];
+            rows[j] = swap;
+        }
+        return rows;
+    }
+
+    /**
+     * Brings the row of the investment whose price an event reports up to date and repaints it,
+     * if the table shows it. A model that reads the investments only repaints the row. Call it
+     * on the event dispatch thread.
+     *
+     * @param event the price update
+     */
+    public void priceUpdated(PortfolioEvent event) {
+        if (rowLookup == null) {
+            // Symbols never change, so reading them does not race the thread that owns the rows
+            rowLookup = new IntIntMap();
+            for (int row = 0; row < investments.size(); row++) {
+                rowLookup.put(SymbolDictionary.lowercase(getInvestment(row).symbolCode()), row);
+            }
+        }
+        int row = rowLookup.get(event.symbolKey());
+        if (row == IntIntMap.MISSING) return;
+        if (quantities != null) {
+            int index = order != null ? order[row] : row;
+            quantities[index] = event.getQuantity();
+            prices[index] = event.getPrice();
+            bookValues[index] = event.getBookValue();
+            gains[index] = event.getGain();
+        }
+        fireTableRowsUpdated(row, row);
+    }
+}
@@ -0,0 +1,149 @@
+package ePortfolio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The {@code LazyLoadCheck} class checks that a portfolio file added with
+ * {@link Portfolio#openInvestments(LazyPortfolioFile)} behaves exactly like the same file loaded
+ * with {@link Portfolio#loadInvestments(String)}.
+ *
+ * <p>Run it with {@code java ePortfolio.LazyLoadCheck [POSITIONS [SEED]]}. It saves a generated
+ * book of {@link #DEFAULT_POSITIONS} investments by default, then adds it to one portfolio
+ * lazily and loads it into another, both already holding a few investments. The same random
+ * price updates, sales, buys of held symbols and position reads are applied to both while the
+ * lazy one still has records waiting, followed by a buy of a new investment, which builds the
+ * rest. It prints the time to add and to load the file, and exits with status 1 unless both
+ * portfolios then give the same search results, total gain and saved file.</p>
+ */
+public class LazyLoadCheck {
+    /**
+     * The number of investments in the generated file when none is given.
+     */
+    public static final int DEFAULT_POSITIONS = 200_000;
+
+    private static final int OPERATIONS = 20_000;
+
+    private static final String[] WORDS = {"Growth", "Income", "Index", "Bond", "Equity", "Energy", "Trust"};
+
+    private LazyLoadCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_POSITIONS;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        Path file = Files.createTempFile("lazy-load-check", ".txt");
+        Path lazySaved = Files.createTempFile("lazy-load-check-lazy", ".txt");
+        Path eagerSaved = Files.createTempFile("lazy-load-check-eager", ".txt");
+        try {
+            Random random = new Random(seed);
+            Portfolio book = new Portfolio();
+            book.setConsole(quiet);
+            for (int i = 0; i < positions; i++) {
+                String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+                book.buyInvestment(i % 3 == 0 ? "mutualfund" : "stock", "Z" + i, name,
+                                   1 + random.nextInt(100), 1 + random.nextInt(10_000) / 100.0);
+            }
+            book.saveInvestments(file.toString());
+
+            Portfolio lazy = held(quiet);
+            Portfolio eager = held(quiet);
+            long started = System.nanoTime();
+            lazy.openInvestments(LazyPortfolioFile.open(file));
+            double openMillis = (System.nanoTime() - started) / 1e6;
+            started = System.nanoTime();
+            eager.loadInvestments(file.toString());
+            double loadMillis = (System.nanoTime() - started) / 1e6;
+
+            boolean ok = true;
+            for (int op = 0; op < OPERATIONS; op++) {
+                String symbol = "z" + random.nextInt(positions);
+                double price = 1 + random.nextInt(10_000) / 100.0;
+                int quantity = 1 + random.nextInt(60);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        ok &= lazy.updatePrices(symbol, price).equals(eager.updatePrices(symbol, price));
+                        break;
+                    case 1: {
+                        double proceeds = lazy.sellInvestment(symbol, quantity, price);
+                        ok &= proceeds == eager.sellInvestment(symbol, quantity, price);
+                        break;
+                    }
+                    case 2: {
+                        // Buying more of a held symbol needs its name, which only the record knows
+                        int position = random.nextInt(positions);
+                        Investment held = lazy.investmentAt(position);
+                        ok &= same(held, eager.investmentAt(position));
+                        if (held != null) {
+                            String type = held instanceof Stock ? "stock" : "mutualfund";
+                            lazy.buyInvestment(type, held.getSymbol(), held.getName(), quantity, price);
+                            eager.buyInvestment(type, held.getSymbol(), held.getName(), quantity, price);
+                        }
+                        break;
+                    }
+                    default: {
+                        int position = random.nextInt(positions);
+                        ok &= same(lazy.investmentAt(position), eager.investmentAt(position));
+                    }
+                }
+            }
+            if (!ok) {
+                System.out.println("A trade or read of a waiting record differed from the loaded portfolio.");
+            }
+
+            lazy.buyInvestment("stock", "NEW", "New Listing", 10, 10);
+            eager.buyInvestment("stock", "NEW", "New Listing", 10, 10);
+            for (String query : new String[]{"name:growth", "name:income AND price < 20", "symbol:Z17", "new"}) {
+                if (!Arrays.equals(lazy.screen(query).toArray(), eager.screen(query).toArray())) {
+                    System.out.println("The screen " + query + " differs.");
+                    ok = false;
+                }
+            }
+            if (lazy.getTotalGains() != eager.getTotalGains()) {
+                System.out.println("The total gain differs.");
+                ok = false;
+            }
+            lazy.saveInvestments(lazySaved.toString());
+            eager.saveInvestments(eagerSaved.toString());
+            if (Files.mismatch(lazySaved, eagerSaved) != -1) {
+                System.out.println("The saved portfolios differ.");
+                ok = false;
+            }
+
+            System.out.println(String.format("%d investments added in %.1f ms, loaded in %.1f ms", positions,
+                                             openMillis, loadMillis));
+            System.out.println(ok ? "The lazy portfolio matches the loaded one." : "The lazy portfolio differs.");
+            if (!ok) {
+                System.exit(1);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(lazySaved);
+            Files.deleteIfExists(eagerSaved);
+        }
+    }
+
+    /**
+     * Creates a portfolio that already holds a few investments before the file is added.
+     */
+    private static Portfolio held(PrintStream quiet) {
+        Portfolio portfolio = new Portfolio();
+        portfolio.setConsole(quiet);
+        portfolio.buyInvestment("stock", "HELD1", "Held Growth One", 50, 12.5);
+        portfolio.buyInvestment("mutualfund", "HELD2", "Held Income Two", 80, 8.25);
+        return portfolio;
+    }
+
+    private static boolean same(Investment a, Investment b) {
+        if (a == null || b == null) return a == b;
+        return a.getClass() == b.getClass() && a.getSymbol().equals(b.getSymbol()) && a.getName().equals(b.getName())
+               && a.getQuantity() == b.getQuantity() && a.getPrice() == b.getPrice()
+               && a.getBookValue() == b.getBookValue();
+    }
+}
@@ -0,0 +1,378 @@
+package ePortfolio;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code LazyPortfolioFile} class opens a portfolio file written by
+ * {@link Portfolio#saveInvestments(String)} without building its investments, so a large file
+ * can be browsed as soon as it is opened.
+ *
+ * <p>Opening maps the file into memory and makes one pass over its bytes. The pass records where
+ * each record starts and hashes its symbol into an index, but creates no strings and no
+ * investments. An investment is built from its record the first time it is asked for, by the same
+ * parser {@link Portfolio#loadInvestments(String)} uses. It is then kept in a cache of the most
+ * recently used investments, so the rows on screen are built once however often they are
+ * painted, while memory stays bounded however much of the file is read.</p>
+ *
+ * <p>Investments read from the file are a view of it: changing one does not change the file, and
+ * one that has left the cache is built again from the file when it is next asked for. To trade,
+ * add the file to a {@link Portfolio} with {@link Portfolio#openInvestments(LazyPortfolioFile)},
+ * which builds its own investments from the records as it needs them. The file must not change
+ * while it is open, and it must be smaller than 2 GB, the most one mapping can hold.</p>
+ */
+public class LazyPortfolioFile {
+    /**
+     * The number of investments kept by {@link #open(Path)}.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private static final byte[] TYPE_PREFIX = "type = ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEPARATOR = " = ".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path path;
+    private final MappedByteBuffer bytes;
+    private final int limit;
+
+    // Byte offset of the "type = " line of each record, and the hash of its lowercase symbol
+    private int[] recordOffsets = new int[1024];
+    private int[] symbolHashes = new int[1024];
+    private int size;
+
+    // Open-addressed table of record numbers plus one, keyed by symbol hash; zero is empty
+    private int[] symbolTable;
+
+    // Guarded by itself; iterates from least to most recently used
+    private final Map<Integer, Investment> cache;
+
+    private LazyPortfolioFile(Path path, MappedByteBuffer bytes, int cacheSize) {
+        this.path = path;
+        this.bytes = bytes;
+        this.limit = bytes.limit();
+        this.cache = new LinkedHashMap<Integer, Investment>(Math.min(cacheSize, 1 << 16) * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Investment> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Opens a portfolio file, keeping up to {@link #DEFAULT_CACHE_SIZE} investments built.
+     *
+     * @param path the file to open
+     * @return the open file
+     * @throws IOException if the file cannot be read or is 2 GB or larger
+     */
+    public static LazyPortfolioFile open(Path path) throws IOException {
+        return open(path, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens a portfolio file, keeping up to the given number of investments built.
+     *
+     * @param path      the file to open
+     * @param cacheSize the most investments to keep built at once
+     * @return the open file
+     * @throws IOException              if the file cannot be read or is 2 GB or larger
+     * @throws IllegalArgumentException if the cache size is not positive
+     */
+    public static LazyPortfolioFile open(Path path, int cacheSize) throws IOException {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+        }
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to open lazily: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        LazyPortfolioFile file = new LazyPortfolioFile(path, bytes, cacheSize);
+        file.scan();
+        return file;
+    }
+
+    /**
+     * Finds the start of every record and indexes its symbol, without decoding any text.
+     */
+    private void scan() {
+        for (int line = 0; line < limit; line = nextLine(line)) {
+            if (!startsWith(line, TYPE_PREFIX)) continue;
+            int symbolLine = nextLine(line);
+            if (symbolLine >= limit) break;
+            if (size == recordOffsets.length) {
+                recordOffsets = Arrays.copyOf(recordOffsets, size * 2);
+                symbolHashes = Arrays.copyOf(symbolHashes, size * 2);
+            }
+            recordOffsets[size] = line;
+            symbolHashes[size] = symbolHash(symbolLine);
+            size++;
+            line = symbolLine;
+        }
+
+        symbolTable = new int[Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1];
+        int mask = symbolTable.length - 1;
+        for (int record = 0; record < size; record++) {
+            int slot = mix(symbolHashes[record]) & mask;
+            while (symbolTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            symbolTable[slot] = record + 1;
+        }
+    }
+
+    /**
+     * Gets the file that was opened.
+     *
+     * @return the path of the file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the number of records in the file.
+     *
+     * @return the number of investments
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the investment in a record, building it if it is not in the cache.
+     *
+     * @param record the record, from 0 to {@link #size()}
+     * @return the investment
+     * @throws IndexOutOfBoundsException if there is no such record
+     * @throws IllegalArgumentException  if the record cannot be read as an investment
+     */
+    public Investment get(int record) {
+        if (record < 0 || record >= size) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+        }
+        synchronized (cache) {
+            Investment investment = cache.get(record);
+            if (investment == null) {
+                investment = materialize(record);
+                cache.put(record, investment);
+            }
+            return investment;
+        }
+    }
+
+    /**
+     * Builds a new investment from a record, without using or filling the cache, for a portfolio
+     * that will own and change it.
+     *
+     * @param record the record, from 0 to {@link #size()}
+     * @return the investment
+     * @throws IndexOutOfBoundsException if there is no such record
+     * @throws IllegalArgumentException  if the record cannot be read as an investment
+     */
+    Investment build(int record) {
+        if (record < 0 || record >= size) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+        }
+        return materialize(record);
+    }
+
+    /**
+     * Finds the record of a symbol, ignoring the case of ASCII letters. When a symbol is in the
+     * file more than once, the first record is found.
+     *
+     * @param symbol the symbol to find
+     * @return the record number, or -1 if the symbol is not in the file
+     */
+    public int find(String symbol) {
+        byte[] wanted = symbol.trim().getBytes(StandardCharsets.UTF_8);
+        int hash = hash(wanted, 0, wanted.length);
+        int mask = symbolTable.length - 1;
+        int found = -1;
+        // Records were added in file order, but probing may reach a later one first
+        for (int slot = mix(hash) & mask; symbolTable[slot] != 0; slot = (slot + 1) & mask) {
+            int record = symbolTable[slot] - 1;
+            if (symbolHashes[record] == hash && (found < 0 || record < found)
+                && symbolMatches(nextLine(recordOffsets[record]), wanted)) {
+                found = record;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of investments built and kept in the cache.
+     *
+     * @return the number of cached investments
+     */
+    public int getCachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Views the records as a list whose elements are built when they are first read, for use
+     * with an {@link InvestmentTableModel}. Reading every element builds every investment, so
+     * sorting or searching the whole list costs as much as loading the file.
+     *
+     * @return the records as a read-only list
+     */
+    public List<Investment> asList() {
+        return new AbstractList<Investment>() {
+            @Override
+            public Investment get(int index) {
+                return LazyPortfolioFile.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Builds the investment in a record from its first five lines.
+     */
+    private Investment materialize(int record) {
+        int typeLine = recordOffsets[record];
+        int symbolLine = nextLine(typeLine);
+        int nameLine = nextLine(symbolLine);
+        int quantityLine = nextLine(nameLine);
+        int priceLine = nextLine(quantityLine);
+        try {
+            return Portfolio.parseRecord(lineText(typeLine), lineText(symbolLine), lineText(nameLine),
+                                         lineText(quantityLine), lineText(priceLine));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException | NullPointerException e) {
+            throw new IllegalArgumentException("Error reading data format of record " + record + ".");
+        }
+    }
+
+    /**
+     * Gets the offset of the line after the one starting at the given offset.
+     */
+    private int nextLine(int offset) {
+        while (offset < limit) {
+            byte b = bytes.get(offset++);
+            if (b == '\n') break;
+            if (b == '\r') {
+                if (offset < limit && bytes.get(offset) == '\n') offset++;
+                break;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Gets the offset just past the text of the line starting at the given offset.
+     */
+    private int lineEnd(int offset) {
+        while (offset < limit) {
+            byte b = bytes.get(offset);
+            if (b == '\n' || b == '\r') break;
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * Decodes the line starting at the given offset, or returns {@code null} past the end of the
+     * file, as {@link java.io.BufferedReader#readLine()} does.
+     */
+    private String lineText(int offset) {
+        if (offset >= limit) return null;
+        int end = lineEnd(offset);
+        byte[] text = new byte[end - offset];
+        bytes.get(offset, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    private boolean startsWith(int offset, byte[] prefix) {
+        if (limit - offset < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes.get(offset + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the value of a {@code key = value} line, trimmed as {@link Portfolio#parseRecord}
+     * trims it, and returns its start and end packed in a long, or -1 if the line has no value.
+     */
+    private long valueRange(int line) {
+        int end = lineEnd(line);
+        int start = -1;
+        for (int i = line; i + SEPARATOR.length <= end; i++) {
+            if (bytes.get(i) == ' ' && bytes.get(i + 1) == '=' && bytes.get(i + 2) == ' ') {
+                start = i + SEPARATOR.length;
+                break;
+            }
+        }
+        if (start < 0) return -1;
+        // split(" = ")[1] stops at a second separator
+        int valueEnd = start;
+        while (valueEnd < end && !(valueEnd + SEPARATOR.length <= end && bytes.get(valueEnd) == ' '
+                                   && bytes.get(valueEnd + 1) == '=' && bytes.get(valueEnd + 2) == ' ')) {
+            valueEnd++;
+        }
+        while (start < valueEnd && (bytes.get(start) & 0xFF) <= ' ') start++;
+        while (valueEnd > start && (bytes.get(valueEnd - 1) & 0xFF) <= ' ') valueEnd--;
+        return (long) start << 32 | valueEnd;
+    }
+
+    private int symbolHash(int line) {
+        long range = valueRange(line);
+        if (range < 0) return 0;
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + lowerAscii(bytes.get(i));
+        }
+        return hash;
+    }
+
+    private boolean symbolMatches(int line, byte[] wanted) {
+        long range = valueRange(line);
+        if (range < 0) return wanted.length == 0;
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        if (end - start != wanted.length) return false;
+        for (int i = 0; i < wanted.length; i++) {
+            if (lowerAscii(bytes.get(start + i)) != lowerAscii(wanted[i])) return false;
+        }
+        return true;
+    }
+
+    private static int hash(byte[] text, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + lowerAscii(text[i]);
+        }
+        return hash;
+    }
+
+    private static int lowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    /**
+     * Spreads the bits of a hash, since symbols that differ only in their last letter have
+     * hashes that differ only in their low bits.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
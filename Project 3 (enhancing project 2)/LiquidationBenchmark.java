@@ -0,0 +1,71 @@
+package ePortfolio;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * The {@code LiquidationBenchmark} class times selling out a large book one position at a time,
+ * which used to take quadratic time because every sale shifted the positions after it.
+ *
+ * <p>Run it with {@code java ePortfolio.LiquidationBenchmark [POSITIONS [MAX_SECONDS]]}. It buys
+ * {@link #DEFAULT_POSITIONS} positions by default, with names that share keywords so the posting
+ * lists are long, and then sells every position in full, first to last, with a keyword search
+ * every 10,000 sales. It prints the time of each phase and checks that the book ends empty and
+ * that the searches saw the right number of positions. It exits with status 1 if a check fails
+ * or the sales take longer than {@code MAX_SECONDS}, 10 by default.</p>
+ */
+public class LiquidationBenchmark {
+    /**
+     * The number of positions bought when none is given.
+     */
+    public static final int DEFAULT_POSITIONS = 100_000;
+
+    private static final int SEARCH_EVERY = 10_000;
+
+    private LiquidationBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_POSITIONS;
+        double maxSeconds = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        Portfolio portfolio = new Portfolio();
+        portfolio.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+
+        long started = System.nanoTime();
+        for (int i = 0; i < positions; i++) {
+            portfolio.buyInvestment("stock", "L" + i, "Liquid Holding Group " + (i % 100) + " Number " + i,
+                                    10, 20 + i % 50);
+        }
+        double buySeconds = (System.nanoTime() - started) / 1e9;
+
+        boolean ok = true;
+        started = System.nanoTime();
+        for (int i = 0; i < positions; i++) {
+            portfolio.sellInvestment("L" + i, 10, 25);
+            if ((i + 1) % SEARCH_EVERY == 0) {
+                // Every position still held has "holding" in its name
+                int found = portfolio.screen("name:holding").size();
+                if (found != positions - i - 1) {
+                    System.out.println("After " + (i + 1) + " sales a search found " + found
+                                       + " positions instead of " + (positions - i - 1));
+                    ok = false;
+                }
+            }
+        }
+        double sellSeconds = (System.nanoTime() - started) / 1e9;
+
+        if (portfolio.size() != 0) {
+            System.out.println(portfolio.size() + " positions are left after selling everything");
+            ok = false;
+        }
+        System.out.println(String.format("Bought %d positions in %.2f s, sold them out in %.2f s",
+                                         positions, buySeconds, sellSeconds));
+        if (sellSeconds > maxSeconds) {
+            System.out.println(String.format("Selling out took longer than %.1f s", maxSeconds));
+            ok = false;
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
@@ -1,9 +1,91 @@
 package ePortfolio;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The {@code Main} class starts ePortfolio. The GUI is loaded by name only when a window is
+ * wanted, and no AWT or Swing class is touched before that, so batch runs never pay for loading
+ * and initializing the windowing toolkit.
+ */
 public class Main {
- 
+    private static final String GUI_CLASS = "ePortfolio.PortfolioGUI";
+
+    /**
+     * Starts the GUI, or with {@code --batch [file]} runs the commands in the file, or from
+     * standard input when no file is given, without opening a window. With {@code --timing}
+     * as the first argument, the time from JVM start until the first command can be run is
+     * printed to standard error.
+     *
+     * @param args the command line arguments
+     */
     public static void main(String[] args) {
-        new PortfolioGUI();
+        boolean timing = args.length > 0 && args[0].equals("--timing");
+        int first = timing ? 1 : 0;
+
+        if (args.length > first && args[first].equals("--batch")) {
+            runBatch(args.length > first + 1 ? args[first + 1] : null, timing);
+        } else {
+            startGui(timing);
+        }
+    }
+
+    /**
+     * Runs a batch script against a new portfolio, writing results to standard output.
+     *
+     * @param filename the script to run, or {@code null} to read standard input
+     * @param timing   whether to report the startup time
+     */
+    private static void runBatch(String filename, boolean timing) {
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        try (InputStream input = filename != null ? new FileInputStream(filename) : System.in;
+             Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+            BatchRunner runner = new BatchRunner(new Portfolio(), out);
+            if (timing) {
+                reportStartup("batch");
+            }
+            runner.run(reader);
+        } catch (IOException e) {
+            out.println("Unable to read batch script: " + e.getMessage());
+        }
+        out.flush();
+    }
+
+    /**
+     * Loads and opens the GUI. Its classes, and through them AWT and Swing, are only loaded here.
+     *
+     * @param timing whether to report the startup time once the window is ready
+     */
+    private static void startGui(boolean timing) {
+        try {
+            Class.forName(GUI_CLASS).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to start the GUI", e);
+        }
+        if (timing) {
+            // The window is ready for the first command once the events queued so far have run
+            javax.swing.SwingUtilities.invokeLater(() -> reportStartup("gui"));
+        }
     }
-}
 
+    /**
+     * Prints the time since the JVM started. The current time is taken before the management
+     * classes that know the start time are loaded, so loading them is not counted.
+     *
+     * @param mode the mode that has started
+     */
+    private static void reportStartup(String mode) {
+        long now = System.currentTimeMillis();
+        long started = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.err.println("Startup (" + mode + "): " + (now - started) + " ms");
+    }
+}
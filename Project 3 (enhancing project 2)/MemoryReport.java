@@ -0,0 +1,157 @@
+package ePortfolio;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@code MemoryReport} class estimates how much heap the {@link SymbolDictionary} saves for a
+ * set of portfolios, by comparing the strings and index keys they hold now with what the same
+ * data would cost if every investment and every index kept its own strings.
+ *
+ * <p>Only the parts that the dictionary changes are counted: the symbol and name of each
+ * investment, and the keys of the keyword, symbol and name indexes. Posting lists, prices and
+ * quantities cost the same either way. Object sizes are estimated as described in
+ * {@link FootprintReport}.</p>
+ */
+public class MemoryReport {
+    // A HashMap node plus its share of the table at the default load factor
+    private static final int HASH_MAP_ENTRY_BYTES = 32 + 8;
+    // A boxed Integer position, stored alongside each key in a symbol map
+    private static final int INTEGER_BYTES = 16;
+    // One int key and one reference per IntMap slot, or a packed key and value per IntIntMap slot
+    private static final int INT_MAP_SLOT_BYTES = 8;
+
+    private final int portfolios;
+    private final int positions;
+    private final int distinctStrings;
+    private final long bytesWithoutDictionary;
+    private final long bytesWithDictionary;
+
+    private MemoryReport(int portfolios, int positions, int distinctStrings,
+                         long bytesWithoutDictionary, long bytesWithDictionary) {
+        this.portfolios = portfolios;
+        this.positions = positions;
+        this.distinctStrings = distinctStrings;
+        this.bytesWithoutDictionary = bytesWithoutDictionary;
+        this.bytesWithDictionary = bytesWithDictionary;
+    }
+
+    /**
+     * Estimates the memory used by the strings and index keys of the given portfolios.
+     *
+     * @param portfolios the portfolios to measure
+     * @return the report
+     */
+    public static MemoryReport of(List<Portfolio> portfolios) {
+        Set<Integer> codes = new HashSet<>();
+        int positions = 0;
+        long without = 0;
+        long with = 0;
+
+        for (Portfolio portfolio : portfolios) {
+            Set<Integer> keywords = new HashSet<>();
+            Set<Integer> names = new HashSet<>();
+            for (int i = 0; i < portfolio.size(); i++) {
+                Investment investment = portfolio.investmentAt(i);
+                int symbolCode = investment.symbolCode();
+                int nameCode = investment.nameCode();
+                int lowerSymbol = SymbolDictionary.lowercase(symbolCode);
+                int lowerName = SymbolDictionary.lowercase(nameCode);
+                codes.add(symbolCode);
+                codes.add(nameCode);
+                codes.add(lowerSymbol);
+                codes.add(lowerName);
+
+                // Each investment had its own symbol and name, and each index its own lowercase copy
+                without += stringBytes(symbolCode) + stringBytes(nameCode);
+                without += stringBytes(lowerSymbol) + HASH_MAP_ENTRY_BYTES + INTEGER_BYTES;
+                if (names.add(lowerName)) {
+                    without += stringBytes(lowerName) + HASH_MAP_ENTRY_BYTES;
+                }
+                for (String word : SymbolDictionary.decode(lowerName).split("\\s+")) {
+                    int wordCode = SymbolDictionary.find(word);
+                    codes.add(wordCode);
+                    if (keywords.add(wordCode)) {
+                        without += stringBytes(wordCode) + HASH_MAP_ENTRY_BYTES;
+                    }
+                }
+            }
+            positions += portfolio.size();
+            with += (long) portfolio.indexSlots() * INT_MAP_SLOT_BYTES;
+        }
+
+        for (int code : codes) {
+            with += SymbolDictionary.retainedBytes(code);
+        }
+        return new MemoryReport(portfolios.size(), positions, codes.size(), without, with);
+    }
+
+    private static long stringBytes(int code) {
+        return FootprintReport.stringBytes(SymbolDictionary.decode(code));
+    }
+
+    /**
+     * Gets the number of positions across all the portfolios.
+     *
+     * @return the number of positions
+     */
+    public int getPositions() {
+        return positions;
+    }
+
+    /**
+     * Gets the number of distinct strings the portfolios share through the dictionary.
+     *
+     * @return the number of distinct strings
+     */
+    public int getDistinctStrings() {
+        return distinctStrings;
+    }
+
+    /**
+     * Gets the estimated bytes the strings and index keys would take if every investment and
+     * every index held its own strings.
+     *
+     * @return the estimated bytes without the dictionary
+     */
+    public long getBytesWithoutDictionary() {
+        return bytesWithoutDictionary;
+    }
+
+    /**
+     * Gets the estimated bytes the shared strings, the dictionary and the code-keyed indexes take.
+     *
+     * @return the estimated bytes with the dictionary
+     */
+    public long getBytesWithDictionary() {
+        return bytesWithDictionary;
+    }
+
+    /**
+     * Gets the estimated bytes saved by the dictionary.
+     *
+     * @return the difference between the two layouts
+     */
+    public long getBytesSaved() {
+        return bytesWithoutDictionary - bytesWithDictionary;
+    }
+
+    /**
+     * Describes the estimate in kilobytes and per position.
+     *
+     * @return the formatted report
+     */
+    @Override
+    public String toString() {
+        double perPosition = Math.max(1, positions);
+        return String.format("Portfolios: %d\nPositions: %d\nDistinct Strings: %d\n"
+                        + "Without Dictionary: %.1f KB (%.0f B/position)\n"
+                        + "With Dictionary: %.1f KB (%.0f B/position)\n"
+                        + "Saved: %.1f KB",
+                portfolios, positions, distinctStrings,
+                bytesWithoutDictionary / 1024.0, bytesWithoutDictionary / perPosition,
+                bytesWithDictionary / 1024.0, bytesWithDictionary / perPosition,
+                getBytesSaved() / 1024.0);
+    }
+}
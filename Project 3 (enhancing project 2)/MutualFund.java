@@ -37,7 +37,7 @@ public class MutualFund extends Investment {
      * @return the calculated gain
      */
     @Override
-    public double calculateGain() {
+    protected double computeGain() {
         double currentPrice = getPrice();
         double bookValue = getBookValue();
         return Math.round(((currentPrice * getQuantity()) - bookValue - REDEMPTION_FEE) * 100.0) / 100.0;
@@ -68,4 +68,15 @@ public class MutualFund extends Investment {
         double newBookValue = getBookValue() + additionalQuantity * newPrice;
         updateBookValue(Math.round(newBookValue * 100.0) / 100.0);
     }
+
+    /**
+     * Gets the redemption fee for a sale. Purchases are free.
+     *
+     * @param sell {@code true} for a sale, {@code false} for a purchase
+     * @return the fee of the trade
+     */
+    @Override
+    public double getTradeFee(boolean sell) {
+        return sell ? REDEMPTION_FEE : 0;
+    }
 }
@@ -0,0 +1,303 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The {@code OrderEngine} class holds resting limit and stop orders until a price update crosses
+ * their trigger. A {@link Portfolio} with an engine attached asks it for the crossed orders on
+ * every price update and fills them through its own buy and sell methods at the new price.
+ *
+ * <p>Orders are kept per symbol in two heaps ordered by trigger price: one for orders that fire
+ * when the price falls to or below the trigger (buy limits and sell stops) and one for orders
+ * that fire when it rises to or above it (sell limits and buy stops). A price update only looks
+ * at the top of the two heaps for its symbol, so it touches the orders it crosses and no others,
+ * however many are resting. Orders with the same trigger fire in the order they were placed.</p>
+ *
+ * <p>Cancelled orders are only marked and are dropped when they reach the top of their heap.
+ * A heap is rebuilt without them once they make up half of it, so cancelling is constant time
+ * and cancelled orders never take more room than the live ones.</p>
+ */
+public class OrderEngine {
+    // Falling heap: highest trigger first, since a falling price reaches it first
+    private static final Comparator<Order> FALLING = (a, b) ->
+            a.trigger != b.trigger ? Double.compare(b.trigger, a.trigger) : Integer.compare(a.id, b.id);
+    // Rising heap: lowest trigger first
+    private static final Comparator<Order> RISING = (a, b) ->
+            a.trigger != b.trigger ? Double.compare(a.trigger, b.trigger) : Integer.compare(a.id, b.id);
+
+    private final IntMap<Book> books = new IntMap<>();
+    private final IntMap<Order> resting = new IntMap<>();
+    private int nextId = 1;
+
+    /**
+     * The kinds of orders the engine accepts.
+     */
+    public enum Type {
+        /** Buys when the price falls to or below the trigger. */
+        BUY_LIMIT,
+        /** Sells when the price rises to or above the trigger. */
+        SELL_LIMIT,
+        /** Buys when the price rises to or above the trigger. */
+        BUY_STOP,
+        /** Sells when the price falls to or below the trigger. */
+        SELL_STOP;
+
+        /**
+         * Checks whether an order of this type buys.
+         *
+         * @return {@code true} for buy limits and buy stops
+         */
+        public boolean isBuy() {
+            return this == BUY_LIMIT || this == BUY_STOP;
+        }
+
+        /**
+         * Checks whether an order of this type fires on a falling price.
+         *
+         * @return {@code true} for buy limits and sell stops
+         */
+        boolean firesFalling() {
+            return this == BUY_LIMIT || this == SELL_STOP;
+        }
+    }
+
+    /**
+     * The {@code Order} class is one resting order. Symbols and names are held as
+     * {@link SymbolDictionary} codes, like those of an {@link Investment}.
+     */
+    public static class Order {
+        private final int id;
+        private final Type type;
+        private final int symbolCode;
+        private final int nameCode;
+        private final boolean stock;
+        private final int quantity;
+        private final double trigger;
+        private boolean cancelled;
+
+        private Order(int id, Type type, String symbol, boolean stock, String name, int quantity, double trigger) {
+            this.id = id;
+            this.type = type;
+            this.symbolCode = SymbolDictionary.encode(symbol);
+            this.nameCode = name != null ? SymbolDictionary.encode(name) : SymbolDictionary.NONE;
+            this.stock = stock;
+            this.quantity = quantity;
+            this.trigger = trigger;
+        }
+
+        /**
+         * Gets the number the engine gave the order, which also sets its place in the queue.
+         *
+         * @return the order number
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Gets the kind of order.
+         *
+         * @return the order type
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Gets the symbol the order trades.
+         *
+         * @return the symbol
+         */
+        public String getSymbol() {
+            return SymbolDictionary.decode(symbolCode);
+        }
+
+        /**
+         * Gets the name to buy under, if the buy opens a new investment.
+         *
+         * @return the name, or {@code null} for a sell order
+         */
+        public String getName() {
+            return nameCode != SymbolDictionary.NONE ? SymbolDictionary.decode(nameCode) : null;
+        }
+
+        /**
+         * Gets the type of investment a buy order opens.
+         *
+         * @return {@code "stock"} or {@code "mutualfund"}
+         */
+        public String getInvestmentType() {
+            return stock ? "stock" : "mutualfund";
+        }
+
+        /**
+         * Gets the quantity to buy or sell.
+         *
+         * @return the quantity
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Gets the price at which the order fires.
+         *
+         * @return the trigger price
+         */
+        public double getTrigger() {
+            return trigger;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Order %d: %s %s %d at %.2f", id, type.name().toLowerCase().replace('_', ' '),
+                                 getSymbol(), quantity, trigger);
+        }
+    }
+
+    /**
+     * The resting orders of one symbol.
+     */
+    private static class Book {
+        final PriorityQueue<Order> falling = new PriorityQueue<>(FALLING);
+        final PriorityQueue<Order> rising = new PriorityQueue<>(RISING);
+        int cancelled;
+
+        boolean isEmpty() {
+            return falling.isEmpty() && rising.isEmpty();
+        }
+    }
+
+    /**
+     * Places a resting order.
+     *
+     * @param type     the kind of order
+     * @param symbol   the symbol to trade
+     * @param stock    for a buy, whether a new investment is a stock rather than a mutual fund
+     * @param name     for a buy, the name of a new investment; ignored for a sell
+     * @param quantity the quantity to buy or sell
+     * @param trigger  the price at which the order fires
+     * @return the new order
+     * @throws IllegalArgumentException if the quantity or trigger is not positive, or a buy has no name
+     */
+    public Order place(Type type, String symbol, boolean stock, String name, int quantity, double trigger) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive.");
+        }
+        if (!(trigger > 0) || Double.isInfinite(trigger)) {
+            throw new IllegalArgumentException("Trigger price must be positive.");
+        }
+        if (type.isBuy() && (name == null || name.isEmpty())) {
+            throw new IllegalArgumentException("A buy order needs a name.");
+        }
+        Order order = new Order(nextId++, type, symbol, stock, type.isBuy() ? name : null, quantity, trigger);
+        int key = SymbolDictionary.lowercase(order.symbolCode);
+        Book book = books.get(key);
+        if (book == null) {
+            book = new Book();
+            books.put(key, book);
+        }
+        (type.firesFalling() ? book.falling : book.rising).add(order);
+        resting.put(order.id, order);
+        return order;
+    }
+
+    /**
+     * Cancels a resting order.
+     *
+     * @param id the order number
+     * @return {@code true} if the order was resting, {@code false} if it had fired, was
+     *         cancelled already or never existed
+     */
+    public boolean cancel(int id) {
+        Order order = resting.remove(id);
+        if (order == null) return false;
+        order.cancelled = true;
+        Book book = books.get(SymbolDictionary.lowercase(order.symbolCode));
+        if (++book.cancelled * 2 > book.falling.size() + book.rising.size()) {
+            book.falling.removeIf(o -> o.cancelled);
+            book.rising.removeIf(o -> o.cancelled);
+            book.cancelled = 0;
+            if (book.isEmpty()) {
+                books.remove(SymbolDictionary.lowercase(order.symbolCode));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the orders crossed by a new price for a symbol. Orders that fire on a
+     * falling price come first, highest trigger first, followed by those that fire on a rising
+     * price, lowest trigger first.
+     *
+     * @param symbol the symbol whose price changed, in any case
+     * @param price  the new price
+     * @return the crossed orders, in the order they should be filled
+     */
+    public List<Order> crossed(String symbol, double price) {
+        int key = SymbolDictionary.findLowercase(symbol);
+        Book book = books.get(key);
+        if (book == null) return Collections.emptyList();
+        List<Order> fired = new ArrayList<>(0);
+        drain(book, book.falling, price, true, fired);
+        drain(book, book.rising, price, false, fired);
+        if (book.isEmpty()) {
+            books.remove(key);
+        }
+        return fired;
+    }
+
+    /**
+     * Polls a heap while its top order is crossed or cancelled.
+     */
+    private void drain(Book book, PriorityQueue<Order> heap, double price, boolean falling, List<Order> fired) {
+        for (Order top = heap.peek(); top != null; top = heap.peek()) {
+            if (top.cancelled) {
+                book.cancelled--;
+            } else if (falling ? price <= top.trigger : price >= top.trigger) {
+                resting.remove(top.id);
+                fired.add(top);
+            } else {
+                return;
+            }
+            heap.poll();
+        }
+    }
+
+    /**
+     * Gets the resting orders for a symbol, falling orders first, each side in the order it
+     * would fire.
+     *
+     * @param symbol the symbol, in any case
+     * @return the resting orders
+     */
+    public List<Order> restingOrders(String symbol) {
+        Book book = books.get(SymbolDictionary.findLowercase(symbol));
+        List<Order> orders = new ArrayList<>();
+        if (book == null) return orders;
+        List<Order> falling = new ArrayList<>(book.falling);
+        falling.sort(FALLING);
+        List<Order> rising = new ArrayList<>(book.rising);
+        rising.sort(RISING);
+        for (Order order : falling) {
+            if (!order.cancelled) orders.add(order);
+        }
+        for (Order order : rising) {
+            if (!order.cancelled) orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Gets the number of resting orders across all symbols.
+     *
+     * @return the number of orders waiting for their trigger
+     */
+    public int size() {
+        return resting.size();
+    }
+}
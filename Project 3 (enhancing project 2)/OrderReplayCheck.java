@@ -0,0 +1,130 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The {@code OrderReplayCheck} class checks that an {@link OrderEngine} fires orders exactly
+ * when and in the order it promises, and that replaying the same feed gives the same fills.
+ *
+ * <p>Run it with {@code java ePortfolio.OrderReplayCheck [SEED]}. It places random limit and
+ * stop orders on a set of symbols, cancels some of them, and feeds a random walk of prices. Each
+ * tick's fills are compared with a scan of the orders resting on its symbol, sorted as the engine
+ * documents: falling orders first, highest trigger first, then rising orders, lowest trigger
+ * first, with ties in placement order. The whole feed is then replayed on a new engine and its
+ * fills must be identical. It prints the number of fills and exits with status 1 on any
+ * mismatch.</p>
+ */
+public class OrderReplayCheck {
+    private static final int SYMBOLS = 200;
+    private static final int ORDERS = 20_000;
+    private static final int TICKS = 200_000;
+
+    private static final Comparator<OrderEngine.Order> FIRING_ORDER = Comparator
+            .comparing((OrderEngine.Order o) -> !o.getType().firesFalling())
+            .thenComparingDouble(o -> o.getType().firesFalling() ? -o.getTrigger() : o.getTrigger())
+            .thenComparingInt(OrderEngine.Order::getId);
+
+    private OrderReplayCheck() {
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+        List<Integer> first = new ArrayList<>();
+        int mismatches = replay(seed, first, true);
+        List<Integer> second = new ArrayList<>();
+        replay(seed, second, false);
+        if (!first.equals(second)) {
+            System.out.println("Replaying the same feed gave different fills.");
+            mismatches++;
+        }
+        System.out.println(first.size() + " fills, " + mismatches + " mismatches.");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the feed for a seed, adding the id of every fill in order, and returns the number of
+     * ticks whose fills differ from a scan of the resting orders.
+     */
+    private static int replay(long seed, List<Integer> fills, boolean compare) {
+        Random random = new Random(seed);
+        OrderEngine engine = new OrderEngine();
+        // The resting orders of each symbol, and of all symbols for picking one to cancel
+        List<List<OrderEngine.Order>> restingBySymbol = new ArrayList<>();
+        List<OrderEngine.Order> resting = new ArrayList<>();
+        double[] prices = new double[SYMBOLS];
+        for (int s = 0; s < SYMBOLS; s++) {
+            prices[s] = 50 + random.nextInt(100);
+            restingBySymbol.add(new ArrayList<>());
+        }
+        OrderEngine.Type[] types = OrderEngine.Type.values();
+        int mismatches = 0;
+        int placed = 0;
+
+        for (int tick = 0; tick < TICKS; tick++) {
+            // Place orders evenly through the feed, and now and then cancel a random one
+            while (placed < (long) ORDERS * (tick + 1) / TICKS) {
+                int s = random.nextInt(SYMBOLS);
+                OrderEngine.Type type = types[random.nextInt(types.length)];
+                // Round triggers to cents so that equal triggers are common
+                double trigger = Math.round(prices[s] * (0.9 + random.nextDouble() * 0.2) * 100) / 100.0;
+                OrderEngine.Order order = engine.place(type, symbol(s), true, "Replay " + s,
+                                                       1 + random.nextInt(100), trigger);
+                resting.add(order);
+                restingBySymbol.get(s).add(order);
+                placed++;
+                if (random.nextInt(10) == 0) {
+                    int last = resting.size() - 1;
+                    int pick = random.nextInt(resting.size());
+                    OrderEngine.Order cancelled = resting.get(pick);
+                    resting.set(pick, resting.get(last));
+                    resting.remove(last);
+                    restingBySymbol.get(Integer.parseInt(cancelled.getSymbol().substring(1))).remove(cancelled);
+                    engine.cancel(cancelled.getId());
+                }
+            }
+
+            int s = random.nextInt(SYMBOLS);
+            prices[s] = Math.max(0.01, Math.round(prices[s] * (1 + random.nextGaussian() * 0.01) * 100) / 100.0);
+            List<OrderEngine.Order> fired = engine.crossed(symbol(s), prices[s]);
+            for (OrderEngine.Order order : fired) {
+                fills.add(order.getId());
+            }
+
+            List<OrderEngine.Order> expected = new ArrayList<>();
+            for (OrderEngine.Order order : restingBySymbol.get(s)) {
+                double trigger = order.getTrigger();
+                if (order.getType().firesFalling() ? prices[s] <= trigger : prices[s] >= trigger) {
+                    expected.add(order);
+                }
+            }
+            restingBySymbol.get(s).removeAll(expected);
+            resting.removeAll(expected);
+            expected.sort(FIRING_ORDER);
+            if (compare && !ids(expected).equals(ids(fired))) {
+                if (mismatches < 10) {
+                    System.out.println("Tick " + tick + " at " + prices[s] + " on " + symbol(s) + ": expected "
+                                       + ids(expected) + ", fired " + ids(fired));
+                }
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    private static String symbol(int s) {
+        return "R" + s;
+    }
+
+    private static List<Integer> ids(List<OrderEngine.Order> orders) {
+        List<Integer> ids = new ArrayList<>(orders.size());
+        for (OrderEngine.Order order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+}
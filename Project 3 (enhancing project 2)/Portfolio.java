@@ -7,53 +7,203 @@ import java.util.*;
  * The {@code Portfolio} class manages a collection of {@code Investment} objects, including
  * operations to load, save, buy, sell, update, search, and calculate the gain of investments.
  * It also maintains a keyword index for efficient search functionality based on investment names.
+ * The keyword, symbol and name indexes are keyed by {@link SymbolDictionary} codes of the
+ * lowercase strings, so they share one copy of every word with all other portfolios.
+ *
+ * <p>An investment keeps its position until the list is compacted. Selling the last unit only
+ * empties its slot, and the keyword index filters empty slots out when it is searched. The list
+ * and indexes are compacted in one pass once half the slots are empty, or before positions are
+ * handed out as a whole range, so liquidating a large portfolio takes linear time.</p>
  * 
  * @since 1.0
  */
 public class Portfolio {
     private ArrayList<Investment> investments;
-    private HashMap<String, ArrayList<Integer>> keywordIndex;
+    private IntMap<PostingList> keywordIndex;
+    private IntIntMap symbolIndex;
+    private IntIntMap nameCounts;
+    private PrefixIndex symbolPrefixIndex;
+    private PrefixIndex namePrefixIndex;
+
+    // Price index: positions sorted by price, rebuilt lazily after prices or positions change
+    private double[] sortedPrices;
+    private int[] priceOrder;
+    private boolean priceIndexDirty;
+
+    // Slots left empty by sold-out investments since the list was last compacted
+    private int emptySlots;
+
+    // A file added by openInvestments whose records are built as they are needed. Its records
+    // take the slots from pendingBase on, which stay empty while their record is pending.
+    private LazyPortfolioFile pendingFile;
+    private int pendingBase;
+    private BitSet pendingRecords;
+
+    // Where status messages such as sale proceeds are printed
+    private PrintStream console = System.out;
+
+    // Records every change for point-in-time reconstruction, when one is attached
+    private EventLog eventLog;
+
+    // Resting limit and stop orders checked on every price update, when an engine is attached
+    private OrderEngine orderEngine;
+
+    // Price alerts told about every price update, when an engine is attached
+    private AlertEngine alertEngine;
+
+    // Publishes every change to subscribers such as the GUI, when a publisher is attached
+    private PortfolioEventPublisher eventPublisher;
 
     /**
-     * Constructs an empty {@code Portfolio} and initializes the investment list and keyword index.
+     * Constructs an empty {@code Portfolio} and initializes the investment list, the keyword,
+     * symbol and price indexes, and the prefix indexes used for autocomplete.
      */
     public Portfolio() {
         investments = new ArrayList<>();
-        keywordIndex = new HashMap<>();
+        keywordIndex = new IntMap<>();
+        symbolIndex = new IntIntMap();
+        nameCounts = new IntIntMap();
+        sortedPrices = new double[0];
+        priceOrder = new int[0];
+        symbolPrefixIndex = new PrefixIndex();
+        namePrefixIndex = new PrefixIndex();
     }
 
     /**
      * Loads investments from the specified file. If the file doesn't exist or has a read error,
-     * an error message is displayed. Investments are added to the list and the keyword index is updated.
+     * an error message is displayed. The whole file is read before anything is added, so a file
+     * that cannot be read leaves the portfolio as it was. The investments are then added to the
+     * list and the indexes are rebuilt once.
      *
      * @param filename the file to load investments from
      */
     public void loadInvestments(String filename) {
+        List<Investment> loaded = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 if (!line.startsWith("type = ")) continue;
 
-                String type = line.split(" = ")[1].trim();
-                String symbol = reader.readLine().split(" = ")[1].trim();
-                String name = reader.readLine().split(" = ")[1].trim();
-                int quantity = Integer.parseInt(reader.readLine().split(" = ")[1].trim());
-                double price = Double.parseDouble(reader.readLine().split(" = ")[1].trim());
-
-                Investment investment = type.equalsIgnoreCase("stock") ?
-                                        new Stock(symbol, name, quantity, price) :
-                                        new MutualFund(symbol, name, quantity, price);
-
-                investments.add(investment);
+                loaded.add(parseRecord(line, reader.readLine(), reader.readLine(),
+                                       reader.readLine(), reader.readLine()));
 
                 reader.readLine();
             }
-            updateKeywordIndex();
         } catch (IOException e) {
-            System.out.println("No previous file found or unable to load data.");
-        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-            System.out.println("Error reading data format from file.");
+            console.println("No previous file found or unable to load data.");
+            return;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException | NullPointerException e) {
+            console.println("Error reading data format from file.");
+            return;
+        }
+
+        buildPending();
+        investments.addAll(loaded);
+        updateKeywordIndex();
+        for (Investment investment : loaded) {
+            publish(PortfolioEvent.Type.BUY, investment, investment.getQuantity(), investment.getPrice());
+        }
+        // Loading is not recorded as events, so the log needs the whole new state
+        writeCheckpoint();
+    }
+
+    /**
+     * Builds an investment from the first five lines of a record in a portfolio file, the way
+     * {@link #loadInvestments(String)} and {@link LazyPortfolioFile} both read them. The book
+     * value line is not read; it is calculated from the quantity and price.
+     *
+     * @param typeLine     the {@code type = } line
+     * @param symbolLine   the {@code symbol = } line
+     * @param nameLine     the {@code name = } line
+     * @param quantityLine the {@code quantity = } line
+     * @param priceLine    the {@code price = } line
+     * @return the investment
+     * @throws NumberFormatException          if the quantity or price is not a number
+     * @throws ArrayIndexOutOfBoundsException if a line has no value
+     * @throws NullPointerException           if the record ends early
+     */
+    static Investment parseRecord(String typeLine, String symbolLine, String nameLine,
+                                  String quantityLine, String priceLine) {
+        String type = typeLine.split(" = ")[1].trim();
+        String symbol = symbolLine.split(" = ")[1].trim();
+        String name = nameLine.split(" = ")[1].trim();
+        int quantity = Integer.parseInt(quantityLine.split(" = ")[1].trim());
+        double price = Double.parseDouble(priceLine.split(" = ")[1].trim());
+
+        return type.equalsIgnoreCase("stock") ?
+               new Stock(symbol, name, quantity, price) :
+               new MutualFund(symbol, name, quantity, price);
+    }
+
+    /**
+     * Adds every investment in an open portfolio file without building them, so that even a
+     * large file is added at once. An investment is built from its record the first time it is
+     * needed: when its symbol is bought, sold or updated, or its position is read. The first
+     * operation over the whole portfolio, such as a search, a rollup, a save or buying a new
+     * investment, builds every record still waiting and indexes them all. Built investments stay
+     * in the portfolio, since they can change; only the file's own cache is bounded.
+     *
+     * <p>Subscribers get a buy event for each investment of the file once they have all been
+     * built. With an event log attached they are all built at once, since the log needs the
+     * whole new state as a checkpoint. The file must not change until then.</p>
+     *
+     * @param file the file to add
+     */
+    public void openInvestments(LazyPortfolioFile file) {
+        buildPending();
+        pendingFile = file;
+        pendingBase = investments.size();
+        pendingRecords = new BitSet(file.size());
+        pendingRecords.set(0, file.size());
+        investments.addAll(Collections.nCopies(file.size(), null));
+        priceIndexDirty = true;
+        if (eventLog != null) {
+            buildPending();
+        }
+    }
+
+    /**
+     * Builds a pending record of the open file into its slot. Only the symbol index learns of
+     * it; the other indexes are rebuilt once every record is built, before anything reads them.
+     *
+     * @param record the record to build
+     * @return the investment, or {@code null} if the record cannot be read
+     */
+    private Investment buildRecord(int record) {
+        pendingRecords.clear(record);
+        Investment investment;
+        try {
+            investment = pendingFile.build(record);
+        } catch (IllegalArgumentException e) {
+            console.println(e.getMessage() + " It was left out.");
+            emptySlots++;
+            return null;
+        }
+        investments.set(pendingBase + record, investment);
+        symbolIndex.put(SymbolDictionary.lowercase(investment.symbolCode()), pendingBase + record);
+        return investment;
+    }
+
+    /**
+     * Builds every record of the open file that is still pending, rebuilds the indexes and
+     * tells subscribers and the event log about the file's investments. Called before anything
+     * reads the whole portfolio or its indexes, including a {@link QueryPlan}.
+     */
+    void buildPending() {
+        if (pendingFile == null) return;
+        for (int record = pendingRecords.nextSetBit(0); record >= 0; record = pendingRecords.nextSetBit(record + 1)) {
+            buildRecord(record);
         }
+        List<Investment> added = new ArrayList<>(investments.subList(pendingBase, pendingBase + pendingFile.size()));
+        pendingFile = null;
+        pendingRecords = null;
+        updateKeywordIndex();
+        for (Investment investment : added) {
+            if (investment != null) {
+                publish(PortfolioEvent.Type.BUY, investment, investment.getQuantity(), investment.getPrice());
+            }
+        }
+        writeCheckpoint();
     }
 
     /**
@@ -62,15 +212,17 @@ public class Portfolio {
      * @param filename the file to save investments to
      */
     public void saveInvestments(String filename) {
+        buildPending();
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
             for (Investment investment : investments) {
+                if (investment == null) continue;
                 String type;
                 if (investment instanceof Stock) {
                     type = "stock";
                 } else if (investment instanceof MutualFund) {
                     type = "mutualfund";
                 } else {
-                    System.out.println("Unknown investment type detected.");
+                    console.println("Unknown investment type detected.");
                     continue;
                 }
                 writer.write("type = " + type + "\n" +
@@ -82,27 +234,135 @@ public class Portfolio {
                 writer.newLine();
             }
         } catch (IOException e) {
-            System.out.println("Error saving data to file.");
+            console.println("Error saving data to file.");
+        }
+    }
+
+    /**
+     * Sets where status messages, such as sale proceeds and load or save errors, are printed.
+     * The default is {@code System.out}.
+     *
+     * @param console the stream to print status messages to
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
+    }
+
+    /**
+     * Attaches an event log that records every buy, sell and price update from now on, so the
+     * portfolio can later be rebuilt as it was at any moment. The current state is written to
+     * the log as a checkpoint first. The caller remains responsible for closing the log.
+     *
+     * @param eventLog the log to record changes in, or {@code null} to stop recording
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+        writeCheckpoint();
+    }
+
+    /**
+     * Attaches an engine whose resting orders are checked on every price update. Orders crossed
+     * by a new price are filled at that price through {@link #buyInvestment} and
+     * {@link #sellInvestment}, so they are indexed and logged like any other trade.
+     *
+     * @param orderEngine the engine holding the orders, or {@code null} to stop filling orders
+     */
+    public void setOrderEngine(OrderEngine orderEngine) {
+        this.orderEngine = orderEngine;
+    }
+
+    /**
+     * Attaches an engine that is told the old and new price of every update to a held symbol,
+     * so it can notify its listeners of alerts whose band the price has left.
+     *
+     * @param alertEngine the engine holding the alerts, or {@code null} to stop checking alerts
+     */
+    public void setAlertEngine(AlertEngine alertEngine) {
+        this.alertEngine = alertEngine;
+    }
+
+    /**
+     * Attaches a publisher that is given an event for every buy, sell, price update and removal
+     * from now on, including the investments added by a load. Events are only built while the
+     * publisher has subscribers.
+     *
+     * @param eventPublisher the publisher to give events to, or {@code null} to stop publishing
+     */
+    public void setEventPublisher(PortfolioEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    private void publish(PortfolioEvent.Type type, Investment investment, int change, double price) {
+        if (eventPublisher != null && eventPublisher.hasSubscribers()) {
+            eventPublisher.publish(new PortfolioEvent(type, investment, change, price));
+        }
+    }
+
+    private void writeCheckpoint() {
+        if (eventLog == null) return;
+        try {
+            eventLog.checkpoint(this);
+        } catch (IOException e) {
+            console.println("Error writing to the event log.");
+        }
+    }
+
+    /**
+     * Replaces every investment with the given ones, in order, and rebuilds the indexes. Used to
+     * load a checkpoint or build a consolidated portfolio; nothing is recorded in the event log.
+     *
+     * @param restored the investments to hold
+     */
+    void restore(List<Investment> restored) {
+        for (Investment investment : investments) {
+            if (investment != null) {
+                publish(PortfolioEvent.Type.REMOVE, investment, investment.getQuantity(), investment.getPrice());
+            }
+        }
+        investments.clear();
+        pendingFile = null;
+        pendingRecords = null;
+        investments.addAll(restored);
+        updateKeywordIndex();
+        for (Investment investment : investments) {
+            publish(PortfolioEvent.Type.BUY, investment, investment.getQuantity(), investment.getPrice());
         }
     }
 
+    /**
+     * Replaces every investment with the given ones, in order, and rebuilds the indexes once.
+     * Like a load, the new state is written to the event log as a checkpoint. Used to load a
+     * consolidation of several portfolio files.
+     *
+     * @param replacement the investments to hold
+     */
+    void replaceInvestments(List<Investment> replacement) {
+        restore(replacement);
+        writeCheckpoint();
+    }
+
     /**
      * Updates the keyword index based on the current list of investments, allowing for efficient
      * search by keywords in the name of each investment.
      */
     private void updateKeywordIndex() {
+        investments.removeIf(Objects::isNull);
+        emptySlots = 0;
         keywordIndex.clear();
+        symbolIndex.clear();
+        nameCounts.clear();
+        symbolPrefixIndex.clear();
+        namePrefixIndex.clear();
         for (int i = 0; i < investments.size(); i++) {
-            String[] keywords = investments.get(i).getName().toLowerCase().split("\\s+");
-            for (String keyword : keywords) {
-                keywordIndex.computeIfAbsent(keyword, k -> new ArrayList<>()).add(i);
-            }
+            addKeywordsToIndex(investments.get(i), i);
         }
+        priceIndexDirty = true;
     }
 
     /**
      * Adds a new investment or updates an existing one in the portfolio. If both the name and symbol
-     * match, the quantity of the existing investment is increased.
+     * match the same investment, the quantity of that investment is increased. The symbol and name
+     * are looked up in the indexes, so buying does not scan the portfolio.
      *
      * @param type     the type of the investment (e.g., stock or mutual fund)
      * @param symbol   the symbol of the investment
@@ -111,30 +371,43 @@ public class Portfolio {
      * @param price    the price per unit
      */
     public void buyInvestment(String type, String symbol, String name, int quantity, double price) {
-        Investment existingInvestment = null;
-        boolean nameMatch = false, symbolMatch = false;
-
-        for (Investment inv : investments) {
-            if (inv.getSymbol().equalsIgnoreCase(symbol)) symbolMatch = true;
-            if (inv.getName().equalsIgnoreCase(name)) nameMatch = true;
-            if (symbolMatch && nameMatch) {
-                existingInvestment = inv;
-                break;
-            }
+        Investment symbolInvestment = findInvestment(symbol);
+        boolean symbolMatch = symbolInvestment != null;
+        int nameCode = SymbolDictionary.findLowercase(name);
+        Investment existingInvestment = symbolMatch && SymbolDictionary.lowercase(symbolInvestment.nameCode()) == nameCode ?
+                                        symbolInvestment : null;
+        if (existingInvestment == null) {
+            // A new name is checked against every name held, and takes the next position
+            buildPending();
         }
+        boolean nameMatch = nameCounts.get(nameCode) != IntIntMap.MISSING;
 
         if (existingInvestment != null) {
             existingInvestment.setQuantity(existingInvestment.getQuantity() + quantity);
             existingInvestment.updateBookValue(existingInvestment.getQuantity() * price);
-            System.out.println("Investment updated with additional quantity.");
+            console.println("Investment updated with additional quantity.");
+            recordBuy(type, symbol, name, quantity, price);
+            publish(PortfolioEvent.Type.BUY, existingInvestment, quantity, price);
         } else if (symbolMatch || nameMatch) {
-            System.out.println("Investment already exists with matching name or symbol. Returning to menu.");
+            console.println("Investment already exists with matching name or symbol. Returning to menu.");
         } else {
             Investment investment = type.equalsIgnoreCase("stock") ? 
                                     new Stock(symbol, name, quantity, price) : 
                                     new MutualFund(symbol, name, quantity, price);
             investments.add(investment);
             addKeywordsToIndex(investment, investments.size() - 1);
+            priceIndexDirty = true;
+            recordBuy(type, symbol, name, quantity, price);
+            publish(PortfolioEvent.Type.BUY, investment, quantity, price);
+        }
+    }
+
+    private void recordBuy(String type, String symbol, String name, int quantity, double price) {
+        if (eventLog == null) return;
+        try {
+            eventLog.recordBuy(this, type.equalsIgnoreCase("stock"), symbol, name, quantity, price);
+        } catch (IOException e) {
+            console.println("Error writing to the event log.");
         }
     }
 
@@ -159,16 +432,30 @@ public class Portfolio {
     
             investment.setQuantity(newQuantity);
             if (newQuantity == 0) {
-                int position = investments.indexOf(investment);
-                investments.remove(investment);
-                removeKeywordsFromIndex(position);
+                int position = symbolIndex.get(SymbolDictionary.lowercase(investment.symbolCode()));
+                investments.set(position, null);
+                removeFromPrefixIndexes(investment);
+                priceIndexDirty = true;
+                // Compacting once half the slots are empty gives each sale a constant share of the work
+                if (++emptySlots * 2 > investments.size()) {
+                    compact();
+                }
             }
     
+            if (eventLog != null) {
+                try {
+                    eventLog.recordSell(this, symbol, quantity, price);
+                } catch (IOException e) {
+                    console.println("Error writing to the event log.");
+                }
+            }
+            publish(newQuantity == 0 ? PortfolioEvent.Type.REMOVE : PortfolioEvent.Type.SELL, investment, quantity, price);
+
             // Print to the console (optional)
-            System.out.println("Proceeds from sale: " + proceeds);
+            console.println("Proceeds from sale: " + proceeds);
             return proceeds; // Return the proceeds to the caller
         } else {
-            System.out.println("Error: Investment not found or insufficient quantity.");
+            console.println("Error: Investment not found or insufficient quantity.");
             return 0.0; // Return 0.0 if there's an error
         }
     }
@@ -180,28 +467,96 @@ public class Portfolio {
      * @param position   the position of the investment in the list
      */
     private void addKeywordsToIndex(Investment investment, int position) {
-        String[] keywords = investment.getName().toLowerCase().split("\\s+");
+        int nameCode = SymbolDictionary.lowercase(investment.nameCode());
+        String[] keywords = SymbolDictionary.decode(nameCode).split("\\s+");
         for (String keyword : keywords) {
-            keywordIndex.computeIfAbsent(keyword, k -> new ArrayList<>()).add(position);
+            int keywordCode = SymbolDictionary.encode(keyword);
+            PostingList positions = keywordIndex.get(keywordCode);
+            if (positions == null) {
+                positions = new PostingList();
+                keywordIndex.put(keywordCode, positions);
+            }
+            // A name can repeat a word, but each position is only listed once
+            if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+                positions.add(position);
+            }
+        }
+        symbolIndex.put(SymbolDictionary.lowercase(investment.symbolCode()), position);
+        int count = nameCounts.get(nameCode);
+        nameCounts.put(nameCode, count == IntIntMap.MISSING ? 1 : count + 1);
+
+        // Keep the autocomplete indexes in step with the keyword index, sharing the dictionary's words
+        symbolPrefixIndex.add(investment.getSymbol());
+        for (String word : investment.getName().split("\\s+")) {
+            namePrefixIndex.add(SymbolDictionary.decode(SymbolDictionary.encode(word)));
         }
     }
 
     /**
-     * Removes keywords from the index associated with the investment being removed
-     * and adjusts indices of subsequent entries.
+     * Removes the symbol and name words of an investment from the autocomplete indexes, its
+     * symbol from the symbol index, and its name from the name counts used to detect duplicate names.
      *
-     * @param position the position of the investment in the list to remove from the index
+     * @param investment the investment being removed from the portfolio
      */
-    private void removeKeywordsFromIndex(int position) {
-        for (Map.Entry<String, ArrayList<Integer>> entry : keywordIndex.entrySet()) {
-            entry.getValue().removeIf(index -> index == position);
-            for (int i = 0; i < entry.getValue().size(); i++) {
-                if (entry.getValue().get(i) > position) {
-                    entry.getValue().set(i, entry.getValue().get(i) - 1);
-                }
+    private void removeFromPrefixIndexes(Investment investment) {
+        int nameCode = SymbolDictionary.lowercase(investment.nameCode());
+        int count = nameCounts.get(nameCode);
+        if (count > 1) {
+            nameCounts.put(nameCode, count - 1);
+        } else {
+            nameCounts.remove(nameCode);
+        }
+        symbolIndex.remove(SymbolDictionary.lowercase(investment.symbolCode()));
+        symbolPrefixIndex.remove(investment.getSymbol());
+        for (String word : investment.getName().split("\\s+")) {
+            namePrefixIndex.remove(word);
+        }
+    }
+
+    /**
+     * Removes the empty slots of sold-out investments from the list, keeping the order of the
+     * rest, and renumbers the keyword and symbol indexes to match. Each posting list is
+     * renumbered in a single pass, and lists left empty are dropped.
+     */
+    private void compact() {
+        buildPending();
+        int[] newPositions = new int[investments.size()];
+        int live = 0;
+        for (int i = 0; i < newPositions.length; i++) {
+            Investment investment = investments.get(i);
+            if (investment == null) {
+                newPositions[i] = -1;
+                continue;
             }
+            newPositions[i] = live;
+            if (live != i) {
+                investments.set(live, investment);
+                symbolIndex.put(SymbolDictionary.lowercase(investment.symbolCode()), live);
+            }
+            live++;
         }
-        keywordIndex.values().removeIf(List::isEmpty);
+        investments.subList(live, investments.size()).clear();
+        keywordIndex.forEachValue(positions -> positions.renumber(newPositions));
+        keywordIndex.removeValuesIf(PostingList::isEmpty);
+        emptySlots = 0;
+        priceIndexDirty = true;
+    }
+
+    /**
+     * Drops the positions of sold-out investments from a list built from the keyword index.
+     *
+     * @param positions the positions to filter
+     * @return the positions that still hold an investment
+     */
+    private PostingList withoutEmptySlots(PostingList positions) {
+        if (emptySlots == 0) return positions;
+        PostingList live = new PostingList();
+        for (int i = 0; i < positions.size(); i++) {
+            if (investments.get(positions.get(i)) != null) {
+                live.add(positions.get(i));
+            }
+        }
+        return live;
     }
 
     /**
@@ -211,12 +566,46 @@ public class Portfolio {
     public String updatePrices(String symbol, double price) {
         Investment investment = findInvestment(symbol);  // Assuming findInvestment searches in your portfolio
         if (investment != null) {
+            double oldPrice = investment.getPrice();
             investment.setPrice(price);  // Set the new price for the found investment
+            priceIndexDirty = true;
+            if (eventLog != null) {
+                try {
+                    eventLog.recordUpdate(this, symbol, price);
+                } catch (IOException e) {
+                    console.println("Error writing to the event log.");
+                }
+            }
+            publish(PortfolioEvent.Type.PRICE, investment, 0, price);
+            if (alertEngine != null) {
+                alertEngine.priceChanged(symbol, oldPrice, price);
+            }
+            fillOrders(symbol, price);
             return "Price updated for " + investment.getName() + " (" + symbol + ").";  // Return a success message
         } else {
+            // A buy order may be waiting for a symbol that is not held yet
+            fillOrders(symbol, price);
             return "Investment with symbol " + symbol + " not found.";  // Return an error message
         }
     }
+
+    /**
+     * Fills the resting orders that a new price has crossed, in the order the engine gives them.
+     *
+     * @param symbol the symbol whose price changed
+     * @param price  the new price, which every crossed order is filled at
+     */
+    private void fillOrders(String symbol, double price) {
+        if (orderEngine == null) return;
+        for (OrderEngine.Order order : orderEngine.crossed(symbol, price)) {
+            console.println(order + ", triggered at " + String.format("%.2f", price));
+            if (order.getType().isBuy()) {
+                buyInvestment(order.getInvestmentType(), order.getSymbol(), order.getName(), order.getQuantity(), price);
+            } else {
+                sellInvestment(order.getSymbol(), order.getQuantity(), price);
+            }
+        }
+    }
     
 
     /**
@@ -225,17 +614,62 @@ public class Portfolio {
      * @return the total gain of all investments
      */
     public double getTotalGains() {
+        buildPending();
         double totalGains = 0.0;
         for (Investment investment : investments) {
+            if (investment == null) continue;
             totalGains += investment.calculateGain();  // Calculate gain for each investment
         }
         return totalGains;
     }
 
+    /**
+     * Totals the market value, book value and gain of the investments by group, in parallel.
+     *
+     * @param grouping how to group the investments
+     * @return the totals of each group
+     */
+    public Rollup.Result rollup(Rollup grouping) {
+        return grouping.compute(getInvestments());
+    }
+
+    /**
+     * Gets the list of investments, compacting it first so every element is an investment.
+     *
+     * @return the investments in the portfolio
+     */
     public ArrayList<Investment> getInvestments() {
+        buildPending();
+        if (emptySlots > 0) {
+            compact();
+        }
         return investments;
     }
 
+    /**
+     * Returns symbols in the portfolio that start with the given prefix, for search-as-you-type.
+     *
+     * @param prefix the prefix typed so far (case-insensitive)
+     * @param limit  the maximum number of suggestions
+     * @return the matching symbols in alphabetical order, since each is held once
+     */
+    public List<String> suggestSymbols(String prefix, int limit) {
+        buildPending();
+        return symbolPrefixIndex.suggest(prefix, limit);
+    }
+
+    /**
+     * Returns words from investment names that start with the given prefix, for search-as-you-type.
+     *
+     * @param prefix the prefix typed so far (case-insensitive)
+     * @param limit  the maximum number of suggestions
+     * @return the matching name words, those in the most names first, then alphabetically
+     */
+    public List<String> suggestKeywords(String prefix, int limit) {
+        buildPending();
+        return namePrefixIndex.suggest(prefix, limit);
+    }
+
     
 
     /**
@@ -249,22 +683,26 @@ public class Portfolio {
      * @return 
      */
     public String search(String symbol, String keyword, double lowPrice, double highPrice) {
+        buildPending();
         Set<Integer> resultPositions = new HashSet<>();
         StringBuilder resultMessage = new StringBuilder();
     
         if (!keyword.isEmpty()) {
-            String normalizedKeyword = keyword.toLowerCase();
-            ArrayList<Integer> positions = keywordIndex.get(normalizedKeyword);
+            PostingList positions = keywordIndex.get(SymbolDictionary.findLowercase(keyword));
     
             if (positions != null) {
-                resultPositions.addAll(positions);
+                positions = withoutEmptySlots(positions);
+                for (int i = 0; i < positions.size(); i++) {
+                    resultPositions.add(positions.get(i));
+                }
             }
         }
     
         if (!symbol.isEmpty()) {
+            int symbolCode = SymbolDictionary.findLowercase(symbol);
             for (int i = 0; i < investments.size(); i++) {
                 Investment investment = investments.get(i);
-                if (investment.getSymbol().equalsIgnoreCase(symbol)) {
+                if (investment != null && SymbolDictionary.lowercase(investment.symbolCode()) == symbolCode) {
                     resultPositions.add(i);
                 }
             }
@@ -273,6 +711,7 @@ public class Portfolio {
         if (lowPrice >= 0 && highPrice > lowPrice) {
             for (int i = 0; i < investments.size(); i++) {
                 Investment investment = investments.get(i);
+                if (investment == null) continue;
                 double price = investment.getPrice();
                 if (price >= lowPrice && price <= highPrice) {
                     resultPositions.add(i);
@@ -283,13 +722,7 @@ public class Portfolio {
         // Format the results
         if (!resultPositions.isEmpty()) {
             for (int position : resultPositions) {
-                Investment investment = investments.get(position);
-                resultMessage.append(String.format("Name: %s\nSymbol: %s\nQuantity: %d\nPrice: %.2f\nBook Value: %.2f\n\n",
-                        investment.getName(),
-                        investment.getSymbol(),
-                        investment.getQuantity(),
-                        investment.getPrice(),
-                        investment.getBookValue()));
+                appendResult(resultMessage, investments.get(position));
             }
         } else {
             resultMessage.append("No investments found with the given criteria.");
@@ -297,6 +730,383 @@ public class Portfolio {
     
         return resultMessage.toString();
     }
+
+    /**
+     * Searches for investments matching a boolean query and formats them the same way as
+     * {@link #search(String, String, double, double)}.
+     *
+     * @param query the query to evaluate
+     * @return the formatted search results
+     */
+    public String search(BooleanQuery query) {
+        PostingList positions = find(query);
+        if (positions.isEmpty()) {
+            return "No investments found with the given criteria.";
+        }
+        StringBuilder resultMessage = new StringBuilder();
+        for (int i = 0; i < positions.size(); i++) {
+            appendResult(resultMessage, investments.get(positions.get(i)));
+        }
+        return resultMessage.toString();
+    }
+
+    /**
+     * Evaluates a boolean query against the indexes and returns the matching positions.
+     * Every keyword group, the symbol and the price range become a sorted posting list, and the
+     * lists are intersected starting from the shortest one. When the price range would match
+     * more investments than the shortest list, it is checked against the candidates instead of
+     * being materialized, so the cost follows the size of the result rather than the portfolio.
+     *
+     * @param query the query to evaluate
+     * @return the matching positions in ascending order
+     */
+    public PostingList find(BooleanQuery query) {
+        buildPending();
+        List<PostingList> required = new ArrayList<>();
+
+        for (List<String> group : query.getKeywordGroups()) {
+            List<PostingList> alternatives = new ArrayList<>();
+            for (String keyword : group) {
+                PostingList positions = keywordIndex.get(SymbolDictionary.find(keyword));
+                if (positions != null) {
+                    alternatives.add(positions);
+                }
+            }
+            if (alternatives.isEmpty()) return new PostingList();
+            required.add(alternatives.size() == 1 ? alternatives.get(0) : PostingList.union(alternatives));
+        }
+
+        if (!query.getSymbol().isEmpty()) {
+            int position = symbolIndex.get(SymbolDictionary.findLowercase(query.getSymbol()));
+            if (position == IntIntMap.MISSING) return new PostingList();
+            PostingList single = new PostingList();
+            single.add(position);
+            required.add(single);
+        }
+
+        // Only materialize the price range when it is the most selective criterion
+        boolean filterByPrice = false;
+        if (query.hasPriceRange()) {
+            int[] bounds = priceRangeBounds(query.getLowPrice(), query.getHighPrice());
+            int matches = bounds[1] - bounds[0];
+            if (matches == 0) return new PostingList();
+            int smallest = Integer.MAX_VALUE;
+            for (PostingList list : required) {
+                smallest = Math.min(smallest, list.size());
+            }
+            if (matches <= smallest) {
+                required.add(priceRangePositions(query.getLowPrice(), query.getHighPrice()));
+            } else {
+                filterByPrice = true;
+            }
+        }
+
+        PostingList result = withoutEmptySlots(required.isEmpty() ?
+                                               PostingList.range(investments.size()) :
+                                               PostingList.intersectAll(required));
+
+        if (filterByPrice) {
+            PostingList inRange = new PostingList();
+            for (int i = 0; i < result.size(); i++) {
+                double price = investments.get(result.get(i)).getPrice();
+                if (price >= query.getLowPrice() && price <= query.getHighPrice()) {
+                    inRange.add(result.get(i));
+                }
+            }
+            result = inRange;
+        }
+
+        for (String keyword : query.getExcludedKeywords()) {
+            PostingList positions = keywordIndex.get(SymbolDictionary.find(keyword));
+            if (positions != null && !result.isEmpty()) {
+                result = result.without(positions);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses and runs a screen written in the query language described in {@link QueryExpression}.
+     *
+     * @param queryText the query, for example {@code type:stock AND price 10..50 AND gain > 0}
+     * @return the matching positions in ascending order
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public PostingList screen(String queryText) {
+        return new QueryPlan(this, QueryExpression.parse(queryText)).execute();
+    }
+
+    /**
+     * Runs a screen and formats the matching investments the same way as the other searches.
+     *
+     * @param queryText the query to run
+     * @return the formatted results
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public String screenResults(String queryText) {
+        PostingList positions = screen(queryText);
+        if (positions.isEmpty()) {
+            return "No investments found with the given criteria.";
+        }
+        StringBuilder resultMessage = new StringBuilder();
+        for (int i = 0; i < positions.size(); i++) {
+            appendResult(resultMessage, investments.get(positions.get(i)));
+        }
+        return resultMessage.toString();
+    }
+
+    /**
+     * Describes how a screen would be evaluated: which indexes are used, in what order, and
+     * which predicates fall back to a column scan, with estimated row counts.
+     *
+     * @param queryText the query to explain
+     * @return the plan description
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public String explain(String queryText) {
+        return new QueryPlan(this, QueryExpression.parse(queryText)).explain();
+    }
+
+    /**
+     * Gets the investments at the given positions, for example the result of a search.
+     *
+     * @param positions the positions to look up
+     * @return the investments in the same order as the positions
+     */
+    public List<Investment> investmentsAt(PostingList positions) {
+        Investment[] result = new Investment[positions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = investmentAt(positions.get(i));
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Gets every position ordered by price, lowest first, using the price index.
+     *
+     * @return the positions sorted by price
+     */
+    public int[] positionsByPrice() {
+        if (priceIndexDirty) {
+            rebuildPriceIndex();
+        }
+        return priceOrder.clone();
+    }
+
+    /**
+     * Gets the number of investments in the portfolio. The list is compacted first, so every
+     * position from {@code 0} to {@code size() - 1} holds an investment.
+     *
+     * @return the number of investments
+     */
+    int size() {
+        if (emptySlots > 0) {
+            compact();
+        }
+        return investments.size();
+    }
+
+    /**
+     * Gets the investment at a position.
+     *
+     * @param position a position from a search, an index or {@link #size()}, taken since the
+     *                 portfolio last changed
+     * @return the investment at that position, built first if it is a pending record of a file
+     *         added by {@link #openInvestments(LazyPortfolioFile)}
+     */
+    Investment investmentAt(int position) {
+        if (pendingFile != null && position >= pendingBase && pendingRecords.get(position - pendingBase)) {
+            return buildRecord(position - pendingBase);
+        }
+        return investments.get(position);
+    }
+
+    /**
+     * Gets the posting list for a lowercase keyword from the keyword index.
+     *
+     * @param keyword the keyword to look up
+     * @return the positions whose names contain the keyword, or {@code null} if there are none
+     */
+    PostingList keywordPositions(String keyword) {
+        return keywordIndex.get(SymbolDictionary.find(keyword));
+    }
+
+    /**
+     * Gets the position of an investment from the symbol index.
+     *
+     * @param symbol the symbol to look up, in any case
+     * @return the position of the investment, or {@code -1} if there is none
+     */
+    int symbolPosition(String symbol) {
+        return symbolIndex.get(SymbolDictionary.findLowercase(symbol));
+    }
+
+    /**
+     * Estimates the heap retained by each data structure of the portfolio. The estimate walks
+     * every structure, so it takes time in proportion to the size of the portfolio.
+     *
+     * @return the footprint of each structure and the bytes per position
+     */
+    public FootprintReport footprint() {
+        buildPending();
+        int live = investments.size() - emptySlots;
+        FootprintReport report = new FootprintReport(live);
+
+        // ArrayList holds its size, modification count and array; its spare capacity is not visible
+        report.add(FootprintReport.INVESTMENT_LIST,
+                   FootprintReport.objectBytes(12) + FootprintReport.referenceArrayBytes(investments.size()));
+
+        // Two codes, quantity, price, book value, cache version and cache reference, plus the
+        // cached stamp, gain and market value once the gain has been asked for
+        report.add(FootprintReport.INVESTMENTS,
+                   live * (FootprintReport.objectBytes(4 + 4 + 4 + 8 + 8 + 4 + 4)
+                           + FootprintReport.objectBytes(8 + 8 + 8)));
+
+        long[] postings = new long[1];
+        keywordIndex.forEachValue(positions -> postings[0] += positions.retainedBytes());
+        report.add(FootprintReport.KEYWORD_INDEX, keywordIndex.retainedBytes() + postings[0]);
+        report.add(FootprintReport.SYMBOL_INDEX, symbolIndex.retainedBytes());
+        report.add(FootprintReport.NAME_COUNTS, nameCounts.retainedBytes());
+        report.add(FootprintReport.PREFIX_INDEXES, symbolPrefixIndex.retainedBytes() + namePrefixIndex.retainedBytes());
+        report.add(FootprintReport.PRICE_INDEX, FootprintReport.arrayBytes(sortedPrices.length, 8)
+                                                + FootprintReport.arrayBytes(priceOrder.length, 4));
+
+        // Every string this portfolio refers to: symbols, names, their lowercase keys, and name words
+        Set<Integer> codes = new HashSet<>();
+        for (Investment investment : investments) {
+            if (investment == null) continue;
+            codes.add(investment.symbolCode());
+            codes.add(investment.nameCode());
+            codes.add(SymbolDictionary.lowercase(investment.symbolCode()));
+            codes.add(SymbolDictionary.lowercase(investment.nameCode()));
+            for (String word : investment.getName().split("\\s+")) {
+                codes.add(SymbolDictionary.find(word));
+                codes.add(SymbolDictionary.findLowercase(word));
+            }
+        }
+        codes.remove(SymbolDictionary.NONE);
+        long strings = 0;
+        for (int code : codes) {
+            strings += SymbolDictionary.retainedBytes(code);
+        }
+        report.add(FootprintReport.STRINGS, strings);
+        return report;
+    }
+
+    /**
+     * Gets the total number of slots in the keyword, symbol and name indexes, for estimating
+     * their memory use.
+     *
+     * @return the number of slots
+     */
+    int indexSlots() {
+        return keywordIndex.capacity() + symbolIndex.capacity() + nameCounts.capacity();
+    }
+
+    /**
+     * Counts the investments whose price is within the given range using the price index.
+     *
+     * @param lowPrice  the minimum price, inclusive
+     * @param highPrice the maximum price, inclusive
+     * @return the number of matching investments
+     */
+    int countPriceRange(double lowPrice, double highPrice) {
+        int[] bounds = priceRangeBounds(lowPrice, highPrice);
+        return bounds[1] - bounds[0];
+    }
+
+    /**
+     * Gets the positions of the investments whose price is within the given range.
+     *
+     * @param lowPrice  the minimum price, inclusive
+     * @param highPrice the maximum price, inclusive
+     * @return the matching positions in ascending order
+     */
+    PostingList priceRangePositions(double lowPrice, double highPrice) {
+        int[] bounds = priceRangeBounds(lowPrice, highPrice);
+        int[] positions = Arrays.copyOfRange(priceOrder, bounds[0], bounds[1]);
+        Arrays.sort(positions);
+        return new PostingList(positions, positions.length);
+    }
+
+    /**
+     * Finds the slice of the price index whose prices fall within the given range, rebuilding
+     * the index first if any price or position has changed since it was last built.
+     *
+     * @param lowPrice  the minimum price, inclusive
+     * @param highPrice the maximum price, inclusive
+     * @return the start (inclusive) and end (exclusive) of the slice in {@code priceOrder}
+     */
+    private int[] priceRangeBounds(double lowPrice, double highPrice) {
+        if (priceIndexDirty) {
+            rebuildPriceIndex();
+        }
+        int start = lowerBound(sortedPrices, lowPrice);
+        int end = start;
+        if (highPrice >= lowPrice) {
+            end = lowerBound(sortedPrices, Math.nextUp(highPrice));
+        }
+        return new int[]{start, end};
+    }
+
+    /**
+     * Finds the first index whose price is not less than the given value.
+     *
+     * @param prices the sorted prices
+     * @param value  the value to look for
+     * @return the first index at or above the value, or {@code prices.length}
+     */
+    private static int lowerBound(double[] prices, double value) {
+        int low = 0, high = prices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Rebuilds the price index by sorting every position by its current price.
+     */
+    private void rebuildPriceIndex() {
+        buildPending();
+        int n = investments.size() - emptySlots;
+        double[] prices = new double[investments.size()];
+        int[] order = new int[n];
+        for (int i = 0, next = 0; i < prices.length; i++) {
+            Investment investment = investments.get(i);
+            if (investment == null) continue;
+            prices[i] = investment.getPrice();
+            order[next++] = i;
+        }
+        IndexSort.sortByKey(order, prices);
+
+        sortedPrices = new double[n];
+        for (int i = 0; i < n; i++) {
+            sortedPrices[i] = prices[order[i]];
+        }
+        priceOrder = order;
+        priceIndexDirty = false;
+    }
+
+    /**
+     * Appends the details of an investment to a search result message.
+     *
+     * @param resultMessage the message being built
+     * @param investment    the investment to describe
+     */
+    private void appendResult(StringBuilder resultMessage, Investment investment) {
+        resultMessage.append(String.format("Name: %s\nSymbol: %s\nQuantity: %d\nPrice: %.2f\nBook Value: %.2f\n\n",
+                investment.getName(),
+                investment.getSymbol(),
+                investment.getQuantity(),
+                investment.getPrice(),
+                investment.getBookValue()));
+    }
     
 
     /**
@@ -306,12 +1116,11 @@ public class Portfolio {
      * @return the matching investment, or {@code null} if not found
      */
     private Investment findInvestment(String symbol) {
-        for (Investment investment : investments) {
-            if (investment.getSymbol().equalsIgnoreCase(symbol)) {
-                return investment;
-            }
-        }
-        return null;
+        int position = symbolIndex.get(SymbolDictionary.findLowercase(symbol));
+        if (position != IntIntMap.MISSING) return investments.get(position);
+        if (pendingFile == null) return null;
+        int record = pendingFile.find(symbol);
+        return record >= 0 && pendingRecords.get(record) ? buildRecord(record) : null;
     }
 
     
@@ -0,0 +1,158 @@
+package ePortfolio;
+
+/**
+ * The {@code PortfolioEvent} class describes one change to a {@link Portfolio}, as published by
+ * a {@link PortfolioEventPublisher}. Besides what changed, every event carries the state of the
+ * investment right after the change, so a subscriber that missed earlier events for a symbol
+ * can still bring its view of that symbol up to date.
+ */
+public class PortfolioEvent {
+    /**
+     * The kinds of change.
+     */
+    public enum Type {
+        /** Units were bought, opening a new investment or adding to one. */
+        BUY,
+        /** Units were sold and some are still held. */
+        SELL,
+        /** The price of an investment was updated. */
+        PRICE,
+        /** The last units were sold and the investment left the portfolio. */
+        REMOVE
+    }
+
+    private final Type type;
+    private final int symbolCode;
+    private final int nameCode;
+    private final boolean stock;
+    private final int change;
+    private final int quantity;
+    private final double price;
+    private final double bookValue;
+    private final double gain;
+
+    /**
+     * Constructs an event from the state of an investment right after it changed.
+     *
+     * @param type       the kind of change
+     * @param investment the investment that changed
+     * @param change     the number of units bought or sold, or zero for a price update
+     * @param price      the price of the trade or the new price
+     */
+    PortfolioEvent(Type type, Investment investment, int change, double price) {
+        this.type = type;
+        this.symbolCode = investment.symbolCode();
+        this.nameCode = investment.nameCode();
+        this.stock = investment instanceof Stock;
+        this.change = change;
+        this.quantity = investment.getQuantity();
+        this.price = price;
+        this.bookValue = investment.getBookValue();
+        this.gain = investment.calculateGain();
+    }
+
+    /**
+     * Gets the kind of change.
+     *
+     * @return the event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the symbol of the investment that changed.
+     *
+     * @return the symbol
+     */
+    public String getSymbol() {
+        return SymbolDictionary.decode(symbolCode);
+    }
+
+    /**
+     * Gets the name of the investment that changed.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return SymbolDictionary.decode(nameCode);
+    }
+
+    /**
+     * Checks whether the investment is a stock rather than a mutual fund.
+     *
+     * @return {@code true} for a stock
+     */
+    public boolean isStock() {
+        return stock;
+    }
+
+    /**
+     * Gets the number of units bought or sold.
+     *
+     * @return the units traded, or zero for a price update
+     */
+    public int getChange() {
+        return change;
+    }
+
+    /**
+     * Gets the number of units held after the change.
+     *
+     * @return the quantity held, zero once the investment is removed
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Gets the price of the trade, or the new price of a price update.
+     *
+     * @return the price
+     */
+    public double getPrice() {
+        return price;
+    }
+
+    /**
+     * Gets the book value after the change.
+     *
+     * @return the book value
+     */
+    public double getBookValue() {
+        return bookValue;
+    }
+
+    /**
+     * Gets the gain after the change.
+     *
+     * @return the gain
+     */
+    public double getGain() {
+        return gain;
+    }
+
+    /**
+     * Checks whether this event added a symbol to the portfolio.
+     *
+     * @return {@code true} for a buy that opened a new investment
+     */
+    public boolean opensPosition() {
+        return type == Type.BUY && quantity == change;
+    }
+
+    /**
+     * Gets the dictionary code of the lowercase symbol, used to conflate events by symbol.
+     *
+     * @return the symbol key
+     */
+    int symbolKey() {
+        return SymbolDictionary.lowercase(symbolCode);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: change %d, quantity %d, price %.2f, book value %.2f",
+                             type, getSymbol(), change, quantity, price, bookValue);
+    }
+}
@@ -0,0 +1,338 @@
+package ePortfolio;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code PortfolioEventPublisher} class publishes the changes made to a {@link Portfolio}
+ * as a {@link Flow.Publisher} of {@link PortfolioEvent}s, so GUI panels, persistence and
+ * metrics can react to buys, sells, price updates and removals instead of polling the portfolio.
+ *
+ * <p>Each subscriber has its own bounded buffer and is called on an executor thread, never on
+ * the thread that changed the portfolio. Publishing only appends to the buffers under a lock that
+ * is never held while a subscriber runs, so a slow subscriber never blocks the portfolio. When a
+ * buffer is full, the subscriber's {@link Overflow} policy decides what is lost. Events that are
+ * lost are counted in {@link #getDroppedCount()} and {@link #getConflatedCount()}.</p>
+ *
+ * <p>Subscribers receive events in the order they were published, as far as their demand and
+ * policy allow, and each subscriber is called by one thread at a time. Closing the publisher
+ * completes every subscriber once its buffer has been delivered.</p>
+ */
+public class PortfolioEventPublisher implements Flow.Publisher<PortfolioEvent>, Closeable {
+    /**
+     * The buffer size used by {@link #subscribe(Flow.Subscriber)}.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * What happens to events published while a subscriber's buffer is full.
+     */
+    public enum Overflow {
+        /** The oldest waiting event is discarded to make room. */
+        DROP_OLDEST,
+        /** The new event is discarded. */
+        DROP_NEWEST,
+        /**
+         * A price update replaces any price update for the same symbol that is still waiting,
+         * keeping its place in the queue, so a subscriber that falls behind sees the latest price
+         * of each symbol instead of every tick. A price update is never moved ahead of a buy,
+         * sell or removal of the same symbol published after the one it replaces, so the last
+         * price a subscriber sees is the latest. Buys, sells and removals are never replaced; if
+         * the buffer is still full, the oldest waiting event is discarded.
+         */
+        CONFLATE
+    }
+
+    private final Executor executor;
+    private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Constructs a publisher that calls subscribers on its own daemon threads.
+     */
+    public PortfolioEventPublisher() {
+        this(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "portfolio-events");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Constructs a publisher that calls subscribers on the given executor.
+     *
+     * @param executor runs the delivery to each subscriber
+     */
+    public PortfolioEventPublisher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribes with a buffer of {@link #DEFAULT_BUFFER_SIZE} events that conflates price updates.
+     *
+     * @param subscriber the subscriber to add
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super PortfolioEvent> subscriber) {
+        subscribe(subscriber, DEFAULT_BUFFER_SIZE, Overflow.CONFLATE);
+    }
+
+    /**
+     * Subscribes with the given buffer size and overflow policy.
+     *
+     * @param subscriber the subscriber to add
+     * @param bufferSize the most events that may wait for the subscriber
+     * @param overflow   what to do with events published while the buffer is full
+     * @throws IllegalArgumentException if the buffer size is not positive
+     */
+    public void subscribe(Flow.Subscriber<? super PortfolioEvent> subscriber, int bufferSize, Overflow overflow) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        EventSubscription subscription = new EventSubscription(subscriber, bufferSize, overflow);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Checks whether anyone is subscribed, so the portfolio can skip building events nobody reads.
+     *
+     * @return {@code true} if there is at least one subscriber
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Gets the number of events discarded because a buffer was full.
+     *
+     * @return the number of dropped events across all subscribers
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of price updates replaced by a later one before they were delivered.
+     *
+     * @return the number of conflated events across all subscribers
+     */
+    public long getConflatedCount() {
+        return conflated.sum();
+    }
+
+    /**
+     * Offers an event to every subscriber. Never waits for a subscriber.
+     *
+     * @param event the event to publish
+     */
+    void publish(PortfolioEvent event) {
+        if (closed) return;
+        for (EventSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Stops publishing and completes every subscriber after its waiting events are delivered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (EventSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * A waiting price update that a later one for the same symbol can replace in place.
+     */
+    private static class Slot {
+        PortfolioEvent event;
+
+        Slot(PortfolioEvent event) {
+            this.event = event;
+        }
+    }
+
+    /**
+     * The buffer, demand and delivery state of one subscriber.
+     */
+    private class EventSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super PortfolioEvent> subscriber;
+        private final int bufferSize;
+        private final Overflow overflow;
+
+        // Guarded by this; holds events, or slots for price updates that may still be conflated
+        private final ArrayDeque<Object> buffer = new ArrayDeque<>();
+        private final IntMap<Slot> waitingPrices = new IntMap<>();
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private volatile Throwable error;
+        private boolean terminated;
+
+        EventSubscription(Flow.Subscriber<? super PortfolioEvent> subscriber, int bufferSize, Overflow overflow) {
+            this.subscriber = subscriber;
+            this.bufferSize = bufferSize;
+            this.overflow = overflow;
+        }
+
+        void offer(PortfolioEvent event) {
+            if (cancelled) return;
+            synchronized (this) {
+                if (overflow == Overflow.CONFLATE && event.getType() == PortfolioEvent.Type.PRICE) {
+                    Slot waiting = waitingPrices.get(event.symbolKey());
+                    if (waiting != null) {
+                        waiting.event = event;
+                        conflated.increment();
+                        return;
+                    }
+                }
+                if (buffer.size() == bufferSize) {
+                    if (overflow == Overflow.DROP_NEWEST) {
+                        dropped.increment();
+                        return;
+                    }
+                    forget(buffer.poll());
+                    dropped.increment();
+                }
+                if (overflow == Overflow.CONFLATE && event.getType() == PortfolioEvent.Type.PRICE) {
+                    Slot slot = new Slot(event);
+                    waitingPrices.put(event.symbolKey(), slot);
+                    buffer.add(slot);
+                } else {
+                    if (overflow == Overflow.CONFLATE) {
+                        // A later price must queue behind this event rather than jump ahead of it
+                        waitingPrices.remove(event.symbolKey());
+                    }
+                    buffer.add(event);
+                }
+            }
+            if (requested.get() > 0) {
+                schedule();
+            }
+        }
+
+        void complete() {
+            completed = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // Signalled from the delivery loop, so it cannot overlap a call to onNext
+                error = new IllegalArgumentException("Demand must be positive: " + n);
+                schedule();
+                return;
+            }
+            long current, next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            synchronized (this) {
+                buffer.clear();
+                waitingPrices.clear();
+            }
+        }
+
+        /**
+         * Starts a delivery unless one is already running, in which case it will loop again.
+         */
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this::deliver);
+            }
+        }
+
+        /**
+         * Delivers waiting events up to the current demand, on an executor thread.
+         */
+        private void deliver() {
+            int missed = 1;
+            while (true) {
+                if (error != null && !terminated) {
+                    terminated = true;
+                    cancel();
+                    subscriber.onError(error);
+                }
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted < demand && !cancelled) {
+                    PortfolioEvent event = poll();
+                    if (event == null) break;
+                    try {
+                        subscriber.onNext(event);
+                    } catch (RuntimeException e) {
+                        // A subscriber that throws is cancelled, as the Flow rules require
+                        terminated = true;
+                        cancel();
+                        subscriber.onError(e);
+                        break;
+                    }
+                    emitted++;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                if (completed && !cancelled && !terminated && isEmpty()) {
+                    terminated = true;
+                    subscriptions.remove(this);
+                    subscriber.onComplete();
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        private synchronized PortfolioEvent poll() {
+            Object next = buffer.poll();
+            if (next instanceof Slot) {
+                forget(next);
+                return ((Slot) next).event;
+            }
+            return (PortfolioEvent) next;
+        }
+
+        private synchronized boolean isEmpty() {
+            return buffer.isEmpty();
+        }
+
+        /**
+         * Stops a price slot that is leaving the buffer from being conflated into, unless a later
+         * slot has already taken its place.
+         */
+        private void forget(Object removed) {
+            if (removed instanceof Slot) {
+                int key = ((Slot) removed).event.symbolKey();
+                if (waitingPrices.get(key) == removed) {
+                    waitingPrices.remove(key);
+                }
+            }
+        }
+    }
+}
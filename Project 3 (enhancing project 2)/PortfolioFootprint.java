@@ -0,0 +1,137 @@
+package ePortfolio;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The {@code PortfolioFootprint} class publishes the estimated heap footprint of a portfolio as
+ * a standard MBean, so it can be watched with JConsole or any other JMX client.
+ *
+ * <p>A portfolio may only be used from the thread that owns it, while JMX reads attributes on
+ * its own threads. The MBean is therefore given a source that produces a
+ * {@link FootprintReport} on the owning thread, for example by handing
+ * {@link Portfolio#footprint()} to the GUI's {@link PortfolioWorker}, and waits for it.</p>
+ */
+public class PortfolioFootprint implements PortfolioFootprintMBean {
+    /**
+     * The name the MBean is registered under.
+     */
+    public static final String OBJECT_NAME = "ePortfolio:type=PortfolioFootprint";
+
+    private final Callable<FootprintReport> source;
+    private volatile double budget;
+
+    /**
+     * Constructs an MBean that reads reports from the given source.
+     *
+     * @param source produces a fresh report each time it is called
+     */
+    public PortfolioFootprint(Callable<FootprintReport> source) {
+        this.source = source;
+    }
+
+    /**
+     * Registers an MBean for the given source with the platform MBean server, replacing any
+     * footprint MBean registered before.
+     *
+     * @param source produces a fresh report each time it is called
+     * @return the registered MBean
+     * @throws IllegalStateException if it cannot be registered
+     */
+    public static PortfolioFootprint register(Callable<FootprintReport> source) {
+        PortfolioFootprint footprint = new PortfolioFootprint(source);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(footprint, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register the footprint MBean", e);
+        }
+        return footprint;
+    }
+
+    private FootprintReport report() {
+        try {
+            return source.call();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to measure the portfolio footprint", e);
+        }
+    }
+
+    @Override
+    public int getPositions() {
+        return report().getPositions();
+    }
+
+    @Override
+    public long getTotalBytes() {
+        return report().getTotalBytes();
+    }
+
+    @Override
+    public double getBytesPerPosition() {
+        return report().getBytesPerPosition();
+    }
+
+    @Override
+    public long getInvestmentListBytes() {
+        return report().getBytes(FootprintReport.INVESTMENT_LIST);
+    }
+
+    @Override
+    public long getInvestmentBytes() {
+        return report().getBytes(FootprintReport.INVESTMENTS);
+    }
+
+    @Override
+    public long getIndexBytes() {
+        FootprintReport report = report();
+        return report.getBytes(FootprintReport.KEYWORD_INDEX) + report.getBytes(FootprintReport.SYMBOL_INDEX)
+               + report.getBytes(FootprintReport.NAME_COUNTS);
+    }
+
+    @Override
+    public long getPrefixIndexBytes() {
+        return report().getBytes(FootprintReport.PREFIX_INDEXES);
+    }
+
+    @Override
+    public long getPriceIndexBytes() {
+        return report().getBytes(FootprintReport.PRICE_INDEX);
+    }
+
+    @Override
+    public long getStringBytes() {
+        return report().getBytes(FootprintReport.STRINGS);
+    }
+
+    @Override
+    public String getReport() {
+        return report().toString();
+    }
+
+    @Override
+    public double getBudgetBytesPerPosition() {
+        return budget;
+    }
+
+    @Override
+    public void setBudgetBytesPerPosition(double budget) {
+        if (!(budget >= 0)) {
+            throw new IllegalArgumentException("The budget must not be negative: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    @Override
+    public boolean isWithinBudget() {
+        double limit = budget;
+        return limit == 0 || report().isWithinBudget(limit);
+    }
+}
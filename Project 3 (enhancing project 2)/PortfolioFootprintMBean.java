@@ -0,0 +1,99 @@
+package ePortfolio;
+
+/**
+ * The management interface of {@link PortfolioFootprint}, which publishes the estimated heap
+ * footprint of a portfolio over JMX. Every read takes a fresh estimate.
+ */
+public interface PortfolioFootprintMBean {
+    /**
+     * Gets the number of positions in the portfolio.
+     *
+     * @return the number of investments
+     */
+    int getPositions();
+
+    /**
+     * Gets the estimated bytes of all the portfolio's structures together.
+     *
+     * @return the total estimated bytes
+     */
+    long getTotalBytes();
+
+    /**
+     * Gets the estimated total bytes divided by the number of positions.
+     *
+     * @return the bytes per position
+     */
+    double getBytesPerPosition();
+
+    /**
+     * Gets the estimated bytes of the investment list.
+     *
+     * @return the estimated bytes
+     */
+    long getInvestmentListBytes();
+
+    /**
+     * Gets the estimated bytes of the investment objects.
+     *
+     * @return the estimated bytes
+     */
+    long getInvestmentBytes();
+
+    /**
+     * Gets the estimated bytes of the keyword, symbol and name indexes.
+     *
+     * @return the estimated bytes
+     */
+    long getIndexBytes();
+
+    /**
+     * Gets the estimated bytes of the autocomplete tries.
+     *
+     * @return the estimated bytes
+     */
+    long getPrefixIndexBytes();
+
+    /**
+     * Gets the estimated bytes of the price index.
+     *
+     * @return the estimated bytes
+     */
+    long getPriceIndexBytes();
+
+    /**
+     * Gets the estimated bytes of the strings the portfolio uses, which are shared with other
+     * portfolios through the symbol dictionary.
+     *
+     * @return the estimated bytes
+     */
+    long getStringBytes();
+
+    /**
+     * Gets the full report, one structure per line.
+     *
+     * @return the formatted report
+     */
+    String getReport();
+
+    /**
+     * Gets the budget in bytes per position, or zero if there is none.
+     *
+     * @return the budget
+     */
+    double getBudgetBytesPerPosition();
+
+    /**
+     * Sets the budget in bytes per position that {@link #isWithinBudget()} checks.
+     *
+     * @param budget the budget, or zero for none
+     */
+    void setBudgetBytesPerPosition(double budget);
+
+    /**
+     * Checks the footprint against the budget.
+     *
+     * @return {@code true} if there is no budget or the bytes per position are within it
+     */
+    boolean isWithinBudget();
+}
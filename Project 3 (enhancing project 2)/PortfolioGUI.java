@@ -2,11 +2,21 @@ package ePortfolio;
 
 import javax.swing.*;
 import javax.swing.border.Border;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class represents the main graphical user interface (GUI) for the ePortfolio application.
@@ -14,9 +24,27 @@ import java.util.List;
  * It also handles displaying a welcome message to the user and setting up the layout of the application.
  */
 public class PortfolioGUI extends JFrame {
+    /**
+     * Event handlers that keep the event dispatch thread busy longer than this are logged.
+     */
+    private static final long EDT_STALL_THRESHOLD_MS = 100;
+
+    /**
+     * Menu switches that take longer than this to show their view are logged as warnings.
+     */
+    private static final long MENU_SWITCH_THRESHOLD_MS = 50;
+
+    private static final Logger LOGGER = Logger.getLogger(PortfolioGUI.class.getName());
+
     private Portfolio portfolio;
+    private PortfolioWorker worker;
+    private PriceTicker ticker;
+    private PortfolioEventPublisher events;
+    private TableFeed tableFeed;
     private JPanel topPanel;
     private JPanel contentPanel;
+    private CardLayout cards;
+    private JProgressBar progressBar;
 
     // Declare text fields for user input
     private JTextField typeField;
@@ -37,6 +65,28 @@ public class PortfolioGUI extends JFrame {
         super();  // Call the parent constructor for JFrame
         portfolio = new Portfolio();  // Initialize the portfolio
 
+        // All portfolio operations run on the worker thread; the event dispatch thread is watched for stalls
+        worker = new PortfolioWorker();
+        EdtWatchdog.install(EDT_STALL_THRESHOLD_MS);
+
+        // Publish the heap footprint over JMX; the MBean server starts on the worker, not at startup
+        worker.call(() -> PortfolioFootprint.register(() -> worker.call(portfolio::footprint).get()));
+
+        // The ticker accepts prices from any thread and repaints at a capped frame rate
+        ticker = new PriceTicker();
+
+        // Portfolio changes reach the ticker as events, whichever window or batch made them
+        events = new PortfolioEventPublisher();
+        events.subscribe(new TickerFeed(), PortfolioEventPublisher.DEFAULT_BUFFER_SIZE,
+                         PortfolioEventPublisher.Overflow.CONFLATE);
+        tableFeed = new TableFeed();
+        events.subscribe(tableFeed, PortfolioEventPublisher.DEFAULT_BUFFER_SIZE,
+                         PortfolioEventPublisher.Overflow.CONFLATE);
+        worker.call(() -> {
+            portfolio.setEventPublisher(events);
+            return null;
+        });
+
         // Initialize the text fields for user input
         typeField = new JTextField();
         symbolField = new JTextField();
@@ -85,6 +135,8 @@ public class PortfolioGUI extends JFrame {
         JMenuItem updateItem = new JMenuItem("Update");
         JMenuItem getGainsItem = new JMenuItem("Get Gains");
         JMenuItem searchItem = new JMenuItem("Search");
+        JMenuItem tickerItem = new JMenuItem("Ticker");
+        JMenuItem openItem = new JMenuItem("Open");
         JMenuItem quitItem = new JMenuItem("Quit");
 
         // Add action listeners for each menu item
@@ -93,6 +145,8 @@ public class PortfolioGUI extends JFrame {
         updateItem.addActionListener(new UpdateWindow());
         getGainsItem.addActionListener(new GetGainsWindow());
         searchItem.addActionListener(new SearchWindow());
+        tickerItem.addActionListener(new TickerWindow());
+        openItem.addActionListener(new OpenWindow());
         quitItem.addActionListener(new QuitWindow());
 
         // Add menu items to the context menu
@@ -101,6 +155,8 @@ public class PortfolioGUI extends JFrame {
         commandsMenu.add(updateItem);
         commandsMenu.add(getGainsItem);
         commandsMenu.add(searchItem);
+        commandsMenu.add(tickerItem);
+        commandsMenu.add(openItem);
         commandsMenu.add(quitItem);
 
         // Add action listener to the "Commands" button to display the menu
@@ -119,12 +175,30 @@ public class PortfolioGUI extends JFrame {
         topPanel.add(commandsPanel);
 
         // Set up the content panel where the main content will be displayed
-        contentPanel = new JPanel();
-        contentPanel.setLayout(new BorderLayout());
+        // Each view is a card, built the first time it is shown and reused after that
+        cards = new CardLayout();
+        contentPanel = new JPanel(cards);
+
+        // Set up the progress bar that shows when the worker is busy
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Ready");
+        worker.setBusyListener(busy -> {
+            progressBar.setIndeterminate(busy);
+            progressBar.setValue(0);
+            progressBar.setString(busy ? "Working..." : "Ready");
+        });
+        worker.setProgressListener(percent -> {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue(percent);
+        });
+        worker.setErrorHandler(error -> JOptionPane.showMessageDialog(this,
+                "Error: " + error.getMessage(), "ePortfolio", JOptionPane.ERROR_MESSAGE));
 
-        // Add the top panel and content panel to the frame
+        // Add the top panel, content panel and progress bar to the frame
         add(topPanel, BorderLayout.NORTH);
         add(contentPanel, BorderLayout.CENTER);
+        add(progressBar, BorderLayout.SOUTH);
 
         // Display the welcome message to the user
         displayWelcomeMessage();
@@ -153,24 +227,68 @@ public class PortfolioGUI extends JFrame {
         welcomeMessage.setFont(new Font("Arial", Font.BOLD, 16));
         welcomeMessage.setForeground(Color.GRAY);
 
-        // Clear the content panel and add the welcome message
-        contentPanel.removeAll();
-        contentPanel.add(welcomeMessage, BorderLayout.CENTER);
-        revalidate();  // Revalidate the layout to reflect changes
-        repaint();  // Repaint the panel to show the updated content
+        // The welcome message is the first card of the content panel
+        contentPanel.add(welcomeMessage, "welcome");
+        cards.show(contentPanel, "welcome");
+    }
+
+    /**
+     * Shows a view in the content panel, adding it as a card the first time, and checks how long
+     * the menu switch took. The time is taken once the view has been laid out and painted, since
+     * the repaint queued by the switch runs before the check. Switches slower than
+     * {@link #MENU_SWITCH_THRESHOLD_MS} are logged as warnings and the others at a fine level.
+     *
+     * @param name    the card name of the view
+     * @param view    the view to show
+     * @param started when the menu action started, from {@link System#nanoTime()}
+     */
+    private void showView(String name, JComponent view, long started) {
+        if (view.getParent() != contentPanel) {
+            contentPanel.add(view, name);
+        }
+        cards.show(contentPanel, name);
+        SwingUtilities.invokeLater(() -> {
+            long elapsedMicros = (System.nanoTime() - started) / 1_000L;
+            if (elapsedMicros > MENU_SWITCH_THRESHOLD_MS * 1_000L) {
+                LOGGER.warning(String.format("Switching to the %s view took %.1f ms", name, elapsedMicros / 1000.0));
+            } else {
+                LOGGER.fine(String.format("Switching to the %s view took %.1f ms", name, elapsedMicros / 1000.0));
+            }
+        });
     }
 
     private class BuyWindow implements ActionListener {
+        // Built the first time the view is shown and kept in the card layout after that
+        private JPanel mainPanel;
+        private JComboBox<String> typeComboBox;
+        private JTextField symbolField;
+        private JTextField nameField;
+        private JTextField quantityField;
+        private JTextField priceField;
+        private JTextArea messageArea;
 
         /**
          * This method is triggered when the "Buy" button is clicked.
-         * It displays a form for purchasing an investment, validates user input,
-         * and attempts to purchase the investment by adding it to the portfolio.
+         * It shows the form for purchasing an investment, building it the first time,
+         * with the fields and messages left from the last time cleared.
          */
         public void actionPerformed(ActionEvent e) {
-            // Create the main panel for the "Buy Investment" form
-            JPanel buyPanel = new JPanel(new BorderLayout());
-    
+            long started = System.nanoTime();
+            if (mainPanel == null) {
+                mainPanel = buildPanel();
+            }
+            clearFields();
+            messageArea.setText("");
+            showView("buy", mainPanel, started);
+        }
+
+        /**
+         * Builds the form and its listeners, which validate user input and
+         * attempt to purchase the investment by adding it to the portfolio.
+         *
+         * @return the panel holding the form
+         */
+        private JPanel buildPanel() {
             // Create and configure the header for the panel
             JLabel headerLabel = new JLabel("Buying an Investment");
             headerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -182,11 +300,11 @@ public class PortfolioGUI extends JFrame {
             JPanel inputPanel = new JPanel(new GridLayout(5, 2, 5, 5));
             inputPanel.setBorder(BorderFactory.createEmptyBorder(0, 20, 0, 0));
     
-            JComboBox<String> typeComboBox = new JComboBox<>(new String[]{"stock", "mutual fund"});
-            JTextField symbolField = new JTextField(10);
-            JTextField nameField = new JTextField(10);
-            JTextField quantityField = new JTextField(10);
-            JTextField priceField = new JTextField(10);
+            typeComboBox = new JComboBox<>(new String[]{"stock", "mutual fund"});
+            symbolField = new JTextField(10);
+            nameField = new JTextField(10);
+            quantityField = new JTextField(10);
+            priceField = new JTextField(10);
     
             // Add labels and fields to the input panel
             inputPanel.add(new JLabel("Type:"));
@@ -201,7 +319,7 @@ public class PortfolioGUI extends JFrame {
             inputPanel.add(priceField);
     
             // Create a message area to display status messages (e.g., success or error messages)
-            JTextArea messageArea = new JTextArea(5, 20);
+            messageArea = new JTextArea(5, 20);
             messageArea.setWrapStyleWord(true);
             messageArea.setLineWrap(true);
             messageArea.setEditable(false);
@@ -259,12 +377,6 @@ public class PortfolioGUI extends JFrame {
             mainPanel.add(buttonPanel, BorderLayout.EAST);
             mainPanel.add(messagePanel, BorderLayout.SOUTH);
     
-            // Update the content panel to display the "Buy Investment" form
-            contentPanel.removeAll();
-            contentPanel.add(mainPanel, BorderLayout.CENTER);
-            revalidate();
-            repaint();
-    
             /**
              * Action listener for the "Buy" button.
              * It validates the input fields, creates an investment object,
@@ -295,17 +407,11 @@ public class PortfolioGUI extends JFrame {
                         return;
                     }
     
-                    // Create an investment object based on the selected type (stock or mutual fund)
-                    Investment investment = null;
-                    if (type.equalsIgnoreCase("stock")) {
-                        investment = new Stock(symbol, name, quantity, price);
-                    } else if (type.equalsIgnoreCase("mutual fund")) {
-                        investment = new MutualFund(symbol, name, quantity, price);
-                    }
-    
-                    // Add the investment to the portfolio
-                    portfolio.buyInvestment(type, symbol, name, quantity, price);
-                    messageArea.append("Investment bought successfully. \n");
+                    // Add the investment to the portfolio on the worker thread
+                    final int boughtQuantity = quantity;
+                    final double boughtPrice = price;
+                    worker.run(() -> portfolio.buyInvestment(type, symbol, name, boughtQuantity, boughtPrice),
+                               () -> messageArea.append("Investment bought successfully. \n"));
                 }
             });
     
@@ -315,30 +421,56 @@ public class PortfolioGUI extends JFrame {
              */
             resetButton.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    // Reset all input fields and selection
-                    typeComboBox.setSelectedIndex(0);
-                    symbolField.setText("");
-                    nameField.setText("");
-                    quantityField.setText("");
-                    priceField.setText("");
+                    clearFields();
                     messageArea.append("Fields reset. \n");
                 }
             });
+            return mainPanel;
+        }
+
+        /**
+         * Resets all input fields and the type selection.
+         */
+        private void clearFields() {
+            typeComboBox.setSelectedIndex(0);
+            symbolField.setText("");
+            nameField.setText("");
+            quantityField.setText("");
+            priceField.setText("");
         }
     }
     
 
     private class SellWindow implements ActionListener {
+        // Built the first time the view is shown and kept in the card layout after that
+        private JPanel mainPanel;
+        private JTextField symbolField;
+        private JTextField quantityField;
+        private JTextField priceField;
+        private JTextArea messageArea;
 
         /**
          * This method is triggered when the "Sell" button is clicked.
-         * It displays a form for selling an investment, validates user input,
-         * and attempts to sell the investment by removing it from the portfolio.
+         * It shows the form for selling an investment, building it the first time,
+         * with the fields and messages left from the last time cleared.
          */
         public void actionPerformed(ActionEvent e) {
-            // Create the main panel for the "Sell Investment" form
-            JPanel sellPanel = new JPanel(new BorderLayout());
-    
+            long started = System.nanoTime();
+            if (mainPanel == null) {
+                mainPanel = buildPanel();
+            }
+            clearFields();
+            messageArea.setText("");
+            showView("sell", mainPanel, started);
+        }
+
+        /**
+         * Builds the form and its listeners, which validate user input and
+         * attempt to sell the investment by removing it from the portfolio.
+         *
+         * @return the panel holding the form
+         */
+        private JPanel buildPanel() {
             // Create and configure the header for the panel
             JLabel headerLabel = new JLabel("Selling an Investment");
             headerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -349,9 +481,9 @@ public class PortfolioGUI extends JFrame {
             // Create the input panel with fields for symbol, quantity, and price
             JPanel inputPanel = new JPanel(new GridLayout(3, 2, 5, 5));
             inputPanel.setBorder(BorderFactory.createEmptyBorder(0, 20, 0, 0));
-            JTextField symbolField = new JTextField(10);
-            JTextField quantityField = new JTextField(10);
-            JTextField priceField = new JTextField(10);
+            symbolField = new JTextField(10);
+            quantityField = new JTextField(10);
+            priceField = new JTextField(10);
     
             // Add labels and fields to the input panel
             inputPanel.add(new JLabel("Symbol:"));
@@ -362,7 +494,7 @@ public class PortfolioGUI extends JFrame {
             inputPanel.add(priceField);
     
             // Create a message area to display status messages (e.g., success or error messages)
-            JTextArea messageArea = new JTextArea(5, 20);
+            messageArea = new JTextArea(5, 20);
             messageArea.setWrapStyleWord(true);
             messageArea.setLineWrap(true);
             messageArea.setEditable(false);
@@ -409,12 +541,6 @@ public class PortfolioGUI extends JFrame {
             mainPanel.add(buttonPanel, BorderLayout.EAST);
             mainPanel.add(messagePanel, BorderLayout.SOUTH);
     
-            // Update the content panel to display the "Sell Investment" form
-            contentPanel.removeAll();
-            contentPanel.add(mainPanel, BorderLayout.CENTER);
-            revalidate();
-            repaint();
-    
             /**
              * Action listener for the "Sell" button.
              * It validates the input fields, performs the sale,
@@ -428,16 +554,16 @@ public class PortfolioGUI extends JFrame {
                         int quantity = Integer.parseInt(quantityField.getText());
                         double price = Double.parseDouble(priceField.getText());
     
-                        // Attempt to sell the investment and get the proceeds
-                        double proceeds = portfolio.sellInvestment(symbol, quantity, price);
-    
-                        // Display appropriate messages based on the sale result
-                        if (proceeds > 0) {
-                            messageArea.append("Investment sold successfully!\n");
-                            messageArea.append("Proceeds from sale: " + proceeds + "\n");
-                        } else {
-                            messageArea.append("Error: Investment not found or insufficient quantity.\n");
-                        }
+                        // Attempt to sell the investment on the worker thread and show the proceeds
+                        worker.submit(null, progress -> portfolio.sellInvestment(symbol, quantity, price), proceeds -> {
+                            // Display appropriate messages based on the sale result
+                            if (proceeds > 0) {
+                                messageArea.append("Investment sold successfully!\n");
+                                messageArea.append("Proceeds from sale: " + proceeds + "\n");
+                            } else {
+                                messageArea.append("Error: Investment not found or insufficient quantity.\n");
+                            }
+                        });
                     } catch (NumberFormatException ex) {
                         messageArea.append("Please enter valid numbers for quantity and price.\n");
                     } catch (Exception ex) {
@@ -452,29 +578,79 @@ public class PortfolioGUI extends JFrame {
              */
             resetButton.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    // Reset all input fields
-                    symbolField.setText("");
-                    quantityField.setText("");
-                    priceField.setText("");
+                    clearFields();
                     messageArea.append("Fields reset.\n");
                 }
             });
+            return mainPanel;
+        }
+
+        /**
+         * Resets all input fields.
+         */
+        private void clearFields() {
+            symbolField.setText("");
+            quantityField.setText("");
+            priceField.setText("");
         }
     }
     
     
     private class UpdateWindow implements ActionListener {
+        // Built the first time the view is shown and kept in the card layout after that
+        private JPanel mainPanel;
+        private JTextField symbolField;
+        private JTextField nameField;
+        private JTextField priceField;
+        private JTextArea messageArea;
+        private JButton prevButton;
+        private JButton nextButton;
+
+        // The snapshot of investments being stepped through, reloaded each time the view is shown
+        private final List<Investment> investments = new ArrayList<>();
+        private int currentIndex;
 
         /**
          * This method is triggered when the "Update Investment" button is clicked.
-         * It creates a form where users can update the price of an investment.
-         * It allows navigation through a list of investments and handles validation
-         * of the new price before updating it in the portfolio.
+         * It shows the form where users can update the price of an investment, building it
+         * the first time, and reloads the list of investments it steps through.
          */
         public void actionPerformed(ActionEvent e) {
-            // Create the main panel for the "Update Investment" form
-            JPanel updatePanel = new JPanel(new BorderLayout());
-    
+            long started = System.nanoTime();
+            if (mainPanel == null) {
+                mainPanel = buildPanel();
+            }
+
+            // Clear what was shown last time while a snapshot of the investments is retrieved from the worker thread
+            investments.clear();
+            currentIndex = 0;
+            symbolField.setText("");
+            nameField.setText("");
+            priceField.setText("");
+            messageArea.setText("");
+            prevButton.setEnabled(false);
+            nextButton.setEnabled(false);
+            showView("update", mainPanel, started);
+
+            worker.submit("update", progress -> new ArrayList<>(portfolio.getInvestments()), snapshot -> {
+                investments.addAll(snapshot);
+
+                // If investments are available, populate the fields with the current investment details
+                if (!investments.isEmpty()) {
+                    showInvestment();
+                } else {
+                    messageArea.append("No investments available.\n");
+                }
+            });
+        }
+
+        /**
+         * Builds the form and its listeners, which allow navigation through the list of
+         * investments and validate the new price before updating it in the portfolio.
+         *
+         * @return the panel holding the form
+         */
+        private JPanel buildPanel() {
             // Create and configure the header for the panel
             JLabel headerLabel = new JLabel("Updating Investment");
             headerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -485,9 +661,9 @@ public class PortfolioGUI extends JFrame {
             // Create the input panel with fields for symbol, name, and new price
             JPanel inputPanel = new JPanel(new GridLayout(3, 2, 5, 5));
             inputPanel.setBorder(BorderFactory.createEmptyBorder(0, 20, 0, 0));
-            JTextField symbolField = new JTextField(10);
-            JTextField nameField = new JTextField(10);
-            JTextField priceField = new JTextField(10);
+            symbolField = new JTextField(10);
+            nameField = new JTextField(10);
+            priceField = new JTextField(10);
     
             // Add labels and fields to the input panel
             inputPanel.add(new JLabel("Symbol:"));
@@ -500,7 +676,7 @@ public class PortfolioGUI extends JFrame {
             inputPanel.add(priceField);
     
             // Create a message area to display status messages (e.g., success or error messages)
-            JTextArea messageArea = new JTextArea(5, 20);
+            messageArea = new JTextArea(5, 20);
             messageArea.setWrapStyleWord(true);
             messageArea.setLineWrap(true);
             messageArea.setEditable(false);
@@ -517,8 +693,8 @@ public class PortfolioGUI extends JFrame {
             // Set fixed sizes for the buttons
             Dimension buttonSize = new Dimension(100, 40);
             JButton updateButton = new JButton("Save");
-            JButton prevButton = new JButton("Prev");
-            JButton nextButton = new JButton("Next");
+            prevButton = new JButton("Prev");
+            nextButton = new JButton("Next");
     
             updateButton.setPreferredSize(buttonSize);
             prevButton.setPreferredSize(buttonSize);
@@ -544,43 +720,16 @@ public class PortfolioGUI extends JFrame {
             mainPanel.add(rightAlignPanel, BorderLayout.EAST);
             mainPanel.add(messageScrollPane, BorderLayout.SOUTH);
     
-            // Update the content panel to display the "Update Investment" form
-            contentPanel.removeAll();
-            contentPanel.add(mainPanel, BorderLayout.CENTER);
-            contentPanel.revalidate();
-            contentPanel.repaint();
-    
-            // Retrieve the list of investments from the portfolio
-            List<Investment> investments = portfolio.getInvestments();
-            final int[] currentIndex = {0};
-    
-            // If investments are available, populate the fields with the current investment details
-            if (!investments.isEmpty()) {
-                Investment currentInvestment = investments.get(currentIndex[0]);
-                symbolField.setText(currentInvestment.getSymbol());
-                nameField.setText(currentInvestment.getName());
-                priceField.setText(String.valueOf(currentInvestment.getPrice()));
-                updateNavigationButtons(prevButton, nextButton, currentIndex[0], investments.size());
-            } else {
-                messageArea.append("No investments available.\n");
-                prevButton.setEnabled(false);
-                nextButton.setEnabled(false);
-            }
-    
             /**
              * Action listener for the "Prev" button.
              * It navigates to the previous investment in the list.
              */
             prevButton.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    if (currentIndex[0] > 0) {
-                        currentIndex[0]--;
-                        Investment currentInvestment = investments.get(currentIndex[0]);
-                        symbolField.setText(currentInvestment.getSymbol());
-                        nameField.setText(currentInvestment.getName());
-                        priceField.setText(String.valueOf(currentInvestment.getPrice()));
+                    if (currentIndex > 0) {
+                        currentIndex--;
+                        showInvestment();
                         messageArea.setText("Moved to previous investment.");
-                        updateNavigationButtons(prevButton, nextButton, currentIndex[0], investments.size());
                     } else {
                         messageArea.setText("Already at the first investment.");
                     }
@@ -593,14 +742,10 @@ public class PortfolioGUI extends JFrame {
              */
             nextButton.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    if (currentIndex[0] < investments.size() - 1) {
-                        currentIndex[0]++;
-                        Investment currentInvestment = investments.get(currentIndex[0]);
-                        symbolField.setText(currentInvestment.getSymbol());
-                        nameField.setText(currentInvestment.getName());
-                        priceField.setText(String.valueOf(currentInvestment.getPrice()));
+                    if (currentIndex < investments.size() - 1) {
+                        currentIndex++;
+                        showInvestment();
                         messageArea.setText("Moved to next investment.");
-                        updateNavigationButtons(prevButton, nextButton, currentIndex[0], investments.size());
                     } else {
                         messageArea.setText("Already at the last investment.");
                     }
@@ -614,21 +759,23 @@ public class PortfolioGUI extends JFrame {
              */
             updateButton.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
+                    if (investments.isEmpty()) {
+                        messageArea.append("No investments available.\n");
+                        return;
+                    }
                     try {
                         // Retrieve the price entered by the user and validate it
-                        String symbol = symbolField.getText().trim();
                         double price = Double.parseDouble(priceField.getText().trim());
     
                         if (price <= 0) {
                             throw new NumberFormatException();
                         }
     
-                        // Update the price of the current investment
-                        Investment currentInvestment = investments.get(currentIndex[0]);
-                        currentInvestment.setPrice(price);
-    
-                        // Display success message
-                        messageArea.append("Price updated successfully for " + currentInvestment.getSymbol() + "!\n");
+                        // Update the price of the current investment through the portfolio so its indexes stay current
+                        Investment currentInvestment = investments.get(currentIndex);
+                        worker.run(() -> portfolio.updatePrices(currentInvestment.getSymbol(), price),
+                                   // Display success message
+                                   () -> messageArea.append("Price updated successfully for " + currentInvestment.getSymbol() + "!\n"));
                     } catch (NumberFormatException ex) {
                         messageArea.append("Please enter a valid price.\n");
                     } catch (Exception ex) {
@@ -636,6 +783,19 @@ public class PortfolioGUI extends JFrame {
                     }
                 }
             });
+            return mainPanel;
+        }
+
+        /**
+         * Fills the fields with the details of the current investment and enables the
+         * navigation buttons that lead somewhere.
+         */
+        private void showInvestment() {
+            Investment currentInvestment = investments.get(currentIndex);
+            symbolField.setText(currentInvestment.getSymbol());
+            nameField.setText(currentInvestment.getName());
+            priceField.setText(String.valueOf(currentInvestment.getPrice()));
+            updateNavigationButtons(prevButton, nextButton, currentIndex, investments.size());
         }
     
         /**
@@ -650,13 +810,61 @@ public class PortfolioGUI extends JFrame {
     
     
     private class GetGainsWindow implements ActionListener {
+        private static final String[] BREAKDOWN_COLUMNS = {"Group", "Investments", "Market Value", "Book Value", "Gain"};
+
+        // Built the first time the view is shown and kept in the card layout after that
+        private JPanel gainsPanel;
+        private JTextField totalGainsField;
+        private JComboBox<String> groupingComboBox;
+        private JTextField tagsField;
+        private JButton breakdownButton;
+        private JTable breakdownTable;
+        private InvestmentTable individualGainsTable;
 
         /**
          * This method is triggered when the "Get Gains" action is performed.
-         * It displays the total gains from the portfolio as well as the individual gains for each investment.
+         * It displays the total gains from the portfolio as well as the individual gains for each investment,
+         * building the view the first time and recalculating the gains every time it is shown.
          * The information is displayed in a user-friendly format in the UI.
          */
         public void actionPerformed(ActionEvent e) {
+            long started = System.nanoTime();
+            if (gainsPanel == null) {
+                gainsPanel = buildPanel();
+            }
+
+            // Clear what was shown last time until the worker has calculated the gains again
+            totalGainsField.setText("...");
+            groupingComboBox.setSelectedIndex(0);
+            tagsField.setText("");
+            breakdownTable.setModel(new DefaultTableModel(new Object[0][], BREAKDOWN_COLUMNS));
+            individualGainsTable.setModel(new InvestmentTableModel(new ArrayList<>()));
+            showView("gains", gainsPanel, started);
+
+            // Calculate the total and snapshot the rows on the worker thread, reporting progress
+            worker.submit("gains", progress -> {
+                List<Investment> investments = portfolio.getInvestments();
+                double totalGains = 0.0;
+                for (int i = 0; i < investments.size(); i++) {
+                    totalGains += investments.get(i).calculateGain();
+                    if ((i & 0xFFFF) == 0) {
+                        progress.accept((int) (100L * i / investments.size()));
+                    }
+                }
+                return new Object[]{totalGains, InvestmentTableModel.snapshot(portfolio)};
+            }, result -> {
+                totalGainsField.setText(String.format("%.2f", (Double) result[0]));
+                individualGainsTable.setModel((InvestmentTableModel) result[1]);
+            });
+            breakdownButton.doClick();
+        }
+
+        /**
+         * Builds the view and the listener of its breakdown.
+         *
+         * @return the panel holding the view
+         */
+        private JPanel buildPanel() {
             // Create the main panel for displaying total and individual gains
             JPanel gainsPanel = new JPanel(new BorderLayout());
     
@@ -674,34 +882,71 @@ public class PortfolioGUI extends JFrame {
             JLabel totalLabel = new JLabel("Total Gains:");
             
             // Non-editable text field to display the total gains
-            JTextField totalGainsField = new JTextField(10);
+            totalGainsField = new JTextField(10);
             totalGainsField.setEditable(false);
             
-            // Retrieve total gains from the portfolio
-            double totalGains = portfolio.getTotalGains();
-            totalGainsField.setText(String.format("%.2f", totalGains));
-            
             // Add total gains label and field to the panel
             totalGainsPanel.add(totalLabel);
             totalGainsPanel.add(totalGainsField);
-            gainsPanel.add(totalGainsPanel, BorderLayout.CENTER);
-    
-            // Create a text area to display the individual gains of each investment
-            JTextArea individualGainsArea = new JTextArea(5, 20);
-            individualGainsArea.setEditable(false);
-            individualGainsArea.setWrapStyleWord(true);
-            individualGainsArea.setLineWrap(true);
-    
-            // StringBuilder to accumulate individual gain information
-            StringBuilder individualGains = new StringBuilder();
-            for (Investment investment : portfolio.getInvestments()) {
-                // Calculate gain for each investment and append it to the string
-                double gain = investment.calculateGain();
-                individualGains.append(investment.getName() + ": " + String.format("%.2f", gain) + "\n");
-            }
+
+            // Breakdown of the gains by type, first letter of the symbol, or user-supplied tags
+            JPanel breakdownControls = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+            breakdownControls.add(Box.createHorizontalStrut(25));
+            breakdownControls.add(new JLabel("Group by:"));
+            groupingComboBox = new JComboBox<>(new String[]{"type", "first letter", "tag"});
+            breakdownControls.add(groupingComboBox);
+            breakdownControls.add(new JLabel("Tags (SYMBOL=tag, ...):"));
+            tagsField = new JTextField(20);
+            breakdownControls.add(tagsField);
+            breakdownButton = new JButton("Show");
+            breakdownControls.add(breakdownButton);
+
+            breakdownTable = new JTable(new Object[0][], BREAKDOWN_COLUMNS);
+            breakdownTable.setEnabled(false);
+            breakdownTable.setPreferredScrollableViewportSize(new Dimension(700, 120));
+
+            JPanel breakdownPanel = new JPanel(new BorderLayout());
+            breakdownPanel.add(breakdownControls, BorderLayout.NORTH);
+            breakdownPanel.add(new JScrollPane(breakdownTable), BorderLayout.CENTER);
+
+            JPanel summaryPanel = new JPanel(new BorderLayout());
+            summaryPanel.add(totalGainsPanel, BorderLayout.NORTH);
+            summaryPanel.add(breakdownPanel, BorderLayout.CENTER);
+            gainsPanel.add(summaryPanel, BorderLayout.CENTER);
+
+            // Roll up the gains on the worker thread; the grouping is read on the event dispatch thread
+            breakdownButton.addActionListener(event -> {
+                Rollup grouping;
+                try {
+                    if (groupingComboBox.getSelectedIndex() == 0) {
+                        grouping = Rollup.byType();
+                    } else if (groupingComboBox.getSelectedIndex() == 1) {
+                        grouping = Rollup.byFirstLetter();
+                    } else {
+                        grouping = Rollup.byTag(Rollup.parseTags(tagsField.getText()));
+                    }
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(PortfolioGUI.this, "Error: " + ex.getMessage(), "ePortfolio", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                worker.submit("breakdown", progress -> portfolio.rollup(grouping), result -> {
+                    Object[][] rows = new Object[result.size()][];
+                    for (int g = 0; g < result.size(); g++) {
+                        rows[g] = new Object[]{result.getLabel(g), result.getCount(g),
+                                               String.format("%.2f", result.getMarketValue(g)),
+                                               String.format("%.2f", result.getBookValue(g)),
+                                               String.format("%.2f", result.getGain(g))};
+                    }
+                    breakdownTable.setModel(new DefaultTableModel(rows, BREAKDOWN_COLUMNS));
+                });
+            });
     
-            // Set the text area with the individual gains information
-            individualGainsArea.setText(individualGains.toString());
+            // Create a table of the individual gains of each investment.
+            // Gains are computed only for the rows that are on screen.
+            individualGainsTable = new InvestmentTable(new InvestmentTableModel(new ArrayList<>()));
+            individualGainsTable.setWorker(worker);
+            tableFeed.watch(individualGainsTable);
+            individualGainsTable.setPreferredScrollableViewportSize(new Dimension(700, 300));
     
             // Label and panel for individual gains section
             JLabel messagesLabel = new JLabel("Individual Gains");
@@ -709,20 +954,13 @@ public class PortfolioGUI extends JFrame {
             messagesPanel.add(messagesLabel, BorderLayout.NORTH);
     
             // Scroll pane to allow scrolling of the individual gains area
-            JScrollPane scrollPane = new JScrollPane(individualGainsArea, 
-                JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
+            JScrollPane scrollPane = new JScrollPane(individualGainsTable,
+                JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
             messagesPanel.add(scrollPane, BorderLayout.CENTER);
     
             // Add the messages panel containing individual gains to the main gains panel
             gainsPanel.add(messagesPanel, BorderLayout.SOUTH);
-    
-            // Replace the content panel with the new gains panel
-            contentPanel.removeAll();
-            contentPanel.add(gainsPanel, BorderLayout.CENTER);
-    
-            // Revalidate and repaint the content panel to apply the changes
-            revalidate();
-            repaint();
+            return gainsPanel;
         }
     }
     
@@ -737,26 +975,52 @@ private class SearchWindow implements ActionListener {
     private JTextField keywordField = new JTextField(20);
     private JTextField lowPriceField = new JTextField(10);
     private JTextField highPriceField = new JTextField(10);
+    private JTextField queryField = new JTextField(20);
     private JButton searchButton = new JButton("Search");
     private JButton resetButton = new JButton("Reset");
+    private JButton explainButton = new JButton("Explain");
     private JTextArea messageArea = new JTextArea(5, 20);
+    private InvestmentTable resultsTable = new InvestmentTable(new InvestmentTableModel(new ArrayList<>()));
+
+    // Built the first time the view is shown and kept in the card layout after that
+    private JPanel mainPanel;
 
     /**
-     * This method is triggered when the "Search" or "Reset" button is pressed.
-     * It displays the search form and handles the search functionality.
+     * Constructor that turns on search-as-you-type suggestions for the symbol and keyword fields.
+     */
+    public SearchWindow() {
+        symbolField.getDocument().addDocumentListener(new AutocompleteListener(symbolField, true));
+        keywordField.getDocument().addDocumentListener(new AutocompleteListener(keywordField, false));
+    }
+
+    /**
+     * This method is triggered when the "Search" action is performed.
+     * It displays the search form, building it and its listeners the first time,
+     * with the fields and results left from the last time cleared.
      *
-     * @param e the ActionEvent triggered by pressing a button
+     * @param e the ActionEvent triggered by choosing the action
      */
     public void actionPerformed(ActionEvent e) {
-        // Create the main panel for the search window
-        JPanel searchPanel = new JPanel(new BorderLayout());
+        long started = System.nanoTime();
+        if (mainPanel == null) {
+            mainPanel = buildPanel();
+        }
+        clearFields();
+        showView("search", mainPanel, started);
+    }
 
+    /**
+     * Builds the search form and the listeners that handle the search functionality.
+     *
+     * @return the panel holding the form
+     */
+    private JPanel buildPanel() {
         // Create a label for the title of the window
         JLabel titleLabel = new JLabel("Searching Investments");
         titleLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 
         // Panel for user input fields (symbol, keyword, price range)
-        JPanel inputPanel = new JPanel(new GridLayout(4, 2, 5, 5));
+        JPanel inputPanel = new JPanel(new GridLayout(5, 2, 5, 5));
         inputPanel.add(new JLabel("Symbol:"));
         inputPanel.add(symbolField);
         inputPanel.add(new JLabel("Name Keyword:"));
@@ -765,6 +1029,8 @@ private class SearchWindow implements ActionListener {
         inputPanel.add(lowPriceField);
         inputPanel.add(new JLabel("High Price:"));
         inputPanel.add(highPriceField);
+        inputPanel.add(new JLabel("Query:"));
+        inputPanel.add(queryField);
 
         // Set up the message area that will display search results
         messageArea.setWrapStyleWord(true);
@@ -776,9 +1042,16 @@ private class SearchWindow implements ActionListener {
         messageScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
         messageScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
 
+        // Matching investments are listed in a table; the message area shows errors and plans
+        resultsTable.setWorker(worker);
+        tableFeed.watch(resultsTable);
+        resultsTable.setPreferredScrollableViewportSize(new Dimension(700, 200));
+        JScrollPane resultsScrollPane = new JScrollPane(resultsTable);
+
         JPanel messagesPanel = new JPanel(new BorderLayout());
         messagesPanel.add(new JLabel("Search Results"), BorderLayout.NORTH);
-        messagesPanel.add(messageScrollPane, BorderLayout.CENTER);
+        messagesPanel.add(resultsScrollPane, BorderLayout.CENTER);
+        messagesPanel.add(messageScrollPane, BorderLayout.SOUTH);
 
         // Panel for the buttons (search and reset)
         JPanel buttonPanel = new JPanel();
@@ -794,11 +1067,17 @@ private class SearchWindow implements ActionListener {
         searchButton.setMaximumSize(buttonSize);
         searchButton.setMinimumSize(buttonSize);
 
+        explainButton.setPreferredSize(buttonSize);
+        explainButton.setMaximumSize(buttonSize);
+        explainButton.setMinimumSize(buttonSize);
+
         // Add buttons to the panel
         buttonPanel.add(Box.createVerticalGlue());
         buttonPanel.add(resetButton);
         buttonPanel.add(Box.createVerticalStrut(10));
         buttonPanel.add(searchButton);
+        buttonPanel.add(Box.createVerticalStrut(10));
+        buttonPanel.add(explainButton);
         buttonPanel.add(Box.createVerticalGlue());
 
         // Main panel to organize the layout of the window
@@ -808,17 +1087,22 @@ private class SearchWindow implements ActionListener {
         mainPanel.add(buttonPanel, BorderLayout.EAST);
         mainPanel.add(messagesPanel, BorderLayout.SOUTH);
 
-        // Clear existing content and add the new search panel
-        contentPanel.removeAll();
-        contentPanel.add(mainPanel, BorderLayout.CENTER);
-        
-        // Revalidate and repaint to update the UI with new components
-        revalidate();
-        repaint();
-
         // Search button action listener to handle search queries
         searchButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                // A query in the query language takes the place of the individual fields
+                String queryText = queryField.getText().trim();
+                if (!queryText.isEmpty()) {
+                    // Parse on this thread so errors are shown right away; only the plan runs on the worker
+                    try {
+                        QueryExpression expression = QueryExpression.parse(queryText);
+                        runSearch(() -> new QueryPlan(portfolio, expression).execute());
+                    } catch (IllegalArgumentException ex) {
+                        messageArea.setText("Invalid query: " + ex.getMessage());
+                    }
+                    return;
+                }
+
                 // Get the values entered by the user in the search form
                 String symbol = symbolField.getText();
                 String keyword = keywordField.getText();
@@ -844,23 +1128,429 @@ private class SearchWindow implements ActionListener {
                     }
                 }
 
-                // Perform the search and display the results in the message area
-                String searchResults = portfolio.search(symbol, keyword, lowPrice, highPrice);
-                messageArea.setText(searchResults);
+                // Build a query where every filled-in criterion must match.
+                // Keywords may use "a|b" for either word and "-word" to exclude a word.
+                BooleanQuery query = BooleanQuery.parseKeywords(keyword);
+                query.setSymbol(symbol);
+                if (lowPrice >= 0 || highPrice >= 0) {
+                    query.setPriceRange(Math.max(lowPrice, 0), highPrice >= 0 ? highPrice : Double.POSITIVE_INFINITY);
+                }
+
+                // Perform the search and display the results in the table
+                runSearch(() -> portfolio.find(query));
+            }
+        });
+
+        // Explain button action listener to show how the query would be evaluated
+        explainButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String queryText = queryField.getText().trim();
+                if (queryText.isEmpty()) {
+                    messageArea.setText("Enter a query such as: type:stock AND price 10..50 AND gain > 0 AND name:bank");
+                    return;
+                }
+                try {
+                    QueryExpression expression = QueryExpression.parse(queryText);
+                    worker.submit("explain", progress -> new QueryPlan(portfolio, expression).explain(),
+                                  messageArea::setText);
+                } catch (IllegalArgumentException ex) {
+                    messageArea.setText("Invalid query: " + ex.getMessage());
+                }
             }
         });
 
         // Reset button action listener to clear the input fields and messages
         resetButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                // Clear all the input fields and message area
-                symbolField.setText("");
-                keywordField.setText("");
-                lowPriceField.setText("");
-                highPriceField.setText("");
-                messageArea.setText("");
+                clearFields();
             }
         });
+        return mainPanel;
+    }
+
+    /**
+     * Clears all the input fields, the message area and the results.
+     */
+    private void clearFields() {
+        symbolField.setText("");
+        keywordField.setText("");
+        lowPriceField.setText("");
+        highPriceField.setText("");
+        queryField.setText("");
+        messageArea.setText("");
+        resultsTable.setModel(new InvestmentTableModel(new ArrayList<>()));
+    }
+
+    /**
+     * Runs a search on the worker thread and shows the matching investments in the results table.
+     * A newer search cancels one that has not finished yet.
+     *
+     * @param search the search to run
+     */
+    private void runSearch(Supplier<PostingList> search) {
+        messageArea.setText("Searching...");
+        worker.submit("search", progress -> InvestmentTableModel.snapshot(portfolio.investmentsAt(search.get())), results -> {
+            resultsTable.setModel(results);
+            messageArea.setText(results.getRowCount() == 0 ?
+                                "No investments found with the given criteria." :
+                                results.getRowCount() + " investments found.");
+        });
+    }
+}
+
+/**
+ * This class shows autocomplete suggestions under a text field on every keystroke.
+ * Suggestions come from the portfolio's prefix indexes, so each lookup only touches the
+ * tokens that start with what has been typed so far.
+ */
+private class AutocompleteListener implements DocumentListener {
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private final JTextField field;
+    private final boolean symbols;
+    private final JPopupMenu popup = new JPopupMenu();
+    private boolean selecting = false;
+
+    /**
+     * Creates a listener for the given field.
+     *
+     * @param field   the text field to attach suggestions to
+     * @param symbols {@code true} to suggest symbols, {@code false} to suggest name keywords
+     */
+    public AutocompleteListener(JTextField field, boolean symbols) {
+        this.field = field;
+        this.symbols = symbols;
+        popup.setFocusable(false);
+    }
+
+    public void insertUpdate(DocumentEvent e) {
+        SwingUtilities.invokeLater(this::showSuggestions);
+    }
+
+    public void removeUpdate(DocumentEvent e) {
+        SwingUtilities.invokeLater(this::showSuggestions);
+    }
+
+    public void changedUpdate(DocumentEvent e) {
+        // Attribute changes do not affect the text, so there is nothing to suggest
+    }
+
+    /**
+     * Looks up suggestions for the current text and shows them in a popup below the field.
+     */
+    private void showSuggestions() {
+        String prefix = field.getText().trim();
+        if (selecting || prefix.isEmpty() || !field.isShowing()) {
+            popup.setVisible(false);
+            return;
+        }
+
+        // Look up suggestions on the worker thread; a newer keystroke cancels an older lookup
+        worker.submit(symbols ? "suggest-symbols" : "suggest-keywords", progress -> symbols ?
+                      portfolio.suggestSymbols(prefix, MAX_SUGGESTIONS) :
+                      portfolio.suggestKeywords(prefix, MAX_SUGGESTIONS), this::showPopup);
+    }
+
+    /**
+     * Shows the given suggestions in a popup below the field.
+     *
+     * @param suggestions the suggestions to show
+     */
+    private void showPopup(List<String> suggestions) {
+        if (field.getText().trim().isEmpty() || !field.isShowing()) {
+            popup.setVisible(false);
+            return;
+        }
+        popup.removeAll();
+        for (String suggestion : suggestions) {
+            JMenuItem item = new JMenuItem(suggestion);
+            item.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    // Fill in the chosen suggestion without triggering a new lookup
+                    selecting = true;
+                    field.setText(suggestion);
+                    popup.setVisible(false);
+                    SwingUtilities.invokeLater(() -> selecting = false);
+                }
+            });
+            popup.add(item);
+        }
+
+        if (suggestions.isEmpty()) {
+            popup.setVisible(false);
+        } else {
+            popup.pack();
+            popup.show(field, 0, field.getHeight());
+        }
+    }
+}
+
+/**
+ * This class defines the TickerWindow that shows live prices for every investment in the portfolio.
+ */
+private class TickerWindow implements ActionListener {
+
+    /**
+     * This method is triggered when the "Ticker" action is performed.
+     * It loads the current holdings into the ticker and shows it. Prices keep
+     * streaming into the ticker even while another window is shown.
+     *
+     * @param e the ActionEvent triggered by opening the ticker
+     */
+    public void actionPerformed(ActionEvent e) {
+        long started = System.nanoTime();
+
+        // Snapshot the holdings on the worker thread, then show them in the ticker
+        worker.submit("ticker", progress -> new ArrayList<>(portfolio.getInvestments()), ticker::setBook);
+
+        // The ticker is built once, with the window, so it only needs to be shown
+        showView("ticker", ticker, started);
+    }
+}
+
+/**
+ * This class defines the OpenWindow where users can browse a portfolio file and load it.
+ * The file is opened lazily, so even a very large file shows its first rows right away;
+ * investments are only built for the rows that are looked at.
+ */
+private class OpenWindow implements ActionListener {
+
+    private JTextField fileField = new JTextField(30);
+    private JTextField findField = new JTextField(10);
+    private JLabel statusLabel = new JLabel(" ");
+    private InvestmentTable recordsTable = new InvestmentTable(new InvestmentTableModel(new ArrayList<>()));
+
+    // The file being browsed, or null before one is opened
+    private LazyPortfolioFile file;
+
+    // Built the first time the view is shown and kept in the card layout after that
+    private JPanel mainPanel;
+
+    /**
+     * This method is triggered when the "Open" action is performed.
+     * It shows the file browser, building it the first time. The file that was
+     * being browsed stays open.
+     *
+     * @param e the ActionEvent triggered by choosing the action
+     */
+    public void actionPerformed(ActionEvent e) {
+        long started = System.nanoTime();
+        if (mainPanel == null) {
+            mainPanel = buildPanel();
+        }
+        findField.setText("");
+        showView("open", mainPanel, started);
+    }
+
+    /**
+     * Builds the file browser and the listeners that open, search and load the file.
+     *
+     * @return the panel holding the browser
+     */
+    private JPanel buildPanel() {
+        // Create a label for the title of the window
+        JLabel titleLabel = new JLabel("Opening a Portfolio File");
+        titleLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        // Row for choosing the file
+        JButton browseButton = new JButton("Browse...");
+        JButton openButton = new JButton("Open");
+        JPanel filePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        filePanel.add(new JLabel("File:"));
+        filePanel.add(fileField);
+        filePanel.add(browseButton);
+        filePanel.add(openButton);
+
+        // Row for finding a symbol and loading the file into the portfolio
+        JButton findButton = new JButton("Find");
+        JButton loadButton = new JButton("Load into Portfolio");
+        JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        actionPanel.add(new JLabel("Symbol:"));
+        actionPanel.add(findField);
+        actionPanel.add(findButton);
+        actionPanel.add(loadButton);
+
+        JPanel controlsPanel = new JPanel(new GridLayout(3, 1));
+        controlsPanel.add(filePanel);
+        controlsPanel.add(actionPanel);
+        controlsPanel.add(statusLabel);
+
+        // The records are read from the file as they are scrolled into view, so they are not sorted
+        recordsTable.getModel().setSortable(false);
+        recordsTable.setPreferredScrollableViewportSize(new Dimension(700, 350));
+        JScrollPane recordsScrollPane = new JScrollPane(recordsTable);
+
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        mainPanel.add(titleLabel, BorderLayout.NORTH);
+        mainPanel.add(controlsPanel, BorderLayout.CENTER);
+        mainPanel.add(recordsScrollPane, BorderLayout.SOUTH);
+
+        // Browse button action listener to pick the file with a chooser
+        browseButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser(System.getProperty("user.dir"));
+                if (chooser.showOpenDialog(PortfolioGUI.this) == JFileChooser.APPROVE_OPTION) {
+                    fileField.setText(chooser.getSelectedFile().getPath());
+                    openButton.doClick();
+                }
+            }
+        });
+
+        // Open button action listener to scan the file on the worker thread and show its first rows
+        openButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String filename = fileField.getText().trim();
+                if (filename.isEmpty()) {
+                    statusLabel.setText("Enter the name of a portfolio file.");
+                    return;
+                }
+                long started = System.nanoTime();
+                statusLabel.setText("Opening " + filename + "...");
+                worker.submit("open", progress -> LazyPortfolioFile.open(Path.of(filename)), opened -> {
+                    file = opened;
+                    InvestmentTableModel model = new InvestmentTableModel(opened.asList());
+                    model.setSortable(false);
+                    recordsTable.setModel(model);
+                    statusLabel.setText(String.format("%d investments in %s, opened in %d ms.", opened.size(),
+                                                      opened.getPath().getFileName(), (System.nanoTime() - started) / 1_000_000L));
+                });
+            }
+        });
+
+        // Find button action listener to scroll to the record of a symbol
+        findButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (file == null) {
+                    statusLabel.setText("Open a file first.");
+                    return;
+                }
+                LazyPortfolioFile searched = file;
+                String symbol = findField.getText().trim();
+                // Reading the file may page it in from disk, so look the symbol up on the worker thread
+                worker.submit("find", progress -> {
+                    int record = searched.find(symbol);
+                    return new Object[]{record, record < 0 ? null : searched.get(record).getSymbol()};
+                }, result -> {
+                    int record = (Integer) result[0];
+                    if (searched != file) return;
+                    if (record < 0) {
+                        statusLabel.setText("No investment found with symbol " + symbol + ".");
+                        return;
+                    }
+                    recordsTable.changeSelection(record, 0, false, false);
+                    statusLabel.setText("Found " + result[1] + " in record " + (record + 1) + ".");
+                });
+            }
+        });
+
+        // Load button action listener to add the file to the portfolio, which builds each investment when it is needed
+        loadButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (file == null) {
+                    statusLabel.setText("Open a file first.");
+                    return;
+                }
+                LazyPortfolioFile loading = file;
+                statusLabel.setText("Adding " + loading.size() + " investments...");
+                worker.run(() -> portfolio.openInvestments(loading),
+                           () -> statusLabel.setText("Added " + loading.getPath().getFileName() + " to the portfolio."));
+            }
+        });
+        return mainPanel;
+    }
+}
+
+/**
+ * This class feeds portfolio events to the ticker. Prices go straight to the ticker, which
+ * accepts them from any thread. Buys that open an investment and removals change the rows, so
+ * they reload the ticker's holdings; a burst of them, such as a load, reloads it once.
+ */
+private class TickerFeed implements Flow.Subscriber<PortfolioEvent> {
+    private final AtomicBoolean reloadQueued = new AtomicBoolean();
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(PortfolioEvent event) {
+        if (event.getType() == PortfolioEvent.Type.PRICE) {
+            ticker.onPrice(event.getSymbol(), event.getPrice());
+        } else if ((event.getType() == PortfolioEvent.Type.REMOVE || event.opensPosition())
+                   && reloadQueued.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                reloadQueued.set(false);
+                worker.submit("ticker", progress -> new ArrayList<>(portfolio.getInvestments()), ticker::setBook);
+            });
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOGGER.log(Level.WARNING, "Ticker feed stopped", throwable);
+    }
+
+    @Override
+    public void onComplete() {
+    }
+}
+
+/**
+ * This class brings the gains and search tables up to date when prices change. Their rows are
+ * snapshots, so each price event is handed to the model of every watched table, which updates
+ * and repaints the row of that symbol if it shows one. Events arrive on the publisher's thread
+ * and are passed to the event dispatch thread in batches, one batch per pending repaint.
+ */
+private class TableFeed implements Flow.Subscriber<PortfolioEvent> {
+    private final Queue<PortfolioEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+    // Only used on the event dispatch thread
+    private final List<InvestmentTable> tables = new ArrayList<>();
+
+    /**
+     * Starts updating a table on price changes. Call it on the event dispatch thread.
+     *
+     * @param table the table to update
+     */
+    void watch(InvestmentTable table) {
+        tables.add(table);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(PortfolioEvent event) {
+        if (event.getType() != PortfolioEvent.Type.PRICE) return;
+        pending.add(event);
+        if (drainQueued.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    /**
+     * Hands every pending price event to the watched tables, in the order they were published.
+     */
+    private void drain() {
+        drainQueued.set(false);
+        PortfolioEvent event;
+        while ((event = pending.poll()) != null) {
+            for (InvestmentTable table : tables) {
+                table.getModel().priceUpdated(event);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOGGER.log(Level.WARNING, "Table feed stopped", throwable);
+    }
+
+    @Override
+    public void onComplete() {
     }
 }
 
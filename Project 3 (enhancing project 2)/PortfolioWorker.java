@@ -0,0 +1,208 @@
+package ePortfolio;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code PortfolioWorker} class runs {@code Portfolio} operations for the GUI on a single
+ * background thread, so slow operations never freeze the window. Because there is only one
+ * worker thread, operations run one at a time in the order they were submitted and the portfolio
+ * itself needs no locking.
+ *
+ * <p>Each operation is wrapped in a {@code SwingWorker}, so its result is delivered on the event
+ * dispatch thread. An operation may be submitted under a key; submitting a newer operation with
+ * the same key cancels the older one, which is how a search superseded by another search, or a
+ * stale autocomplete lookup, is dropped. Progress reported by an operation, and whether any
+ * operation is pending, are passed to listeners on the event dispatch thread.</p>
+ */
+public class PortfolioWorker {
+    private static final Logger LOGGER = Logger.getLogger(PortfolioWorker.class.getName());
+
+    /**
+     * An operation to run on the worker thread.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Job<T> {
+        /**
+         * Runs the operation.
+         *
+         * @param progress receives the percentage complete, from 0 to 100
+         * @return the result to deliver on the event dispatch thread
+         * @throws Exception if the operation fails
+         */
+        T run(IntConsumer progress) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final Map<String, Task<?>> latestByKey;
+    private int pending;
+    private Consumer<Boolean> busyListener = busy -> { };
+    private IntConsumer progressListener = percent -> { };
+    private Consumer<Throwable> errorHandler = error -> LOGGER.log(Level.WARNING, "Portfolio operation failed", error);
+
+    /**
+     * Constructs a worker with its own background thread.
+     */
+    public PortfolioWorker() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "portfolio-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        latestByKey = new HashMap<>();
+    }
+
+    /**
+     * Sets the listener told when the worker becomes busy or idle.
+     *
+     * @param busyListener receives {@code true} when an operation is pending
+     */
+    public void setBusyListener(Consumer<Boolean> busyListener) {
+        this.busyListener = busyListener;
+    }
+
+    /**
+     * Sets the listener that receives progress reported by running operations.
+     *
+     * @param progressListener receives the percentage complete
+     */
+    public void setProgressListener(IntConsumer progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Sets the handler for operations that throw an exception.
+     *
+     * @param errorHandler receives the exception on the event dispatch thread
+     */
+    public void setErrorHandler(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Submits an operation. Must be called on the event dispatch thread.
+     *
+     * @param key       operations with the same non-null key replace each other; the older one
+     *                  is cancelled and its result is never delivered
+     * @param job       the operation to run on the worker thread
+     * @param onSuccess receives the result on the event dispatch thread
+     * @param <T>       the type of the result
+     * @return the submitted task
+     */
+    public <T> Task<T> submit(String key, Job<T> job, Consumer<T> onSuccess) {
+        Task<T> task = new Task<>(key, job, onSuccess);
+        if (key != null) {
+            Task<?> previous = latestByKey.put(key, task);
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        }
+        if (pending++ == 0) {
+            busyListener.accept(true);
+        }
+        task.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                progressListener.accept((Integer) event.getNewValue());
+            }
+        });
+
+        // Count the task as pending until the worker thread is done with it, even if it was
+        // cancelled while running, so the busy state matches what the thread is doing
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    if (--pending == 0) {
+                        busyListener.accept(false);
+                    }
+                });
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Submits an operation that has no result to deliver.
+     *
+     * @param job       the operation to run on the worker thread
+     * @param onSuccess runs on the event dispatch thread after the operation
+     * @return the submitted task
+     */
+    public Task<Void> run(Runnable job, Runnable onSuccess) {
+        return submit(null, progress -> {
+            job.run();
+            return null;
+        }, ignored -> onSuccess.run());
+    }
+
+    /**
+     * Runs an operation on the worker thread from any thread, for callers outside the GUI that
+     * wait for the result themselves, such as management tools. It does not report progress or
+     * change the busy state, and nothing is delivered to the event dispatch thread.
+     *
+     * @param job the operation to run on the worker thread
+     * @param <T> the type of the result
+     * @return the pending result
+     */
+    public <T> Future<T> call(Callable<T> job) {
+        return executor.submit(job);
+    }
+
+    /**
+     * Stops the worker thread after the operations already submitted have run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A submitted operation.
+     *
+     * @param <T> the type of the result
+     */
+    public class Task<T> extends SwingWorker<T, Void> {
+        private final String key;
+        private final Job<T> job;
+        private final Consumer<T> onSuccess;
+
+        private Task(String key, Job<T> job, Consumer<T> onSuccess) {
+            this.key = key;
+            this.job = job;
+            this.onSuccess = onSuccess;
+        }
+
+        @Override
+        protected T doInBackground() throws Exception {
+            return job.run(percent -> setProgress(Math.max(0, Math.min(100, percent))));
+        }
+
+        @Override
+        protected void done() {
+            if (key != null && latestByKey.get(key) == this) {
+                latestByKey.remove(key);
+            }
+            if (isCancelled()) return;
+
+            try {
+                onSuccess.accept(get());
+            } catch (ExecutionException e) {
+                errorHandler.accept(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
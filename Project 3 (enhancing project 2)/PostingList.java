@@ -0,0 +1,277 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@code PostingList} class is a sorted list of investment positions stored in a primitive
+ * {@code int} array. It is used by the keyword index and by boolean searches, where lists are
+ * combined with intersection, union and difference.
+ *
+ * <p>Intersections always let the shortest list drive and gallop through the longer ones, so
+ * the cost of an AND query depends on the size of the smallest list rather than the size of
+ * the portfolio.</p>
+ */
+public class PostingList {
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructs an empty {@code PostingList}.
+     */
+    public PostingList() {
+        values = new int[4];
+    }
+
+    /**
+     * Constructs a {@code PostingList} over the first {@code size} entries of a sorted array.
+     *
+     * @param values the sorted positions
+     * @param size   the number of positions in use
+     */
+    PostingList(int[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates a list containing every position from {@code 0} to {@code count - 1}.
+     *
+     * @param count the number of positions
+     * @return the list of all positions
+     */
+    public static PostingList range(int count) {
+        int[] all = new int[Math.max(count, 1)];
+        for (int i = 0; i < count; i++) {
+            all[i] = i;
+        }
+        return new PostingList(all, count);
+    }
+
+    /**
+     * Appends a position. Positions must be added in ascending order.
+     *
+     * @param position the position to append
+     */
+    public void add(int position) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = position;
+    }
+
+    /**
+     * Gets the position stored at the given index.
+     *
+     * @param index the index in the list
+     * @return the position
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets the number of positions in the list.
+     *
+     * @return the size of the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the list is empty.
+     *
+     * @return {@code true} if the list has no positions
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether the list contains the given position.
+     *
+     * @param position the position to look for
+     * @return {@code true} if the position is in the list
+     */
+    public boolean contains(int position) {
+        return Arrays.binarySearch(values, 0, size, position) >= 0;
+    }
+
+    /**
+     * Renumbers every position in one pass, dropping those that no longer exist. The new numbers
+     * must keep the order of the old ones, as they do when removed investments are compacted out
+     * of the investment list.
+     *
+     * @param newPositions the new number of each old position, or {@code -1} if it was removed
+     */
+    public void renumber(int[] newPositions) {
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            int value = newPositions[values[read]];
+            if (value >= 0) {
+                values[write++] = value;
+            }
+        }
+        size = write;
+    }
+
+    /**
+     * Estimates the heap retained by the list, including its spare capacity.
+     *
+     * @return the estimated bytes
+     */
+    long retainedBytes() {
+        return FootprintReport.objectBytes(8) + FootprintReport.arrayBytes(values.length, 4);
+    }
+
+    /**
+     * Copies the positions into a new array.
+     *
+     * @return the positions in ascending order
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Copies the list, so that the copy can be handed out while this list keeps changing.
+     *
+     * @return a new list with the same positions
+     */
+    public PostingList copy() {
+        return new PostingList(Arrays.copyOf(values, Math.max(size, 1)), size);
+    }
+
+    /**
+     * Intersects all of the given lists. The lists are processed from shortest to longest so the
+     * running result never grows and each step gallops through the longer list.
+     *
+     * @param lists the lists to intersect
+     * @return a new list of the positions present in every list
+     */
+    public static PostingList intersectAll(List<PostingList> lists) {
+        if (lists.isEmpty()) return new PostingList();
+        if (lists.size() == 1) return lists.get(0).copy();
+        List<PostingList> ordered = new ArrayList<>(lists);
+        ordered.sort(Comparator.comparingInt(PostingList::size));
+
+        PostingList result = ordered.get(0);
+        for (int i = 1; i < ordered.size() && !result.isEmpty(); i++) {
+            result = intersect(result, ordered.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Intersects two lists by walking the shorter one and galloping through the longer one.
+     *
+     * @param a the first list
+     * @param b the second list
+     * @return the positions present in both lists
+     */
+    public static PostingList intersect(PostingList a, PostingList b) {
+        PostingList small = a.size <= b.size ? a : b;
+        PostingList large = small == a ? b : a;
+        PostingList result = new PostingList(new int[Math.max(small.size, 1)], 0);
+
+        int from = 0;
+        for (int i = 0; i < small.size && from < large.size; i++) {
+            int target = small.values[i];
+            from = gallop(large.values, from, large.size, target);
+            if (from < large.size && large.values[from] == target) {
+                result.values[result.size++] = target;
+                from++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first index at or after {@code from} whose value is not less than the target,
+     * doubling the step size before finishing with a binary search.
+     *
+     * @param values the sorted values
+     * @param from   the index to start from
+     * @param to     the end of the used range
+     * @param target the value to look for
+     * @return the index of the first value not less than the target, or {@code to}
+     */
+    private static int gallop(int[] values, int from, int to, int target) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < to && values[high] < target) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        int index = Arrays.binarySearch(values, low, high, target);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * Merges the given lists into one list without duplicates.
+     *
+     * @param lists the lists to merge
+     * @return the positions present in any of the lists
+     */
+    public static PostingList union(List<PostingList> lists) {
+        PostingList result = new PostingList();
+        for (PostingList list : lists) {
+            result = merge(result, list);
+        }
+        return result;
+    }
+
+    /**
+     * Merges two sorted lists into one list without duplicates.
+     *
+     * @param a the first list
+     * @param b the second list
+     * @return the positions present in either list
+     */
+    private static PostingList merge(PostingList a, PostingList b) {
+        int[] merged = new int[Math.max(a.size + b.size, 1)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.size && j < b.size) {
+            int x = a.values[i], y = b.values[j];
+            if (x < y) {
+                merged[n++] = x;
+                i++;
+            } else if (y < x) {
+                merged[n++] = y;
+                j++;
+            } else {
+                merged[n++] = x;
+                i++;
+                j++;
+            }
+        }
+        while (i < a.size) merged[n++] = a.values[i++];
+        while (j < b.size) merged[n++] = b.values[j++];
+        return new PostingList(merged, n);
+    }
+
+    /**
+     * Returns the positions in this list that are not in the other list.
+     *
+     * @param other the positions to exclude
+     * @return a new list with the excluded positions removed
+     */
+    public PostingList without(PostingList other) {
+        PostingList result = new PostingList(new int[Math.max(size, 1)], 0);
+        int from = 0;
+        for (int i = 0; i < size; i++) {
+            int value = values[i];
+            from = gallop(other.values, from, other.size, value);
+            if (from >= other.size || other.values[from] != value) {
+                result.values[result.size++] = value;
+            }
+        }
+        return result;
+    }
+}
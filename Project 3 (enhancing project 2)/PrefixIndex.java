@@ -0,0 +1,253 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The {@code PrefixIndex} class is a compact trie over lowercase tokens (investment symbols or
+ * words from investment names) that supports autocomplete lookups by prefix.
+ *
+ * <p>Each token is reference counted so the same word shared by several investments is stored
+ * only once, and removing one of those investments does not remove the suggestion for the
+ * others. Every node also tracks how many live tokens are below it, and a branch is unlinked
+ * as soon as its last live token is removed, so the trie only holds tokens still in use.
+ * Suggestions are ranked by reference count, so the words most investments share come
+ * first.</p>
+ */
+public class PrefixIndex {
+    /**
+     * Orders tokens from the most to the least referenced, and alphabetically among equals.
+     */
+    private static final Comparator<Node> RANKING = Comparator.comparingInt((Node node) -> -node.refCount)
+            .thenComparing(node -> node.token, String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * A single trie node. Children are kept in a small array sorted by character, so a child
+     * is found by binary search.
+     */
+    private static class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private int size;
+        private int refCount;
+        private int liveBelow;
+        private String token;
+
+        /**
+         * Finds the child for the given character.
+         *
+         * @param c the character to look for
+         * @return the child node, or {@code null} if there is none
+         */
+        private Node child(char c) {
+            int i = indexOf(c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        /**
+         * Finds the child for the given character, creating it in sorted position if needed.
+         *
+         * @param c the character to look for
+         * @return the existing or newly created child node
+         */
+        private Node childOrCreate(char c) {
+            int i = indexOf(c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insertAt = -(i + 1);
+            if (size == labels.length) {
+                int capacity = Math.max(2, size * 2);
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, insertAt, labels, insertAt + 1, size - insertAt);
+            System.arraycopy(children, insertAt, children, insertAt + 1, size - insertAt);
+            Node node = new Node();
+            labels[insertAt] = c;
+            children[insertAt] = node;
+            size++;
+            return node;
+        }
+
+        /**
+         * Unlinks the child at the given index, keeping the rest in order.
+         *
+         * @param index the index of the child
+         */
+        private void removeChild(int index) {
+            size--;
+            System.arraycopy(labels, index + 1, labels, index, size - index);
+            System.arraycopy(children, index + 1, children, index, size - index);
+            children[size] = null;
+        }
+
+        /**
+         * Binary searches the sorted label array.
+         *
+         * @param c the character to look for
+         * @return the index of the character, or {@code -(insertion point) - 1} if absent
+         */
+        private int indexOf(char c) {
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (labels[mid] < c) {
+                    low = mid + 1;
+                } else if (labels[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    private Node root;
+
+    /**
+     * Constructs an empty {@code PrefixIndex}.
+     */
+    public PrefixIndex() {
+        root = new Node();
+    }
+
+    /**
+     * Adds one reference to the given token. The first form of the token that is added is the
+     * one returned by {@link #suggest(String, int)}.
+     *
+     * @param token the token to add
+     */
+    public void add(String token) {
+        if (token == null || token.isEmpty()) return;
+        String key = token.toLowerCase();
+        Node node = root;
+        node.liveBelow++;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+            node.liveBelow++;
+        }
+        if (node.refCount == 0) {
+            node.token = token;
+        }
+        node.refCount++;
+    }
+
+    /**
+     * Removes one reference to the given token. Once the last reference is gone the token no
+     * longer appears in suggestions, and the nodes that led only to it are unlinked.
+     *
+     * @param token the token to remove
+     */
+    public void remove(String token) {
+        if (token == null || token.isEmpty()) return;
+        String key = token.toLowerCase();
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null || node.refCount == 0) return;
+
+        node.refCount--;
+        if (node.refCount == 0) {
+            node.token = null;
+        }
+
+        // Walk the path again now that the token is known to exist, cutting off the first node
+        // left with no live tokens below it
+        Node parent = root;
+        parent.liveBelow--;
+        for (int i = 0; i < key.length(); i++) {
+            int index = parent.indexOf(key.charAt(i));
+            Node child = parent.children[index];
+            if (--child.liveBelow == 0) {
+                parent.removeChild(index);
+                return;
+            }
+            parent = child;
+        }
+    }
+
+    /**
+     * Removes every token from the index.
+     */
+    public void clear() {
+        root = new Node();
+    }
+
+    /**
+     * Estimates the heap retained by the trie nodes, including spare room in their child
+     * arrays. The token strings themselves are not counted.
+     *
+     * @return the estimated bytes
+     */
+    long retainedBytes() {
+        return FootprintReport.objectBytes(4) + retainedBytes(root);
+    }
+
+    private static long retainedBytes(Node node) {
+        long bytes = FootprintReport.objectBytes(24)
+                     + FootprintReport.arrayBytes(node.labels.length, 2)
+                     + FootprintReport.referenceArrayBytes(node.children.length);
+        for (int i = 0; i < node.size; i++) {
+            bytes += retainedBytes(node.children[i]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns up to {@code limit} tokens starting with the given prefix, the most referenced
+     * first and alphabetically among those referenced equally often. The lookup is
+     * case-insensitive and only visits the part of the trie below the prefix.
+     *
+     * @param prefix the prefix typed so far
+     * @param limit  the maximum number of suggestions to return
+     * @return the matching tokens, or an empty list if nothing matches
+     */
+    public List<String> suggest(String prefix, int limit) {
+        List<String> results = new ArrayList<>();
+        if (prefix == null || prefix.isEmpty() || limit <= 0) return results;
+
+        String key = prefix.toLowerCase();
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) return results;
+
+        // The weakest of the best tokens so far is at the head, ready to be replaced
+        PriorityQueue<Node> best = new PriorityQueue<>(Math.min(limit, 64) + 1, RANKING.reversed());
+        collect(node, best, limit);
+        while (!best.isEmpty()) {
+            results.add(best.poll().token);
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Offers every live token below a node to the queue of the best ones, keeping at most
+     * {@code limit} of them.
+     *
+     * @param node  the node to start from
+     * @param best  the best tokens so far, the weakest first
+     * @param limit the maximum number of tokens to keep
+     */
+    private void collect(Node node, PriorityQueue<Node> best, int limit) {
+        if (node.liveBelow == 0) return;
+        if (node.refCount > 0) {
+            best.add(node);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        for (int i = 0; i < node.size; i++) {
+            collect(node.children[i], best, limit);
+        }
+    }
+}
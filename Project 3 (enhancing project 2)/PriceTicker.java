@@ -0,0 +1,223 @@
+package ePortfolio;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code PriceTicker} class is a panel that shows live prices for every holding in the book.
+ *
+ * <p>Prices may arrive from any thread through {@link #onPrice(String, double)}. Each update only
+ * stores the latest price for its symbol and sets a dirty bit, so any number of updates to the
+ * same symbol between two frames are conflated into one. A Swing timer running at a capped frame
+ * rate collects the dirty rows and repaints only those rows. The feed therefore never posts
+ * anything to the event queue, and the amount of work on the event dispatch thread depends on the
+ * frame rate and the number of symbols, not on the rate of updates.</p>
+ */
+public class PriceTicker extends JPanel {
+    private static final int DEFAULT_FRAMES_PER_SECOND = 20;
+
+    /**
+     * The symbols being shown and the latest prices received for them. A new {@code Book}
+     * replaces the old one whenever the holdings change, so the feed thread never sees a
+     * half-built book.
+     */
+    private static class Book {
+        private final String[] symbols;
+        private final String[] names;
+        private final double[] openPrices;
+        private final double[] shownPrices;
+        private final Map<String, Integer> rows;
+        private final AtomicLongArray latestPrices;
+        private final AtomicLongArray dirty;
+
+        private Book(List<Investment> investments) {
+            int n = investments.size();
+            symbols = new String[n];
+            names = new String[n];
+            openPrices = new double[n];
+            shownPrices = new double[n];
+            rows = new HashMap<>(n * 2);
+            latestPrices = new AtomicLongArray(n);
+            dirty = new AtomicLongArray((n + 63) >>> 6);
+            for (int i = 0; i < n; i++) {
+                Investment investment = investments.get(i);
+                symbols[i] = investment.getSymbol();
+                names[i] = investment.getName();
+                openPrices[i] = investment.getPrice();
+                shownPrices[i] = investment.getPrice();
+                latestPrices.set(i, Double.doubleToRawLongBits(investment.getPrice()));
+                rows.put(investment.getSymbol().toLowerCase(), i);
+            }
+        }
+    }
+
+    private volatile Book book;
+    private final TickerModel model;
+    private final Timer frameTimer;
+    private final JLabel statusLabel;
+    private final LongAdder received;
+    private long receivedAtLastSecond;
+    private long lastSecond;
+
+    /**
+     * Constructs an empty ticker that repaints at most 20 times per second.
+     */
+    public PriceTicker() {
+        this(DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    /**
+     * Constructs an empty ticker.
+     *
+     * @param framesPerSecond the most times per second the ticker repaints
+     */
+    public PriceTicker(int framesPerSecond) {
+        super(new BorderLayout());
+        book = new Book(List.of());
+        received = new LongAdder();
+        model = new TickerModel();
+
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.setDefaultRenderer(Double.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(String.format("%.2f", (Double) value));
+            }
+        });
+        statusLabel = new JLabel("Waiting for prices");
+
+        add(new JLabel("Live Prices"), BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+
+        frameTimer = new Timer(1000 / Math.max(1, framesPerSecond), e -> flush());
+        frameTimer.setCoalesce(true);
+        frameTimer.start();
+    }
+
+    /**
+     * Replaces the holdings shown by the ticker. Must be called on the event dispatch thread.
+     *
+     * @param investments the holdings to show
+     */
+    public void setBook(List<Investment> investments) {
+        book = new Book(investments);
+        model.fireTableDataChanged();
+    }
+
+    /**
+     * Records a new price for a symbol. This may be called from any thread and never blocks or
+     * posts to the event queue. Symbols that are not in the book are ignored.
+     *
+     * @param symbol the symbol whose price changed
+     * @param price  the new price
+     */
+    public void onPrice(String symbol, double price) {
+        Book current = book;
+        Integer row = current.rows.get(symbol.toLowerCase());
+        if (row == null) return;
+
+        current.latestPrices.set(row, Double.doubleToRawLongBits(price));
+        int word = row >>> 6;
+        long bit = 1L << row;
+        long bits = current.dirty.get(word);
+        while ((bits & bit) == 0 && !current.dirty.compareAndSet(word, bits, bits | bit)) {
+            bits = current.dirty.get(word);
+        }
+        received.increment();
+    }
+
+    /**
+     * Stops repainting. The ticker cannot be restarted after this.
+     */
+    public void stop() {
+        frameTimer.stop();
+    }
+
+    /**
+     * Copies the latest price of every dirty row into the table and repaints those rows,
+     * merging runs of adjacent rows into one repaint.
+     */
+    private void flush() {
+        Book current = book;
+        int runStart = -1, runEnd = -1;
+        for (int word = 0; word < current.dirty.length(); word++) {
+            if (current.dirty.get(word) == 0) continue;
+            long bits = current.dirty.getAndSet(word, 0);
+            while (bits != 0) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                current.shownPrices[row] = Double.longBitsToDouble(current.latestPrices.get(row));
+                if (row == runEnd + 1) {
+                    runEnd = row;
+                } else {
+                    if (runStart >= 0) model.fireTableRowsUpdated(runStart, runEnd);
+                    runStart = runEnd = row;
+                }
+            }
+        }
+        if (runStart >= 0) model.fireTableRowsUpdated(runStart, runEnd);
+        updateStatus();
+    }
+
+    /**
+     * Shows the number of price updates received during the last second.
+     */
+    private void updateStatus() {
+        long now = System.currentTimeMillis();
+        if (now - lastSecond < 1000) return;
+        long total = received.sum();
+        long rate = (total - receivedAtLastSecond) * 1000 / Math.max(1, now - lastSecond);
+        statusLabel.setText(String.format("%,d updates/s, %,d symbols", rate, book.symbols.length));
+        receivedAtLastSecond = total;
+        lastSecond = now;
+    }
+
+    /**
+     * The table model reads only the prices already copied for display, never the values the
+     * feed thread is writing.
+     */
+    private class TickerModel extends AbstractTableModel {
+        private final String[] columns = {"Symbol", "Name", "Price", "Change"};
+
+        @Override
+        public int getRowCount() {
+            return book.symbols.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column >= 2 ? Double.class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Book current = book;
+            switch (column) {
+                case 0: return current.symbols[row];
+                case 1: return current.names[row];
+                case 2: return current.shownPrices[row];
+                default: return current.shownPrices[row] - current.openPrices[row];
+            }
+        }
+    }
+}
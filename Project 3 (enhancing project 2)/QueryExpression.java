@@ -0,0 +1,429 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code QueryExpression} class is the parsed form of a portfolio screen written in the
+ * compact query language, for example {@code type:stock AND price 10..50 AND gain > 0 AND name:bank}.
+ *
+ * <p>The language supports these predicates:</p>
+ * <ul>
+ *   <li>{@code type:stock} or {@code type:mutualfund}</li>
+ *   <li>{@code symbol:AAPL}</li>
+ *   <li>{@code name:bank}, or just {@code bank}, for a word in the investment name</li>
+ *   <li>{@code price}, {@code gain}, {@code quantity} and {@code book} compared with
+ *       {@code >}, {@code >=}, {@code <}, {@code <=}, {@code =} or a range such as {@code 10..50}</li>
+ * </ul>
+ * <p>Predicates are combined with {@code AND}, {@code OR}, {@code NOT} and parentheses.
+ * Adjacent predicates without an operator are AND-ed. A {@code -} before a predicate means
+ * {@code NOT}, while one between letters or digits is part of the word, as in
+ * {@code symbol:BRK-B}.</p>
+ */
+public abstract class QueryExpression {
+    /**
+     * The fields a predicate can test.
+     */
+    public enum Field {
+        TYPE, SYMBOL, NAME, PRICE, GAIN, QUANTITY, BOOK
+    }
+
+    /**
+     * Parses a query string.
+     *
+     * @param text the query to parse
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public static QueryExpression parse(String text) {
+        Parser parser = new Parser(text);
+        QueryExpression expression = parser.parseOr();
+        if (parser.peek() != null) {
+            throw new IllegalArgumentException("Unexpected '" + parser.peek() + "' in query.");
+        }
+        return expression;
+    }
+
+    /**
+     * An expression that matches when all of its children match.
+     */
+    public static class And extends QueryExpression {
+        private final List<QueryExpression> children;
+
+        public And(List<QueryExpression> children) {
+            this.children = children;
+        }
+
+        public List<QueryExpression> getChildren() {
+            return children;
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " AND ");
+        }
+    }
+
+    /**
+     * An expression that matches when any of its children match.
+     */
+    public static class Or extends QueryExpression {
+        private final List<QueryExpression> children;
+
+        public Or(List<QueryExpression> children) {
+            this.children = children;
+        }
+
+        public List<QueryExpression> getChildren() {
+            return children;
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " OR ");
+        }
+    }
+
+    /**
+     * An expression that matches when its child does not.
+     */
+    public static class Not extends QueryExpression {
+        private final QueryExpression child;
+
+        public Not(QueryExpression child) {
+            this.child = child;
+        }
+
+        public QueryExpression getChild() {
+            return child;
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + (child instanceof Predicate ? child.toString() : "(" + child + ")");
+        }
+    }
+
+    /**
+     * A single test on one field. Text fields hold a lowercase value, and numeric fields hold an
+     * inclusive range where strict comparisons have already been moved to the next double.
+     */
+    public static class Predicate extends QueryExpression {
+        private final Field field;
+        private final String text;
+        private final double low;
+        private final double high;
+        private String description;
+
+        /**
+         * Creates a predicate on a text field ({@code TYPE}, {@code SYMBOL} or {@code NAME}).
+         *
+         * @param field the field to test
+         * @param text  the value to compare with
+         */
+        public Predicate(Field field, String text) {
+            this.field = field;
+            this.text = text.toLowerCase();
+            this.low = 0;
+            this.high = 0;
+        }
+
+        /**
+         * Creates a predicate on a numeric field that matches values in {@code [low, high]}.
+         *
+         * @param field the field to test
+         * @param low   the minimum value, inclusive
+         * @param high  the maximum value, inclusive
+         */
+        public Predicate(Field field, double low, double high) {
+            this.field = field;
+            this.text = null;
+            this.low = low;
+            this.high = high;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public double getLow() {
+            return low;
+        }
+
+        public double getHigh() {
+            return high;
+        }
+
+        public boolean isNumeric() {
+            return text == null;
+        }
+
+        /**
+         * Sets how the predicate was written, so plans show {@code gain > 0} rather than the
+         * equivalent inclusive range.
+         *
+         * @param description the predicate as written in the query
+         */
+        private void setDescription(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            String name = field.name().toLowerCase();
+            if (description != null) {
+                return description;
+            } else if (!isNumeric()) {
+                return name + ":" + text;
+            } else if (low == Double.NEGATIVE_INFINITY) {
+                return name + " <= " + format(high);
+            } else if (high == Double.POSITIVE_INFINITY) {
+                return name + " >= " + format(low);
+            }
+            return name + " " + format(low) + ".." + format(high);
+        }
+
+        private static String format(double value) {
+            return String.format("%.2f", value);
+        }
+    }
+
+    /**
+     * Joins child expressions with an operator, adding parentheses around nested groups.
+     */
+    private static String join(List<QueryExpression> children, String operator) {
+        StringBuilder sb = new StringBuilder();
+        for (QueryExpression child : children) {
+            if (sb.length() > 0) sb.append(operator);
+            boolean group = child instanceof And || child instanceof Or;
+            sb.append(group ? "(" + child + ")" : child.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A recursive descent parser for the query language.
+     */
+    private static class Parser {
+        private final List<String> tokens;
+        private int position;
+
+        private Parser(String text) {
+            tokens = tokenize(text);
+        }
+
+        private String peek() {
+            return position < tokens.size() ? tokens.get(position) : null;
+        }
+
+        private String next() {
+            String token = peek();
+            if (token == null) {
+                throw new IllegalArgumentException("Query ended unexpectedly.");
+            }
+            position++;
+            return token;
+        }
+
+        private boolean acceptWord(String word) {
+            if (word.equalsIgnoreCase(peek())) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private QueryExpression parseOr() {
+            List<QueryExpression> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (acceptWord("OR")) {
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        private QueryExpression parseAnd() {
+            List<QueryExpression> children = new ArrayList<>();
+            children.add(parseNot());
+            while (true) {
+                if (acceptWord("AND")) {
+                    children.add(parseNot());
+                } else if (peek() != null && !peek().equals(")") && !peek().equalsIgnoreCase("OR")) {
+                    // Adjacent predicates are AND-ed
+                    children.add(parseNot());
+                } else {
+                    break;
+                }
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        private QueryExpression parseNot() {
+            if (acceptWord("NOT") || acceptWord("-")) {
+                return new Not(parseNot());
+            }
+            if ("(".equals(peek())) {
+                next();
+                QueryExpression inner = parseOr();
+                if (!")".equals(next())) {
+                    throw new IllegalArgumentException("Missing ')' in query.");
+                }
+                return inner;
+            }
+            return parsePredicate();
+        }
+
+        private QueryExpression parsePredicate() {
+            String word = next();
+            Field field = fieldNamed(word);
+            String following = peek();
+
+            if (field == null || following == null || following.equalsIgnoreCase("AND")
+                    || following.equalsIgnoreCase("OR") || following.equals(")")) {
+                // A bare word is a keyword in the investment name
+                if (!isWord(word)) {
+                    throw new IllegalArgumentException("Unexpected '" + word + "' in query.");
+                }
+                return new Predicate(Field.NAME, word);
+            }
+
+            if (following.equals(":")) {
+                next();
+                if (field == Field.TYPE || field == Field.SYMBOL || field == Field.NAME) {
+                    String value = next();
+                    if (!isWord(value)) {
+                        throw new IllegalArgumentException("Expected a value after " + word + ": but found '"
+                                                           + value + "'.");
+                    }
+                    if (field == Field.TYPE) {
+                        value = normalizeType(value);
+                    }
+                    return new Predicate(field, value);
+                }
+            }
+            if (field == Field.TYPE || field == Field.SYMBOL || field == Field.NAME) {
+                throw new IllegalArgumentException("Expected ':' after " + word + ".");
+            }
+            return parseComparison(field);
+        }
+
+        private QueryExpression parseComparison(Field field) {
+            int start = position;
+            Predicate predicate = comparison(field);
+            StringBuilder description = new StringBuilder(field.name().toLowerCase());
+            for (int i = start; i < position; i++) {
+                String token = tokens.get(i);
+                description.append(token.equals("..") || tokens.get(i - 1).equals("..") ? "" : " ").append(token);
+            }
+            predicate.setDescription(description.toString());
+            return predicate;
+        }
+
+        private Predicate comparison(Field field) {
+            String operator = next();
+            switch (operator) {
+                case ">":
+                    return new Predicate(field, Math.nextUp(number()), Double.POSITIVE_INFINITY);
+                case ">=":
+                    return new Predicate(field, number(), Double.POSITIVE_INFINITY);
+                case "<":
+                    return new Predicate(field, Double.NEGATIVE_INFINITY, Math.nextDown(number()));
+                case "<=":
+                    return new Predicate(field, Double.NEGATIVE_INFINITY, number());
+                case "=": {
+                    double value = number();
+                    return new Predicate(field, value, value);
+                }
+                default: {
+                    // A range such as 10..50
+                    double low = toNumber(operator);
+                    if (!"..".equals(next())) {
+                        throw new IllegalArgumentException("Expected a comparison or range after "
+                                + field.name().toLowerCase() + ".");
+                    }
+                    return new Predicate(field, low, number());
+                }
+            }
+        }
+
+        private double number() {
+            return toNumber(next());
+        }
+
+        private static double toNumber(String token) {
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number but found '" + token + "'.");
+            }
+        }
+
+        private static String normalizeType(String value) {
+            String type = value.toLowerCase();
+            if (type.equals("stock") || type.equals("s")) return "stock";
+            if (type.equals("mutualfund") || type.equals("fund") || type.equals("m")) return "mutualfund";
+            throw new IllegalArgumentException("Unknown investment type '" + value + "'.");
+        }
+
+        private static Field fieldNamed(String word) {
+            switch (word.toLowerCase()) {
+                case "type": return Field.TYPE;
+                case "symbol": return Field.SYMBOL;
+                case "name": return Field.NAME;
+                case "price": return Field.PRICE;
+                case "gain": return Field.GAIN;
+                case "quantity": case "qty": return Field.QUANTITY;
+                case "book": case "bookvalue": return Field.BOOK;
+                default: return null;
+            }
+        }
+
+        private static boolean isWord(String token) {
+            return Character.isLetterOrDigit(token.charAt(0));
+        }
+
+        /**
+         * Splits the query into words, numbers and operators.
+         */
+        private static List<String> tokenize(String text) {
+            List<String> tokens = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (text.startsWith("..", i)) {
+                    tokens.add("..");
+                    i += 2;
+                } else if (c == '>' || c == '<') {
+                    boolean orEqual = i + 1 < text.length() && text.charAt(i + 1) == '=';
+                    tokens.add(orEqual ? c + "=" : String.valueOf(c));
+                    i += orEqual ? 2 : 1;
+                } else if (c == '(' || c == ')' || c == ':' || c == '=') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (c == '-' && (i + 1 >= text.length() || !Character.isDigit(text.charAt(i + 1)))) {
+                    tokens.add("-");
+                    i++;
+                } else {
+                    int start = i++;
+                    while (i < text.length()) {
+                        char d = text.charAt(i);
+                        boolean dot = d == '.' && !text.startsWith("..", i);
+                        // A hyphen joins two parts of a word, as in BRK-B, rather than starting a NOT
+                        boolean hyphen = d == '-' && Character.isLetterOrDigit(text.charAt(i - 1))
+                                         && i + 1 < text.length() && Character.isLetterOrDigit(text.charAt(i + 1));
+                        if (!(Character.isLetterOrDigit(d) || d == '_' || d == '&' || dot || hyphen)) break;
+                        i++;
+                    }
+                    tokens.add(text.substring(start, i));
+                }
+            }
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@code QueryPlan} class decides how a {@link QueryExpression} is evaluated against a
+ * {@code Portfolio}. Predicates on the name, symbol and price use the keyword, symbol and price
+ * indexes, and the planner estimates how many rows each one matches so the most selective index
+ * drives an AND. Predicates without an index (type, gain, quantity, book value), and indexed
+ * ranges that would match far more rows than the driver, are applied afterwards by a column scan
+ * over the candidates. When nothing in an expression can use an index, the whole portfolio is
+ * scanned column by column.
+ *
+ * <p>{@link #explain()} describes the chosen plan with the estimated row count of every step.</p>
+ */
+public class QueryPlan {
+    /**
+     * The fraction of rows assumed to match a predicate that has no index to estimate from.
+     */
+    private static final double UNINDEXED_SELECTIVITY = 1.0 / 3.0;
+
+    /**
+     * An indexed range larger than this many times the driving list is checked by the column
+     * scan instead of being materialized and intersected.
+     */
+    private static final int MATERIALIZE_FACTOR = 4;
+
+    private final Portfolio portfolio;
+    private final QueryExpression expression;
+    private final int rowCount;
+    private final Node root;
+
+    /**
+     * Plans the given expression against the current state of the portfolio's indexes. The
+     * records of a file the portfolio added lazily are built first, since the indexes must
+     * include them.
+     *
+     * @param portfolio  the portfolio to query
+     * @param expression the parsed query
+     */
+    public QueryPlan(Portfolio portfolio, QueryExpression expression) {
+        portfolio.buildPending();
+        this.portfolio = portfolio;
+        this.expression = expression;
+        this.rowCount = portfolio.size();
+        this.root = plan(expression);
+    }
+
+    /**
+     * Runs the plan.
+     *
+     * @return the positions of matching investments in ascending order
+     */
+    public PostingList execute() {
+        return root.execute();
+    }
+
+    /**
+     * Describes the chosen plan, one step per line, with the estimated rows for each step.
+     *
+     * @return the plan description
+     */
+    public String explain() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Query: ").append(expression).append('\n');
+        sb.append("Investments: ").append(rowCount).append('\n');
+        root.explain(sb, 0);
+        return sb.toString();
+    }
+
+    /**
+     * Chooses a plan node for an expression.
+     */
+    private Node plan(QueryExpression expr) {
+        if (expr instanceof QueryExpression.Predicate) {
+            return planPredicate((QueryExpression.Predicate) expr);
+        } else if (expr instanceof QueryExpression.And) {
+            return planAnd((QueryExpression.And) expr);
+        } else if (expr instanceof QueryExpression.Or) {
+            List<Node> inputs = new ArrayList<>();
+            double estimate = 0;
+            for (QueryExpression child : ((QueryExpression.Or) expr).getChildren()) {
+                Node input = plan(child);
+                if (input instanceof ColumnScan) {
+                    // One branch needs a full scan anyway, so scan the whole OR at once
+                    return new ColumnScan(expr, rowCount * scanSelectivity(expr));
+                }
+                inputs.add(input);
+                estimate += input.estimate;
+            }
+            return new Union(expr, inputs, Math.min(estimate, rowCount));
+        }
+        return new ColumnScan(expr, rowCount * scanSelectivity(expr));
+    }
+
+    /**
+     * Plans a single predicate, using an index when one exists for its field.
+     */
+    private Node planPredicate(QueryExpression.Predicate predicate) {
+        switch (predicate.getField()) {
+            case NAME: {
+                PostingList postings = portfolio.keywordPositions(predicate.getText());
+                return new IndexLookup(predicate, "keyword index", postings == null ? 0 : postings.size(), true);
+            }
+            case SYMBOL:
+                return new IndexLookup(predicate, "symbol index",
+                                       portfolio.symbolPosition(predicate.getText()) >= 0 ? 1 : 0, true);
+            case PRICE:
+                return new IndexLookup(predicate, "price index",
+                                       portfolio.countPriceRange(predicate.getLow(), predicate.getHigh()), false);
+            default:
+                return new ColumnScan(predicate, rowCount * UNINDEXED_SELECTIVITY);
+        }
+    }
+
+    /**
+     * Plans an AND: the smallest indexed input drives, other cheap inputs are intersected with
+     * it, negated keyword or symbol lookups are subtracted, and everything else is checked by a
+     * column scan over the remaining candidates.
+     */
+    private Node planAnd(QueryExpression.And and) {
+        List<Node> indexed = new ArrayList<>();
+        List<Node> excluded = new ArrayList<>();
+        List<QueryExpression> residual = new ArrayList<>();
+        double residualSelectivity = 1.0;
+
+        for (QueryExpression child : and.getChildren()) {
+            if (child instanceof QueryExpression.Not) {
+                Node negated = plan(((QueryExpression.Not) child).getChild());
+                if (negated instanceof IndexLookup && ((IndexLookup) negated).precomputed) {
+                    excluded.add(negated);
+                } else {
+                    residual.add(child);
+                    residualSelectivity *= scanSelectivity(child);
+                }
+                continue;
+            }
+            Node input = plan(child);
+            if (input instanceof ColumnScan) {
+                residual.add(child);
+                residualSelectivity *= scanSelectivity(child);
+            } else {
+                indexed.add(input);
+            }
+        }
+
+        if (indexed.isEmpty()) {
+            return new ColumnScan(and, rowCount * scanSelectivity(and));
+        }
+
+        indexed.sort(Comparator.comparingDouble(node -> node.estimate));
+        Node driver = indexed.get(0);
+        List<Node> inputs = new ArrayList<>();
+        inputs.add(driver);
+        double estimate = driver.estimate;
+        for (int i = 1; i < indexed.size(); i++) {
+            Node input = indexed.get(i);
+            boolean precomputed = input instanceof IndexLookup && ((IndexLookup) input).precomputed;
+            if (precomputed || input.estimate <= driver.estimate * MATERIALIZE_FACTOR) {
+                inputs.add(input);
+            } else {
+                residual.add(input.expression);
+            }
+            estimate *= selectivity(input.estimate);
+        }
+        for (Node node : excluded) {
+            estimate *= 1.0 - selectivity(node.estimate);
+        }
+        estimate *= residualSelectivity;
+
+        Node node = inputs.size() == 1 ? driver : new Intersect(and, inputs, estimate);
+        if (!excluded.isEmpty()) {
+            node = new Difference(and, node, excluded, estimate);
+        }
+        if (!residual.isEmpty()) {
+            QueryExpression filter = residual.size() == 1 ? residual.get(0) : new QueryExpression.And(residual);
+            node = new Filter(filter, node, estimate);
+        }
+        return node;
+    }
+
+    /**
+     * Estimates the fraction of rows an expression matches, using index statistics for indexed
+     * predicates and a fixed guess for the rest.
+     */
+    private double scanSelectivity(QueryExpression expr) {
+        if (expr instanceof QueryExpression.And) {
+            double selectivity = 1.0;
+            for (QueryExpression child : ((QueryExpression.And) expr).getChildren()) {
+                selectivity *= scanSelectivity(child);
+            }
+            return selectivity;
+        } else if (expr instanceof QueryExpression.Or) {
+            double missed = 1.0;
+            for (QueryExpression child : ((QueryExpression.Or) expr).getChildren()) {
+                missed *= 1.0 - scanSelectivity(child);
+            }
+            return 1.0 - missed;
+        } else if (expr instanceof QueryExpression.Not) {
+            return 1.0 - scanSelectivity(((QueryExpression.Not) expr).getChild());
+        }
+        Node node = planPredicate((QueryExpression.Predicate) expr);
+        return node instanceof ColumnScan ? UNINDEXED_SELECTIVITY : selectivity(node.estimate);
+    }
+
+    /**
+     * Converts an estimated row count into the fraction of the portfolio it represents.
+     */
+    private double selectivity(double estimate) {
+        return rowCount == 0 ? 0 : Math.min(1.0, estimate / rowCount);
+    }
+
+    /**
+     * A step in the plan.
+     */
+    private abstract static class Node {
+        protected final QueryExpression expression;
+        protected final double estimate;
+
+        protected Node(QueryExpression expression, double estimate) {
+            this.expression = expression;
+            this.estimate = estimate;
+        }
+
+        abstract PostingList execute();
+
+        abstract void explain(StringBuilder sb, int depth);
+
+        protected void line(StringBuilder sb, int depth, String text) {
+            for (int i = 0; i < depth; i++) sb.append("  ");
+            sb.append(text).append(String.format(" (est. %.0f rows)", estimate)).append('\n');
+        }
+    }
+
+    /**
+     * Reads the positions for one predicate straight from an index.
+     */
+    private class IndexLookup extends Node {
+        private final String index;
+        private final boolean precomputed;
+
+        /**
+         * @param precomputed {@code true} when the index already holds the posting list, so
+         *                    using it costs nothing extra; {@code false} for the price index,
+         *                    whose matches must be copied and sorted by position
+         */
+        IndexLookup(QueryExpression.Predicate predicate, String index, double estimate, boolean precomputed) {
+            super(predicate, estimate);
+            this.index = index;
+            this.precomputed = precomputed;
+        }
+
+        @Override
+        PostingList execute() {
+            QueryExpression.Predicate predicate = (QueryExpression.Predicate) expression;
+            switch (predicate.getField()) {
+                case NAME: {
+                    PostingList postings = portfolio.keywordPositions(predicate.getText());
+                    // The index keeps its list, so callers get a copy they are free to change
+                    return postings != null ? postings.copy() : new PostingList();
+                }
+                case SYMBOL: {
+                    PostingList single = new PostingList();
+                    int position = portfolio.symbolPosition(predicate.getText());
+                    if (position >= 0) single.add(position);
+                    return single;
+                }
+                default:
+                    return portfolio.priceRangePositions(predicate.getLow(), predicate.getHigh());
+            }
+        }
+
+        @Override
+        void explain(StringBuilder sb, int depth) {
+            line(sb, depth, "Index lookup " + expression + " [" + index + "]");
+        }
+    }
+
+    /**
+     * Intersects its inputs, smallest first.
+     */
+    private static class Intersect extends Node {
+        private final List<Node> inputs;
+
+        Intersect(QueryExpression expression, List<Node> inputs, double estimate) {
+            super(expression, estimate);
+            this.inputs = inputs;
+        }
+
+        @Override
+        PostingList execute() {
+            List<PostingList> lists = new ArrayList<>();
+            for (Node input : inputs) {
+                PostingList list = input.execute();
+                if (list.isEmpty()) return list;
+                lists.add(list);
+            }
+            return PostingList.intersectAll(lists);
+        }
+
+        @Override
+        void explain(StringBuilder sb, int depth) {
+            line(sb, depth, "Intersect, driven by the first input");
+            for (Node input : inputs) input.explain(sb, depth + 1);
+        }
+    }
+
+    /**
+     * Merges its inputs.
+     */
+    private static class Union extends Node {
+        private final List<Node> inputs;
+
+        Union(QueryExpression expression, List<Node> inputs, double estimate) {
+            super(expression, estimate);
+            this.inputs = inputs;
+        }
+
+        @Override
+        PostingList execute() {
+            List<PostingList> lists = new ArrayList<>();
+            for (Node input : inputs) lists.add(input.execute());
+            return PostingList.union(lists);
+        }
+
+        @Override
+        void explain(StringBuilder sb, int depth) {
+            line(sb, depth, "Union");
+            for (Node input : inputs) input.explain(sb, depth + 1);
+        }
+    }
+
+    /**
+     * Removes the positions of negated lookups from its input.
+     */
+    private static class Difference extends Node {
+        private final Node input;
+        private final List<Node> excluded;
+
+        Difference(QueryExpression expression, Node input, List<Node> excluded, double estimate) {
+            super(expression, estimate);
+            this.input = input;
+            this.excluded = excluded;
+        }
+
+        @Override
+        PostingList execute() {
+            PostingList result = input.execute();
+            for (Node node : excluded) {
+                if (result.isEmpty()) break;
+                result = result.without(node.execute());
+            }
+            return result;
+        }
+
+        @Override
+        void explain(StringBuilder sb, int depth) {
+            line(sb, depth, "Exclude");
+            input.explain(sb, depth + 1);
+            for (Node node : excluded) node.explain(sb, depth + 1);
+        }
+    }
+
+    /**
+     * Checks the remaining predicates with a column scan over the candidates from its input.
+     */
+    private class Filter extends Node {
+        private final Node input;
+
+        Filter(QueryExpression residual, Node input, double estimate) {
+            super(residual, estimate);
+            this.input = input;
+        }
+
+        @Override
+        PostingList execute() {
+            PostingList candidates = input.execute();
+            if (candidates.isEmpty()) return candidates;
+            return new ColumnBatch(portfolio, candidates).select(expression);
+        }
+
+        @Override
+        void explain(StringBuilder sb, int depth) {
+            line(sb, depth, "Column scan of candidates for " + expression);
+            input.explain(sb, depth + 1);
+        }
+    }
+
+    /**
+     * Scans every investment in the portfolio column by column.
+     */
+    private class ColumnScan extends Node {
+        ColumnScan(QueryExpression expression, double estimate) {
+            super(expression, estimate);
+        }
+
+        @Override
+        PostingList execute() {
+            return new ColumnBatch(portfolio, PostingList.range(rowCount)).select(expression);
+        }
+
+        @Override
+        void explain(StringBuilder sb, int depth) {
+            line(sb, depth, "Full column scan for " + expression + " over " + rowCount + " investments");
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code Rebalancer} class works out the trades that bring a portfolio to target weights,
+ * each weight being a share of the portfolio's market value, and applies them.
+ *
+ * <p>Each held symbol is traded by the whole number of units that brings its value closest to
+ * its target; symbols without a target have a target of zero and are sold. The rebalancer only
+ * trades symbols that are held, since a new investment needs a type and a name; the weight of a
+ * target symbol that is not held is left as cash and the symbol is reported in the plan. A
+ * trade is only kept when the amount by which it brings the symbol closer to its target is more
+ * than its fee: the {@code Stock} commission on either side, or the {@code MutualFund}
+ * redemption fee on a sale. No other trades are made, so the list is the shortest that reaches
+ * the targets. Purchases are paid for by the proceeds of the sales and any cash given. When
+ * fees or trades left out make them fall short, every purchase is scaled down by the same
+ * factor.</p>
+ *
+ * <p>Planning looks at each position once and allocates only the trades it keeps, so it takes
+ * time in proportion to the number of positions. Sales are listed, and applied, before
+ * purchases, so the cash they raise is there before it is spent.</p>
+ */
+public class Rebalancer {
+    // Weights are read from text, so allow for rounding in ones that are meant to add up to one
+    private static final double WEIGHT_TOLERANCE = 1e-9;
+
+    private final IntIntMap targetIndex = new IntIntMap();
+    private final String[] symbols;
+    private final double[] weights;
+
+    /**
+     * Constructs a rebalancer for the given target weights. The weights may add up to less than
+     * one, in which case the rest of the value is kept as cash.
+     *
+     * @param targets the weight of each symbol, from 0 to 1, with symbols in any case
+     * @throws IllegalArgumentException if a weight is outside that range or the weights add up
+     *                                  to more than one
+     */
+    public Rebalancer(Map<String, Double> targets) {
+        symbols = new String[targets.size()];
+        weights = new double[targets.size()];
+        double total = 0;
+        int index = 0;
+        for (Map.Entry<String, Double> target : targets.entrySet()) {
+            double weight = target.getValue();
+            if (!(weight >= 0 && weight <= 1)) {
+                throw new IllegalArgumentException("Weight must be between 0 and 1: " + target.getKey() + "=" + weight);
+            }
+            int key = SymbolDictionary.lowercase(SymbolDictionary.encode(target.getKey()));
+            if (targetIndex.get(key) != IntIntMap.MISSING) {
+                throw new IllegalArgumentException("Symbol has more than one target: " + target.getKey());
+            }
+            targetIndex.put(key, index);
+            symbols[index] = target.getKey();
+            weights[index] = weight;
+            total += weight;
+            index++;
+        }
+        if (total > 1 + WEIGHT_TOLERANCE) {
+            throw new IllegalArgumentException(String.format("Weights add up to %.4f, more than 1.", total));
+        }
+    }
+
+    /**
+     * Parses target weights written as {@code SYMBOL=WEIGHT} pairs separated by commas or spaces.
+     * A weight is a fraction such as {@code 0.25} or a percentage such as {@code 25%}.
+     *
+     * @param text the targets to parse
+     * @return the weight of each symbol, in the order given
+     * @throws IllegalArgumentException if a pair has no symbol or its weight is not a number
+     */
+    public static Map<String, Double> parseTargets(String text) {
+        Map<String, Double> targets = new LinkedHashMap<>();
+        for (String pair : text.trim().split("[,\\s]+")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            if (equals <= 0 || equals == pair.length() - 1) {
+                throw new IllegalArgumentException("Targets must be written as SYMBOL=WEIGHT: " + pair);
+            }
+            String weight = pair.substring(equals + 1);
+            try {
+                targets.put(pair.substring(0, equals), weight.endsWith("%") ?
+                            Double.parseDouble(weight.substring(0, weight.length() - 1)) / 100 :
+                            Double.parseDouble(weight));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Weight is not a number: " + pair);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Plans the trades that bring the portfolio to the targets, paid for by its own sales.
+     *
+     * @param portfolio the portfolio to rebalance
+     * @return the plan
+     */
+    public Plan plan(Portfolio portfolio) {
+        return plan(portfolio, 0);
+    }
+
+    /**
+     * Plans the trades that bring the portfolio to the targets, with extra cash to invest. The
+     * cash counts towards the value the weights are shares of.
+     *
+     * @param portfolio the portfolio to rebalance
+     * @param cash      cash available besides the proceeds of sales
+     * @return the plan
+     * @throws IllegalArgumentException if the cash is negative
+     */
+    public Plan plan(Portfolio portfolio, double cash) {
+        if (!(cash >= 0)) {
+            throw new IllegalArgumentException("Cash must not be negative: " + cash);
+        }
+        List<Investment> investments = portfolio.getInvestments();
+        int n = investments.size();
+        double[] targets = new double[n];
+        boolean[] held = new boolean[symbols.length];
+
+        double total = cash;
+        for (int i = 0; i < n; i++) {
+            total += investments.get(i).getMarketValue();
+        }
+        for (int i = 0; i < n; i++) {
+            int target = targetIndex.get(SymbolDictionary.lowercase(investments.get(i).symbolCode()));
+            if (target != IntIntMap.MISSING) {
+                targets[i] = weights[target] * total;
+                held[target] = true;
+            }
+        }
+        List<String> unheld = new ArrayList<>();
+        for (int t = 0; t < symbols.length; t++) {
+            if (!held[t] && weights[t] > 0) {
+                unheld.add(symbols[t]);
+            }
+        }
+
+        // Units to trade per position: negative to sell, zero for no trade
+        long[] changes = new long[n];
+        double available = cash;
+        double purchases = 0;
+        double purchaseFees = 0;
+        for (int i = 0; i < n; i++) {
+            Investment investment = investments.get(i);
+            changes[i] = worthwhileChange(investment, targets[i], Long.MAX_VALUE);
+            if (changes[i] < 0) {
+                available += investment.calculateSellProceeds((int) -changes[i], investment.getPrice());
+            } else if (changes[i] > 0) {
+                purchases += changes[i] * investment.getPrice();
+                purchaseFees += investment.getTradeFee(false);
+            }
+        }
+
+        // Scale purchases down to the cash raised, then check each one is still worth its fee
+        if (purchases + purchaseFees > available) {
+            double scale = Math.max(0, (available - purchaseFees) / purchases);
+            for (int i = 0; i < n; i++) {
+                if (changes[i] > 0) {
+                    changes[i] = worthwhileChange(investments.get(i), targets[i], (long) Math.floor(changes[i] * scale));
+                }
+            }
+        }
+
+        List<Trade> sales = new ArrayList<>();
+        List<Trade> buys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (changes[i] != 0) {
+                (changes[i] < 0 ? sales : buys).add(new Trade(investments.get(i), changes[i]));
+            }
+        }
+        sales.addAll(buys);
+        return new Plan(sales, unheld, cash);
+    }
+
+    /**
+     * Finds the units to trade to bring an investment closest to its target value, buying no
+     * more than the given limit, or zero if the trade would not gain more than its fee.
+     */
+    private static long worthwhileChange(Investment investment, double target, long maxPurchase) {
+        double price = investment.getPrice();
+        if (!(price > 0)) return 0;
+        double value = investment.getMarketValue();
+        long change = Math.round((target - value) / price);
+        change = Math.max(change, -investment.getQuantity());
+        change = Math.min(change, Math.min(maxPurchase, Integer.MAX_VALUE - investment.getQuantity()));
+        if (change == 0) return 0;
+        double benefit = Math.abs(value - target) - Math.abs(value + change * price - target);
+        return benefit > investment.getTradeFee(change < 0) ? change : 0;
+    }
+
+    /**
+     * The {@code Trade} class is one purchase or sale in a plan, at the investment's current price.
+     */
+    public static class Trade {
+        private final int symbolCode;
+        private final int nameCode;
+        private final boolean stock;
+        private final boolean sell;
+        private final int quantity;
+        private final double price;
+        private final double fee;
+        // Cash raised by a sale after its fee, or spent on a purchase including its fee
+        private final double amount;
+
+        private Trade(Investment investment, long change) {
+            this.symbolCode = investment.symbolCode();
+            this.nameCode = investment.nameCode();
+            this.stock = investment instanceof Stock;
+            this.sell = change < 0;
+            this.quantity = (int) Math.abs(change);
+            this.price = investment.getPrice();
+            this.fee = investment.getTradeFee(sell);
+            this.amount = sell ? investment.calculateSellProceeds(quantity, price) : quantity * price + fee;
+        }
+
+        /**
+         * Gets the symbol to trade.
+         *
+         * @return the symbol
+         */
+        public String getSymbol() {
+            return SymbolDictionary.decode(symbolCode);
+        }
+
+        /**
+         * Checks whether the trade is a sale.
+         *
+         * @return {@code true} for a sale, {@code false} for a purchase
+         */
+        public boolean isSell() {
+            return sell;
+        }
+
+        /**
+         * Gets the number of units to trade.
+         *
+         * @return the quantity
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Gets the price the trade was planned at.
+         *
+         * @return the price per unit
+         */
+        public double getPrice() {
+            return price;
+        }
+
+        /**
+         * Gets the fee of the trade.
+         *
+         * @return the commission or redemption fee
+         */
+        public double getFee() {
+            return fee;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d %s at %.2f, fee %.2f", sell ? "Sell" : "Buy", quantity, getSymbol(), price, fee);
+        }
+    }
+
+    /**
+     * The {@code Plan} class holds the trades that rebalance a portfolio, sales first. It is
+     * planned at the prices and quantities of the moment, so it should be applied before the
+     * portfolio changes.
+     */
+    public static class Plan {
+        private final List<Trade> trades;
+        private final List<String> unheld;
+        private final double proceeds;
+        private final double cost;
+        private final double fees;
+        private final double cashLeft;
+
+        private Plan(List<Trade> trades, List<String> unheld, double cash) {
+            this.trades = Collections.unmodifiableList(trades);
+            this.unheld = Collections.unmodifiableList(unheld);
+            double proceeds = 0, cost = 0, fees = 0;
+            for (Trade trade : trades) {
+                fees += trade.fee;
+                if (trade.sell) {
+                    proceeds += trade.amount;
+                } else {
+                    cost += trade.amount;
+                }
+            }
+            this.proceeds = proceeds;
+            this.cost = cost;
+            this.fees = fees;
+            this.cashLeft = cash + proceeds - cost;
+        }
+
+        /**
+         * Gets the trades, sales first, each side in portfolio order.
+         *
+         * @return the trades
+         */
+        public List<Trade> getTrades() {
+            return trades;
+        }
+
+        /**
+         * Gets the symbols with a target weight that are not held and so were not bought.
+         *
+         * @return the symbols, in the order of the targets
+         */
+        public List<String> getUnheldSymbols() {
+            return unheld;
+        }
+
+        /**
+         * Gets the total of the fees of every trade.
+         *
+         * @return the fees
+         */
+        public double getFees() {
+            return fees;
+        }
+
+        /**
+         * Gets the cash raised by the sales, after their fees.
+         *
+         * @return the proceeds
+         */
+        public double getProceeds() {
+            return proceeds;
+        }
+
+        /**
+         * Gets the cash spent on purchases, including their fees.
+         *
+         * @return the cost
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        /**
+         * Gets the cash left once every trade is made.
+         *
+         * @return the cash given, plus the proceeds, less the cost
+         */
+        public double getCashLeft() {
+            return cashLeft;
+        }
+
+        /**
+         * Makes every trade through {@link Portfolio#sellInvestment} and
+         * {@link Portfolio#buyInvestment}, sales first, so they are indexed, logged and published
+         * like any other trade.
+         *
+         * @param portfolio the portfolio the plan was made for
+         */
+        public void applyTo(Portfolio portfolio) {
+            for (Trade trade : trades) {
+                if (trade.sell) {
+                    portfolio.sellInvestment(trade.getSymbol(), trade.quantity, trade.price);
+                } else {
+                    portfolio.buyInvestment(trade.stock ? "stock" : "mutualfund", trade.getSymbol(),
+                                            SymbolDictionary.decode(trade.nameCode), trade.quantity, trade.price);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Trades: %d\nProceeds: %.2f\nCost: %.2f\nFees: %.2f\nCash Left: %.2f",
+                                 trades.size(), proceeds, cost, fees, cashLeft);
+        }
+    }
+}
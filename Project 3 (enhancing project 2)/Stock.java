@@ -38,7 +38,7 @@ public class Stock extends Investment {
      * @return the calculated gain
      */
     @Override
-    public double calculateGain() {
+    protected double computeGain() {
         double currentPrice = getPrice();
         double bookValue = getBookValue();
         // Calculate gain by subtracting book value and commission from total current value
@@ -72,4 +72,15 @@ public class Stock extends Investment {
         double newBookValue = getBookValue() + additionalQuantity * newPrice + COMM;
         updateBookValue(Math.round(newBookValue * 100.0) / 100.0);
     }
+
+    /**
+     * Gets the commission, which is charged on purchases and sales alike.
+     *
+     * @param sell {@code true} for a sale, {@code false} for a purchase
+     * @return the fee of the trade
+     */
+    @Override
+    public double getTradeFee(boolean sell) {
+        return COMM;
+    }
 }
@@ -0,0 +1,162 @@
+package ePortfolio;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code SymbolDictionary} class gives every distinct symbol, name and keyword used by any
+ * portfolio a compact int code, and keeps one shared copy of each string.
+ *
+ * <p>Investments and the portfolio indexes store codes instead of strings, so a ticker or fund
+ * name held in thousands of accounts is kept once, and indexes compare codes instead of strings.
+ * Codes are never reused or freed; the dictionary grows with the number of distinct strings
+ * seen, not with the number of positions. Every string is stored together with the code of its
+ * lowercase form, so a case-insensitive lookup costs a single hash lookup. It is shared by every
+ * portfolio and safe to use from several threads: encoding a new string takes a lock, while
+ * decoding never does.</p>
+ */
+public final class SymbolDictionary {
+    /**
+     * The code used for {@code null}.
+     */
+    public static final int NONE = -1;
+
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    private static volatile String[] strings = new String[1024];
+    private static volatile int[] lowercaseCodes = new int[1024];
+    private static int size;
+
+    private SymbolDictionary() {
+    }
+
+    /**
+     * Gets the code of a string, adding it to the dictionary if it is new.
+     *
+     * @param text the string to encode
+     * @return its code, or {@link #NONE} for {@code null}
+     */
+    public static int encode(String text) {
+        if (text == null) return NONE;
+        Entry entry = ENTRIES.get(text);
+        return entry != null ? entry.code : add(text).code;
+    }
+
+    /**
+     * Adds a string and, if it differs, its lowercase form.
+     */
+    private static Entry add(String text) {
+        synchronized (LOCK) {
+            Entry entry = ENTRIES.get(text);
+            if (entry != null) return entry;
+            String lower = text.toLowerCase();
+            int code = size;
+            int lowercaseCode = lower.equals(text) ? code : NONE;
+            if (lowercaseCode == NONE) {
+                // Added first so it gets its own code before this string is published
+                lowercaseCode = add(lower).code;
+                code = size;
+            }
+            if (code == strings.length) {
+                // Fill the larger arrays before publishing them so decode never sees a gap
+                String[] grownStrings = Arrays.copyOf(strings, code * 2);
+                int[] grownLowercase = Arrays.copyOf(lowercaseCodes, code * 2);
+                grownStrings[code] = text;
+                grownLowercase[code] = lowercaseCode;
+                lowercaseCodes = grownLowercase;
+                strings = grownStrings;
+            } else {
+                strings[code] = text;
+                lowercaseCodes[code] = lowercaseCode;
+            }
+            size = code + 1;
+            entry = new Entry(code, lowercaseCode);
+            ENTRIES.put(text, entry);
+            return entry;
+        }
+    }
+
+    /**
+     * Gets the code of a string without adding it.
+     *
+     * @param text the string to look up
+     * @return its code, or {@link #NONE} if it has never been encoded
+     */
+    public static int find(String text) {
+        if (text == null) return NONE;
+        Entry entry = ENTRIES.get(text);
+        return entry != null ? entry.code : NONE;
+    }
+
+    /**
+     * Gets the string for a code.
+     *
+     * @param code a code returned by {@link #encode(String)}
+     * @return the shared copy of the string, or {@code null} for {@link #NONE}
+     */
+    public static String decode(int code) {
+        return code == NONE ? null : strings[code];
+    }
+
+    /**
+     * Gets the code of the lowercase form of a string, which is what the portfolio indexes
+     * are keyed by.
+     *
+     * @param code the code of a string
+     * @return the code of its lowercase form, or {@link #NONE} for {@link #NONE}
+     */
+    public static int lowercase(int code) {
+        return code == NONE ? NONE : lowercaseCodes[code];
+    }
+
+    /**
+     * Gets the code of the lowercase form of a string without adding anything to the dictionary.
+     *
+     * @param text the string to look up, in any case
+     * @return the code of its lowercase form, or {@link #NONE} if that has never been encoded
+     */
+    public static int findLowercase(String text) {
+        if (text == null) return NONE;
+        Entry entry = ENTRIES.get(text);
+        if (entry != null) {
+            return entry.lowercaseCode;
+        }
+        return find(text.toLowerCase());
+    }
+
+    /**
+     * Estimates the heap retained by one string in the dictionary: the string itself, its map
+     * node and entry, its share of the map's table, and its slots in the code arrays.
+     *
+     * @param code the code of the string
+     * @return the estimated bytes
+     */
+    static long retainedBytes(int code) {
+        return FootprintReport.stringBytes(decode(code)) + FootprintReport.objectBytes(16)
+               + FootprintReport.objectBytes(8) + 8 + 4 + 4;
+    }
+
+    /**
+     * Gets the number of distinct strings in the dictionary.
+     *
+     * @return the number of codes handed out
+     */
+    public static int size() {
+        synchronized (LOCK) {
+            return size;
+        }
+    }
+
+    /**
+     * A string's code and the code of its lowercase form.
+     */
+    private static final class Entry {
+        private final int code;
+        private final int lowercaseCode;
+
+        private Entry(int code, int lowercaseCode) {
+            this.code = code;
+            this.lowercaseCode = lowercaseCode;
+        }
+    }
+}